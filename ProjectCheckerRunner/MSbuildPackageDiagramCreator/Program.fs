@@ -4,10 +4,11 @@ open System.IO
 
 open Microsoft.Build.Locator
 
-[<EntryPoint>]
-let main argv = 
+let run (argv : string []) = 
     try
-        MSBuildLocator.RegisterDefaults() |> ignore
+        if not(MSBuildLocator.IsRegistered) then
+            MSBuildLocator.RegisterDefaults() |> ignore
+        Helpers.warnings <- List.Empty
         let arguments = CommandLine.parseArgs(argv)
         let mutable solutionList = List.Empty
         let executionFolder = Path.GetDirectoryName(System.Reflection.Assembly.GetExecutingAssembly().Location)
@@ -92,4 +93,12 @@ let main argv =
         eprintfn "Stack trace: %s" ex.StackTrace
         if ex.InnerException <> null then
             eprintfn "Inner exception: %s" ex.InnerException.Message
-        1
\ No newline at end of file
+        1
+
+// /daemon keeps the process alive to serve requests from the plugin, see DaemonHost
+[<EntryPoint>]
+let main argv =
+    if argv.Length = 1 && argv.[0].ToLower() = "/daemon" then
+        DaemonHost.Serve(run)
+    else
+        run argv
@@ -0,0 +1,34 @@
+﻿module DaemonHost
+
+open System
+
+// Serves requests of the plugin read from stdin, one per line, until stdin is
+// closed or #quit is received:
+//   #ping                    answered with #pong
+//   #run<TAB>arg<TAB>arg...  runs the tool with the arguments, its output is
+//                            followed by #exit<TAB>code once done
+// #pong and #exit are written after a line break, on a line of their own.
+let Serve (run : string [] -> int) =
+    let mutable serving = true
+    while serving do
+        let line = Console.In.ReadLine()
+        if line = null || line = "#quit" then
+            serving <- false
+        elif line = "#ping" then
+            Console.Out.WriteLine()
+            Console.Out.WriteLine("#pong")
+            Console.Out.Flush()
+        elif line.StartsWith("#run") then
+            let args = line.Split('\t') |> Array.skip 1
+            let code =
+                try
+                    run args
+                with
+                | ex ->
+                    eprintfn "Request failed: %s" ex.Message
+                    1
+            // the tool output may not end with a line break
+            Console.Out.WriteLine()
+            Console.Out.WriteLine(sprintf "#exit\t%i" code)
+            Console.Out.Flush()
+    0
@@ -95,11 +95,11 @@ let ShowHelp () =
         Console.WriteLine ("    /P|/p:<password>")
         Console.WriteLine ("    /H|/h:<host>")
         Console.WriteLine ("    /O|/o:<output xml file>")
+        Console.WriteLine ("    /S|/s stream issues to the standard output with /i")
         Console.WriteLine ("    /D|/d:<directory to analyse>")
         Console.WriteLine ("    /displayrules")
 
-[<EntryPoint>]
-let main argv = 
+let run (argv : string []) = 
     let arguments = parseArgs(argv)
     let mutable failed = false
     
@@ -153,6 +153,7 @@ let main argv =
                 let options = InputXml.Parse(File.ReadAllText(input))
 
                 let analyser = new SQAnalyser()
+                analyser.StreamResults <- arguments.ContainsKey("s")
                 let basePathOpt = options.Settings |> Seq.tryFind (fun c -> c.Key.Equals("ProjectRoot"))
                 if basePathOpt.IsNone then
                     printf "    [ProjectCheckerRunner] [Error]: 'ProjectRoot' setting not found in input XML\r\n"
@@ -184,6 +185,7 @@ let main argv =
 
                 options.Files |> Array.Parallel.map (fun file -> HandleFileToAnalyse(file.Replace("file:///", ""))) |> ignore
                 analyser.WriteXmlToDisk(output)
+                analyser.WriteIssueStreamEnd()
             with
             | ex -> printf "    Failed: %A \r\n %A" ex.Message ex.StackTrace
         ()
@@ -219,3 +221,10 @@ let main argv =
     else
         0
 
+// /daemon keeps the process alive to serve requests from the plugin, see DaemonHost
+[<EntryPoint>]
+let main argv =
+    if argv.Length = 1 && argv.[0].ToLower() = "/daemon" then
+        DaemonHost.Serve(run)
+    else
+        run argv
@@ -17,13 +17,25 @@ type SQAnalyser() =
     let mutable externalDlls : string List = List.Empty
     let mutable ingoreFolder : string List = List.Empty
     let resourcesLocker = new System.Object()
+    let streamLocker = new System.Object()
+    let mutable streamedIssues = 0
     let mutable foundErrors = false
 
+    // fields of a streamed record cannot contain its separators
+    let escape (value : string) =
+        if value = null then
+            ""
+        else
+            value.Replace("\\", "\\\\").Replace("\t", "\\t").Replace("\r", "\\r").Replace("\n", "\\n")
+
+    /// writes issues to the standard output as they are found, see WriteIssueStreamEnd
+    member val StreamResults = false with get, set
+
     member this.AddExternalAnalyser(path : string, host:string, user:string, pass:string, projectKey:string) =  
         if path <> "" then
             if File.Exists(path) then
                 let checks = MSBuildHelper.LoadChecksFromPath(path)
-                printf "Checks %A" checks
+                printfn "Checks %A" checks
                 let rest = SonarService(new JsonSonarConnector()) :> ISonarRestService
                 let token = SonarHelpers.GetConnectionToken(rest, host, user, pass)
                 SonarHelpers.SyncRulesInServer(path, rest, token, projectKey)
@@ -36,7 +48,7 @@ type SQAnalyser() =
         if Directory.Exists(path) then
             ingoreFolder <- ingoreFolder @ [path]
         else
-            printf "[Error] path %A not found, using default checks" path
+            printfn "[Error] path %A not found, using default checks" path
 
     member this.RunAnalysesForOutput(path : string) =  
         let analyser = new ProjectCheckerTask()
@@ -47,6 +59,19 @@ type SQAnalyser() =
         let resourceMetric = SonarResoureMetrics(path)
         resourceMetric.Issues <- this.RunTool(path)
         lock resourcesLocker (fun () -> resources <- resources @ [resourceMetric] )
+        if this.StreamResults then
+            lock streamLocker (fun () ->
+                for diagnostic in resourceMetric.Issues do
+                    Console.Out.Write(sprintf "#issue\t%s\t%s\t%i\t%s\n" (escape resourceMetric.ResourcePath) (escape diagnostic.Rule) diagnostic.Line (escape diagnostic.Message))
+                    streamedIssues <- streamedIssues + 1
+                Console.Out.Flush())
+
+    /// marks the end of the streamed issues, the plugin ignores the output xml for the streamed files
+    member this.WriteIssueStreamEnd() =
+        if this.StreamResults then
+            lock streamLocker (fun () ->
+                Console.Out.Write(sprintf "#issues-end\t%i\n" streamedIssues)
+                Console.Out.Flush())
 
     member this.RunTool(path : string) = 
         try
@@ -56,7 +81,7 @@ type SQAnalyser() =
             analyser.ExecuteAnalysisOnProjectFile(path, "")
             analyser.GetAllIssues()
         with
-        | ex -> printf "Lint Execution Failed %A" ex
+        | ex -> printfn "Lint Execution Failed %A" ex
                 List.Empty
 
 
@@ -74,7 +99,7 @@ type SQAnalyser() =
 
                 if Environment.GetEnvironmentVariable("TEAMCITY_VERSION") <> null then
                     let tcmessage = sprintf "##teamcity[message text='%s : %s' errorDetails='%s : %i' status='%s']" diagnostic.Rule diagnostic.Message diagnostic.Component diagnostic.Line status
-                    printf "%s" tcmessage
+                    printfn "%s" tcmessage
 
                 printf "%s\r\n" message
                 
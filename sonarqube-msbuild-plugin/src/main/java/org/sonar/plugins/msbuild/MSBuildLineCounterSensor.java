@@ -38,27 +38,41 @@ import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.api.batch.fs.InputFile;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.stream.Stream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.sonar.api.batch.sensor.SensorDescriptor;
 import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Metric;
+import org.sonar.plugins.msbuild.parsers.LineCounts;
 import org.sonar.plugins.msbuild.parsers.MSBuildLineCountParser;
+import org.sonar.plugins.msbuild.parsers.StructureCounts;
+import org.sonar.plugins.msbuild.utils.MSBuildUtils;
 
 /**
- * Count lines of code in XML files.
+ * Count lines of code in XML files, and the structure measures of {@link MSBuildMetrics}
+ * found in the same pass.
+ *
+ * Files are measured on a pool of sonar.msbuild.threads workers, each producing
+ * an immutable {@link LineCounts}. Measures are saved from the sensor thread.
+ * Files whose content is in the {@link MSBuildMeasureCache} are not read again.
  *
  * Original from: https://github.com/SonarSource/sonar-xml
  * Modified to fit msbuild files
  */
 public final class MSBuildLineCounterSensor implements Sensor {
   private static final Logger LOG = Loggers.get(MSBuildLineCounterSensor.class);
-  int numLines = 0;
-  int numBlankLines = 0;
 
+  private final MSBuildMeasureCache cache;
+
+  public MSBuildLineCounterSensor(MSBuildMeasureCache cache) {
+    this.cache = cache;
+  }
 
   @Override
   public String toString() {
@@ -72,47 +86,95 @@ public final class MSBuildLineCounterSensor implements Sensor {
 
   @Override
   public void execute(SensorContext context) {
+    List<InputFile> files = new ArrayList<>();
     for (InputFile file : context.fileSystem().inputFiles(context.fileSystem().predicates().hasLanguage(MSBuildLanguage.KEY))) {
-      addMeasures(context, file);
+      files.add(file);
     }
-  }  
-  
-  private void addMeasures(SensorContext sensorContext, InputFile file) {
-
-    numLines = 0;
-    numBlankLines = 0;
-    try (Stream<String> stream = Files.lines(Paths.get(file.uri()))) {
-      stream.forEach(s -> {
-        numLines++;
-        if (s.isEmpty()) {
-          numBlankLines++;
+
+    if (files.isEmpty()) {
+      return;
+    }
+
+    int threads = Math.min(MSBuildUtils.getThreads(context.config()), files.size());
+    LOG.debug("Count lines in {} files using {} threads", files.size(), threads);
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<LineCounts>> results = new ArrayList<>(files.size());
+      for (InputFile file : files) {
+        results.add(executor.submit(() -> countLines(file)));
+      }
+
+      for (int i = 0; i < files.size(); i++) {
+        LineCounts counts = waitFor(results.get(i), files.get(i));
+        if (counts != null) {
+          saveMeasures(context, files.get(i), counts);
         }
-      });
-    } catch (IOException e) {
-      LOG.warn("Unable to count lines for file: " + file.filename());
-      LOG.warn("Cause: {}", e);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOG.warn("Line counting interrupted");
+    } finally {
+      executor.shutdownNow();
     }
+  }
 
+  private LineCounts countLines(InputFile file) throws IOException {
+    if (!cache.isEnabled()) {
+      LOG.debug("Count lines in " + file.filename());
+      return new MSBuildLineCountParser().countLines(file);
+    }
+
+    String hash = MSBuildMeasureCache.hash(file);
+    LineCounts counts = cache.getLineCounts(hash);
+    if (counts == null) {
+      LOG.debug("Count lines in " + file.filename());
+      counts = new MSBuildLineCountParser().countLines(file);
+      cache.putLineCounts(hash, counts);
+    }
+    return counts;
+  }
+
+  private static LineCounts waitFor(Future<LineCounts> result, InputFile file) throws InterruptedException {
     try {
-      LOG.debug("Count comment in " + file.filename());
-      MSBuildLineCountParser lineCountParser = new MSBuildLineCountParser();
-      int numCommentLines = lineCountParser.countLinesOfComment(new FileInputStream(file.filename()), file);
-      sensorContext.<Integer>newMeasure()
-         .forMetric(CoreMetrics.COMMENT_LINES)
-         .on(file)
-         .withValue(numCommentLines)
-         .save();
-
-      sensorContext.<Integer>newMeasure()
-         .forMetric(CoreMetrics.NCLOC)
-         .on(file)
-         .withValue(numLines - numBlankLines - numCommentLines)
-         .save();
-      
-    } catch (Exception e) {
-      LOG.debug("Fail to count lines in " + file.filename(), e);
+      return result.get();
+    } catch (ExecutionException e) {
+      LOG.warn("Unable to count lines for file: " + file.filename());
+      LOG.warn("Cause: {}", e.getCause());
+      return null;
     }
+  }
+
+  private static void saveMeasures(SensorContext sensorContext, InputFile file, LineCounts counts) {
+    sensorContext.<Integer>newMeasure()
+       .forMetric(CoreMetrics.COMMENT_LINES)
+       .on(file)
+       .withValue(counts.getCommentLines())
+       .save();
+
+    sensorContext.<Integer>newMeasure()
+       .forMetric(CoreMetrics.NCLOC)
+       .on(file)
+       .withValue(counts.getNcloc())
+       .save();
+
+    StructureCounts structure = counts.getStructure();
+    saveMeasure(sensorContext, file, MSBuildMetrics.IMPORTS, structure.getImports());
+    saveMeasure(sensorContext, file, MSBuildMetrics.PROPERTY_GROUPS, structure.getPropertyGroups());
+    saveMeasure(sensorContext, file, MSBuildMetrics.ITEM_GROUPS, structure.getItemGroups());
+    saveMeasure(sensorContext, file, MSBuildMetrics.CONDITIONS, structure.getConditions());
+    saveMeasure(sensorContext, file, MSBuildMetrics.PROJECT_REFERENCES, structure.getProjectReferences());
+    saveMeasure(sensorContext, file, MSBuildMetrics.REFERENCES, structure.getReferences());
+    saveMeasure(sensorContext, file, MSBuildMetrics.MAX_DEPTH, structure.getMaxDepth());
+
+    LOG.debug("LineCountSensor: " + file.filename() + ":" + counts);
+  }
 
-    LOG.debug("LineCountSensor: " + file.filename() + ":" + numLines + "," + numBlankLines + "," + 0);
+  private static void saveMeasure(SensorContext sensorContext, InputFile file, Metric<Integer> metric, int value) {
+    sensorContext.<Integer>newMeasure()
+       .forMetric(metric)
+       .on(file)
+       .withValue(value)
+       .save();
   }
 }
\ No newline at end of file
@@ -0,0 +1,288 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.sonar.api.Startable;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.batch.ScannerSide;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.plugins.msbuild.parsers.LineCounts;
+import org.sonar.plugins.msbuild.parsers.StructureCounts;
+import org.sonar.plugins.msbuild.utils.MSBuildUtils;
+
+/**
+ * Measures of MSBuild files kept between analyses.
+ *
+ * Entries are keyed by the content hash of the file, so unchanged files are
+ * not parsed again. The cache is loaded on first use and written back, least
+ * recently used entries first, when the batch stops. A cache written by another
+ * plugin version, or a file that cannot be read back, is discarded.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+@ScannerSide()
+public class MSBuildMeasureCache implements Startable {
+
+  public static final Logger LOG = Loggers.get(MSBuildMeasureCache.class);
+
+  public static final String MAX_ENTRIES = "sonar.msbuild.cache.maxEntries";
+
+  static final String CACHE_FILE = "measures.bin";
+
+  private static final int MAGIC = 0x4D534D43;
+  private static final int FORMAT_VERSION = 4;
+  private static final int DEFAULT_MAX_ENTRIES = 200000;
+
+  private final Configuration settings;
+  private final int maxEntries;
+  private final Map<String, LineCounts> entries;
+  private boolean loaded;
+  private boolean dirty;
+  private int hits;
+  private int misses;
+
+  public MSBuildMeasureCache(Configuration settings) {
+    this.settings = settings;
+    this.maxEntries = settings.getInt(MAX_ENTRIES).orElse(DEFAULT_MAX_ENTRIES);
+    this.entries = new LinkedHashMap<String, LineCounts>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, LineCounts> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  @Override
+  public void start() {
+    // loaded on first use
+  }
+
+  @Override
+  public void stop() {
+    save();
+  }
+
+  public boolean isEnabled() {
+    return maxEntries > 0;
+  }
+
+  /**
+   * Hash of the content of the file and of its charset, which the lexer decodes
+   * the file with when it has no byte order mark.
+   */
+  public static String hash(InputFile file) throws IOException {
+    try (InputStream is = file.inputStream()) {
+      MessageDigest digest = MessageDigest.getInstance("MD5");
+      digest.update(file.charset().name().getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = is.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+      return MSBuildUtils.toHex(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 not available", e);
+    }
+  }
+
+  public synchronized LineCounts getLineCounts(String hash) {
+    if (!isEnabled()) {
+      return null;
+    }
+    load();
+    LineCounts counts = entries.get(hash);
+    if (counts == null) {
+      misses++;
+    } else {
+      hits++;
+    }
+    return counts;
+  }
+
+  public synchronized void putLineCounts(String hash, LineCounts lineCounts) {
+    if (!isEnabled()) {
+      return;
+    }
+    load();
+    entries.put(hash, lineCounts);
+    dirty = true;
+  }
+
+  private File cacheFile() {
+    return new File(MSBuildUtils.getCacheDirectory(settings), CACHE_FILE);
+  }
+
+  private synchronized void load() {
+    if (loaded || !isEnabled()) {
+      return;
+    }
+    loaded = true;
+
+    File file = cacheFile();
+    if (!file.isFile()) {
+      return;
+    }
+
+    CRC32 crc = new CRC32();
+    try (DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())), crc))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !MSBuildUtils.getPluginVersion().equals(in.readUTF())) {
+        LOG.info("Measure cache '{}' was written by another version, discarding it", file);
+        return;
+      }
+
+      int count = in.readInt();
+      Map<String, LineCounts> read = new LinkedHashMap<>();
+      for (int i = 0; i < count; i++) {
+        read.put(readHash(in), readLineCounts(in));
+      }
+      long expected = crc.getValue();
+      if (in.readLong() != expected) {
+        throw new IOException("checksum mismatch");
+      }
+
+      entries.putAll(read);
+      LOG.debug("Measure cache loaded {} entries from '{}'", entries.size(), file);
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Measure cache '{}' is corrupted and will be rebuilt: {}", file, e.getMessage());
+      entries.clear();
+      dirty = true;
+    }
+  }
+
+  synchronized void save() {
+    LOG.debug("Measure cache: {} hits, {} misses", hits, misses);
+    if (!dirty || !isEnabled()) {
+      return;
+    }
+
+    File file = cacheFile();
+    File temp = null;
+    try {
+      Files.createDirectories(file.getParentFile().toPath());
+      temp = Files.createTempFile(file.getParentFile().toPath(), CACHE_FILE, ".tmp").toFile();
+      CRC32 crc = new CRC32();
+      try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(temp.toPath()));
+        DataOutputStream out = new DataOutputStream(new CheckedOutputStream(os, crc))) {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(MSBuildUtils.getPluginVersion());
+
+        List<Map.Entry<String, LineCounts>> snapshot = new ArrayList<>(entries.entrySet());
+        out.writeInt(snapshot.size());
+        for (Map.Entry<String, LineCounts> entry : snapshot) {
+          writeHash(out, entry.getKey());
+          writeLineCounts(out, entry.getValue());
+        }
+        out.flush();
+        out.writeLong(crc.getValue());
+      }
+
+      MSBuildUtils.moveReplacing(temp.toPath(), file.toPath());
+      dirty = false;
+      LOG.debug("Measure cache saved {} entries to '{}'", entries.size(), file);
+    } catch (IOException e) {
+      LOG.warn("Unable to save measure cache '{}': {}", file, e.getMessage());
+      if (temp != null) {
+        temp.delete();
+      }
+    }
+  }
+
+  private static LineCounts readLineCounts(DataInputStream in) throws IOException {
+    int lines = in.readInt();
+    int blankLines = in.readInt();
+    int commentLines = in.readInt();
+    StructureCounts structure = new StructureCounts(in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+      in.readInt(), in.readInt(), in.readInt());
+    return new LineCounts(lines, blankLines, commentLines, structure);
+  }
+
+  private static void writeLineCounts(DataOutputStream out, LineCounts lineCounts) throws IOException {
+    out.writeInt(lineCounts.getLines());
+    out.writeInt(lineCounts.getBlankLines());
+    out.writeInt(lineCounts.getCommentLines());
+    StructureCounts structure = lineCounts.getStructure();
+    out.writeInt(structure.getImports());
+    out.writeInt(structure.getPropertyGroups());
+    out.writeInt(structure.getItemGroups());
+    out.writeInt(structure.getConditions());
+    out.writeInt(structure.getProjectReferences());
+    out.writeInt(structure.getReferences());
+    out.writeInt(structure.getMaxDepth());
+  }
+
+  /**
+   * Hashes are hex strings, stored as their bytes.
+   */
+  private static String readHash(DataInputStream in) throws IOException {
+    int length = in.readUnsignedByte();
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return MSBuildUtils.toHex(bytes);
+  }
+
+  private static void writeHash(DataOutputStream out, String hash) throws IOException {
+    byte[] bytes = new byte[hash.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) Integer.parseInt(hash.substring(2 * i, 2 * i + 2), 16);
+    }
+    out.writeByte(bytes.length);
+    out.write(bytes);
+  }
+}
@@ -57,11 +57,48 @@ public class MSBuildMetrics implements Metrics {
         .setDeleteHistoricalData(true)
         .create();  
 
+  public static final Metric<Integer> IMPORTS = structureMetric("MSBUILD-IMPORTS", "Imports",
+    "Number of Import elements");
+
+  public static final Metric<Integer> PROPERTY_GROUPS = structureMetric("MSBUILD-PROPERTY-GROUPS", "Property groups",
+    "Number of PropertyGroup elements");
+
+  public static final Metric<Integer> ITEM_GROUPS = structureMetric("MSBUILD-ITEM-GROUPS", "Item groups",
+    "Number of ItemGroup elements");
+
+  public static final Metric<Integer> CONDITIONS = structureMetric("MSBUILD-CONDITIONS", "Conditions",
+    "Number of Condition attributes");
+
+  public static final Metric<Integer> PROJECT_REFERENCES = structureMetric("MSBUILD-PROJECT-REFERENCES", "Project references",
+    "Number of ProjectReference elements");
+
+  public static final Metric<Integer> REFERENCES = structureMetric("MSBUILD-REFERENCES", "References",
+    "Number of Reference elements");
+
+  public static final Metric<Integer> MAX_DEPTH = structureMetric("MSBUILD-MAX-DEPTH", "Maximum element depth",
+    "Deepest element nesting level");
+
+  private static Metric<Integer> structureMetric(String key, String name, String description) {
+    return new Metric.Builder(key, name, Metric.ValueType.INT)
+        .setDescription(description)
+        .setDirection(Metric.DIRECTION_WORST)
+        .setQualitative(false)
+        .setDomain("Msbuild")
+        .create();
+  }
+
   @Override
   public List<Metric> getMetrics() {
     List<Metric> list = new ArrayList<>();
     list.add(DGMLDIAGRAM);
     list.add(DGMLDIAGRAMSIZE);
+    list.add(IMPORTS);
+    list.add(PROPERTY_GROUPS);
+    list.add(ITEM_GROUPS);
+    list.add(CONDITIONS);
+    list.add(PROJECT_REFERENCES);
+    list.add(REFERENCES);
+    list.add(MAX_DEPTH);
     return list;
   }
 }
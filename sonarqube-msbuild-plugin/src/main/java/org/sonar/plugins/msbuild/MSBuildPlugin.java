@@ -49,6 +49,8 @@ public final class MSBuildPlugin implements Plugin {
   public static final String KEY = "msbuild";
   public static final String FILE_SUFFIXES_KEY = "sonar.msbuild.file.suffixes";
   public static final String IGNORE_LIST_INCLUDES_FOLDERS  = "sonar.msbuild.include.folder.ignores";  
+  public static final String THREADS_KEY = "sonar.msbuild.threads";
+  public static final String CACHE_PATH_KEY = "sonar.msbuild.cache.path";
      
   private static List<PropertyDefinition> MsbuildProperties() {
     return new ArrayList<>(Arrays.asList(
@@ -79,6 +81,85 @@ public final class MSBuildPlugin implements Plugin {
         .onQualifiers(Qualifiers.PROJECT)
         .build(), 
       
+      PropertyDefinition.builder(MSBuildPlugin.THREADS_KEY)
+        .name("Analysis threads")
+        .description("Number of threads used to measure MSBuild files, defaults to the number of available processors")
+        .type(PropertyType.INTEGER)
+        .category("Msbuild")
+        .onQualifiers(Qualifiers.PROJECT)
+        .build(),
+
+      PropertyDefinition.builder(MSBuildPlugin.CACHE_PATH_KEY)
+        .name("Cache path")
+        .description("Directory where analysis results and the extracted tools are kept between analyses, defaults to msbuild under the scanner user home")
+        .type(PropertyType.STRING)
+        .category("Msbuild")
+        .onQualifiers(Qualifiers.PROJECT)
+        .build(),
+
+      PropertyDefinition.builder(MSBuildMeasureCache.MAX_ENTRIES)
+        .defaultValue("200000")
+        .name("Measure cache size")
+        .description("Maximum number of files kept in the measure cache, 0 disables the cache")
+        .type(PropertyType.INTEGER)
+        .category("Msbuild")
+        .onQualifiers(Qualifiers.PROJECT)
+        .build(),
+
+      PropertyDefinition.builder(MSBuildProjectCheckerExtensionSensor.SHARDS_KEY)
+        .name("Project checker processes")
+        .description("Number of project checker processes run in parallel, each on a share of the files. Defaults to the number of processors.")
+        .category("Msbuild")
+        .subCategory("ProjectChecker")
+        .onQualifiers(Qualifiers.PROJECT)
+        .type(PropertyType.INTEGER)
+        .build(),
+
+      PropertyDefinition.builder(MSBuildProjectCheckerExtensionSensor.INCREMENTAL_KEY)
+        .name("Incremental project checker")
+        .description("Analyse only the files changed since the cached project checker results, and the files importing or referencing them.")
+        .defaultValue("false")
+        .category("Msbuild")
+        .subCategory("ProjectChecker")
+        .onQualifiers(Qualifiers.PROJECT)
+        .type(PropertyType.BOOLEAN)
+        .build(),
+
+      PropertyDefinition.builder(MSBuildProjectCheckerExtensionSensor.TIMEOUT_KEY)
+        .name("Project checker timeout")
+        .description("Seconds after which a project checker process is stopped, 0 for no limit. Defaults to 3600.")
+        .category("Msbuild")
+        .subCategory("ProjectChecker")
+        .onQualifiers(Qualifiers.PROJECT)
+        .type(PropertyType.INTEGER)
+        .build(),
+
+      PropertyDefinition.builder(MSBuildProjectCheckerExtensionSensor.INACTIVITY_TIMEOUT_KEY)
+        .name("Project checker inactivity timeout")
+        .description("Seconds without output after which a project checker process is considered hung and stopped, 0 for no limit. Defaults to 0.")
+        .category("Msbuild")
+        .subCategory("ProjectChecker")
+        .onQualifiers(Qualifiers.PROJECT)
+        .type(PropertyType.INTEGER)
+        .build(),
+
+      PropertyDefinition.builder(MSBuildToolExecutor.DAEMON_ENABLED)
+        .name("Tool daemons")
+        .description("Keep the project checker and the diagram creator running between their runs of the analysis, instead of starting them each time.")
+        .defaultValue("false")
+        .category("Msbuild")
+        .onQualifiers(Qualifiers.PROJECT)
+        .type(PropertyType.BOOLEAN)
+        .build(),
+
+      PropertyDefinition.builder(MSBuildToolExecutor.DAEMON_IDLE_TIMEOUT)
+        .name("Tool daemon idle timeout")
+        .description("Seconds after which an unused tool daemon is stopped. Defaults to 300.")
+        .category("Msbuild")
+        .onQualifiers(Qualifiers.PROJECT)
+        .type(PropertyType.INTEGER)
+        .build(),
+
       PropertyDefinition.builder(MSBuildProjectCheckerExtensionSensor.PROJECT_CHECKER_PATH)
         .name("Project checker path")
         .description("Use external path for checker")
@@ -107,15 +188,42 @@ public final class MSBuildPlugin implements Plugin {
         .onQualifiers(Qualifiers.PROJECT)
         .type(PropertyType.BOOLEAN)
         .build(),
+      PropertyDefinition.builder(MSBuildDiagramCreatorSensor.DIAGRAM_CREATOR_EXTERNAL)
+        .defaultValue("False")
+        .name("Run external diagram creator")
+        .description("Runs the MSbuildPackageDiagramCreator tool instead of the built-in diagram generator. Header dependencies are only plotted by the tool. Requires mono outside Windows.")
+        .category("Msbuild")
+        .subCategory("Dgml")
+        .onQualifiers(Qualifiers.PROJECT)
+        .type(PropertyType.BOOLEAN)
+        .build(),
       PropertyDefinition.builder(MSBuildDiagramCreatorSensor.DIAGRAM_CREATOR_PATH)
         .name("Diagram creator path")
-        .description("Use external path for diagram creator path")
+        .description("Use external path for diagram creator path, the external diagram creator is then run")
         .category("Msbuild")
         .subCategory("Dgml")
         .onQualifiers(Qualifiers.PROJECT)
         .type(PropertyType.STRING)
         .build(),
       
+      PropertyDefinition.builder(MSBuildDiagramCreatorSensor.DIAGRAM_CREATOR_TIMEOUT)
+        .name("Diagram creator timeout")
+        .description("Seconds after which the diagram creator is stopped, 0 for no limit. Defaults to 3600.")
+        .category("Msbuild")
+        .subCategory("Dgml")
+        .onQualifiers(Qualifiers.PROJECT)
+        .type(PropertyType.INTEGER)
+        .build(),
+
+      PropertyDefinition.builder(MSBuildDiagramCreatorSensor.DIAGRAM_CREATOR_INACTIVITY_TIMEOUT)
+        .name("Diagram creator inactivity timeout")
+        .description("Seconds without output after which the diagram creator is considered hung and stopped, 0 for no limit. Defaults to 0.")
+        .category("Msbuild")
+        .subCategory("Dgml")
+        .onQualifiers(Qualifiers.PROJECT)
+        .type(PropertyType.INTEGER)
+        .build(),
+
       PropertyDefinition.builder(MSBuildDiagramCreatorSensor.PACKAGES_BASE_PATH)
         .defaultValue("Packages")
         .name("Nuget packages base path")
@@ -225,6 +333,9 @@ public final class MSBuildPlugin implements Plugin {
     extensions.add(MSBuildProjectCheckerExtensionSensor.class);
     extensions.add(MSBuildDiagramCreatorSensor.class);
     extensions.add(MSBuildRunnerExtractor.class);
+    extensions.add(MSBuildMeasureCache.class);
+    extensions.add(MSBuildProjectModelCache.class);
+    extensions.add(MSBuildToolExecutor.class);
 
     // metrics
     extensions.add(MSBuildMetrics.class);
@@ -0,0 +1,150 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sonar.api.Startable;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.batch.ScannerSide;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.plugins.msbuild.parsers.CompactDocument;
+import org.sonar.plugins.msbuild.parsers.ProjectModel;
+import org.sonar.plugins.msbuild.parsers.SaxParser;
+import org.sonar.plugins.msbuild.parsers.SaxParserProvider;
+import org.sonar.plugins.msbuild.parsers.SymbolTable;
+
+/**
+ * Parsed MSBuild files shared by everything that runs in the batch.
+ *
+ * Each file is parsed at most once while its model is reachable, concurrent
+ * requests for the same file wait for the first parse. Models are held through
+ * soft references, so the garbage collector reclaims them under memory pressure
+ * and they are parsed again when asked for afterwards. The symbol table and SAX
+ * parser pool statistics of the batch are logged when it stops.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+@ScannerSide()
+public class MSBuildProjectModelCache implements Startable {
+
+  public static final Logger LOG = Loggers.get(MSBuildProjectModelCache.class);
+
+  private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<>();
+  private final AtomicInteger parses = new AtomicInteger();
+  private final AtomicInteger requests = new AtomicInteger();
+
+  /**
+   * Holds the model of one file, or remembers that the file cannot be parsed.
+   */
+  private static final class Slot {
+    private SoftReference<ProjectModel> model = new SoftReference<>(null);
+    private boolean failed;
+  }
+
+  @Override
+  public void start() {
+    // models are parsed on demand
+  }
+
+  @Override
+  public void stop() {
+    SymbolTable symbols = SymbolTable.shared();
+    LOG.debug("Project models: {} requests, {} parses", requests.get(), parses.get());
+    LOG.debug("Symbol table: {} names, {} lookups, {}% hits", symbols.size(), symbols.getLookupCount(),
+      Math.round(symbols.getHitRate() * 100));
+    logParsers("SAX parsers", SaxParserProvider.DEFAULT);
+    logParsers("Namespace aware SAX parsers", SaxParserProvider.NAMESPACE_AWARE);
+  }
+
+  private static void logParsers(String label, SaxParserProvider parsers) {
+    LOG.debug("{}: {} parses, {} created, {}% reused", label, parsers.getParseCount(), parsers.getCreatedCount(),
+      Math.round(parsers.getHitRate() * 100));
+  }
+
+  /**
+   * Model of the file, or null when it is not well formed.
+   */
+  public ProjectModel get(InputFile file) {
+    requests.incrementAndGet();
+    Slot slot = slots.computeIfAbsent(file.uri().toString(), key -> new Slot());
+    synchronized (slot) {
+      if (slot.failed) {
+        return null;
+      }
+      ProjectModel model = slot.model.get();
+      if (model == null) {
+        model = parse(file);
+        if (model == null) {
+          slot.failed = true;
+        } else {
+          slot.model = new SoftReference<>(model);
+        }
+      }
+      return model;
+    }
+  }
+
+  private ProjectModel parse(InputFile file) {
+    parses.incrementAndGet();
+    try (InputStream input = file.inputStream()) {
+      CompactDocument document = new SaxParser().parseCompactDocument(input, false, false);
+      if (document == null) {
+        LOG.warn("Unable to parse MSBuild file: " + file.filename());
+        return null;
+      }
+      return ProjectModel.of(document);
+    } catch (IOException e) {
+      LOG.warn("Unable to read MSBuild file: " + file.filename() + " => " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Number of parses, more than the number of files when models were reclaimed.
+   */
+  public int getParseCount() {
+    return parses.get();
+  }
+
+  public int getRequestCount() {
+    return requests.get();
+  }
+}
@@ -38,8 +38,28 @@ import org.sonar.api.batch.InstantiationStrategy;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
+import java.util.Properties;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.sonar.api.batch.ScannerSide;
 import org.sonar.api.config.Configuration;
@@ -47,13 +67,26 @@ import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.plugins.msbuild.dgmlcreator.MSBuildDiagramCreatorSensor;
 import org.sonar.plugins.msbuild.projectchecker.MSBuildProjectCheckerExtensionSensor;
+import org.sonar.plugins.msbuild.utils.MSBuildUtils;
 import org.sonar.plugins.msbuild.utils.UnZip;
 
 /**
- * Provides reusable code for Xml parsers.
- * 
- * Original from: https://github.com/SonarSource/sonar-csharp
- * Modified to fit msbuild files
+ * Provides the external tools, from their configured paths or from the ProjectChecker.zip
+ * embedded in the plugin.
+ *
+ * The zip is copied once per content to tools/&lt;sha-256 of the zip&gt;.zip under the
+ * sonar.msbuild.cache.path directory, shared by all analyses of the machine. The entries
+ * a tool needs are extracted from it with random access into tools/&lt;sha-256&gt; the
+ * first time the tool is run, and the tool is marked extracted by a &lt;tool&gt;.complete
+ * file written last. The entries of a tool are the glob patterns of its line in the
+ * tools.manifest entry of the zip, patterns starting with ! exclude entries; without a
+ * manifest line every entry is extracted. Entries are written to a temporary file renamed
+ * once complete, entries already extracted for another tool are kept.
+ *
+ * Analyses running in parallel, in this process or in others, take a file lock on
+ * tools/&lt;sha-256&gt;.lock: the first one extracts while the others wait for it and use
+ * its extraction. When the cache directory cannot be written the tools are extracted
+ * under the directory given by the sensor.
  */
 @InstantiationStrategy(InstantiationStrategy.PER_BATCH)
 @ScannerSide()
@@ -61,18 +94,31 @@ public class MSBuildRunnerExtractor {
 
   public static final Logger LOG = Loggers.get(MSBuildRunnerExtractor.class);
   
-  private static final String N_PROJECT = "ProjectChecker";
   private static final String N_PROJECT_ZIP = "ProjectChecker.zip";
+  private static final String N_MANIFEST = "tools.manifest";
+  private static final String N_TOOLS = "tools";
+  private static final String N_COMPLETE_SUFFIX = ".complete";
+  private static final String N_LOCK_SUFFIX = ".lock";
+  private static final String N_TEMP_SUFFIX = ".tmp";
+
+  // file locks are held by the process, threads of the process wait on this monitor first
+  private static final Object PROCESS_LOCK = new Object();
   
   private static final String N_PROJECT_CHECKER_EXE = "ProjectCheckerRunner.exe";  
   private static final String N_DIAGRAM_CREATOR_EXE = "MSbuildPackageDiagramCreator.exe";
   
   private final Configuration settings;
-  private File fileProjectChecker = null;
-  private File fileDiagramCreator = null;
+  private final URL archive;
+  private String hash = null;
+  private File toolsRoot = null;
 
   public MSBuildRunnerExtractor(Configuration settings) {
+    this(settings, MSBuildRunnerExtractor.class.getResource("/" + N_PROJECT_ZIP));
+  }
+
+  MSBuildRunnerExtractor(Configuration settings, URL archive) {
     this.settings = settings;
+    this.archive = archive;
   }
 
   public File projectCheckerFile(String rootDir) throws IOException {
@@ -81,11 +127,7 @@ public class MSBuildRunnerExtractor {
       return new File(path.get());
     } 
     
-    if (fileProjectChecker == null) {
-      fileProjectChecker = unzipProjectCheckerFile(N_PROJECT_CHECKER_EXE, rootDir);
-    }
-
-    return fileProjectChecker;
+    return toolFile(N_PROJECT_CHECKER_EXE, rootDir);
   }
   
   public File diagramCreatorFile(String rootDir) throws IOException {
@@ -94,36 +136,165 @@ public class MSBuildRunnerExtractor {
       return new File(path.get());
     }     
     
-    if (fileDiagramCreator == null) {
-      LOG.info("Unzip Diagram Creator to: {} => {}", N_DIAGRAM_CREATOR_EXE, rootDir);
-      fileDiagramCreator = unzipProjectCheckerFile(N_DIAGRAM_CREATOR_EXE, rootDir);
-    }
-
-    return fileDiagramCreator;
+    return toolFile(N_DIAGRAM_CREATOR_EXE, rootDir);
   }  
 
-  private File unzipProjectCheckerFile(String fileName, String rootDir) throws IOException {
-    File toolWorkingDir = new File(rootDir, N_PROJECT);
-    File zipFile = new File(rootDir, N_PROJECT_ZIP);
-    
-    if (zipFile.exists()) {
-      return new File(toolWorkingDir, fileName);
+  private synchronized File toolFile(String tool, String rootDir) throws IOException {
+    if (hash == null) {
+      hash = archiveHash();
     }
+    if (toolsRoot == null) {
+      File cacheRoot = new File(MSBuildUtils.getCacheDirectory(settings), N_TOOLS);
+      try {
+        extract(cacheRoot, tool);
+        toolsRoot = cacheRoot;
+      } catch (IOException e) {
+        LOG.warn("Unable to extract {} into the cache, using the work directory: {}", N_PROJECT_ZIP, e.getMessage());
+        File workRoot = new File(rootDir, N_TOOLS);
+        extract(workRoot, tool);
+        toolsRoot = workRoot;
+      }
+    } else {
+      extract(toolsRoot, tool);
+    }
+    return new File(new File(toolsRoot, hash), tool);
+  }
 
-    try {
+  private void extract(File root, String tool) throws IOException {
+    File target = new File(root, hash);
+    File complete = new File(target, tool + N_COMPLETE_SUFFIX);
+    if (complete.isFile()) {
+      LOG.debug("Using {} extracted in: {}", tool, target);
+      return;
+    }
 
-      LOG.info("Unzip File: {} => {}", N_PROJECT_ZIP, toolWorkingDir.getAbsolutePath());
-      try (InputStream is = getClass().getResourceAsStream("/" + N_PROJECT_ZIP)) {
-        Files.copy(is, zipFile.toPath());
+    Files.createDirectories(root.toPath());
+    synchronized (PROCESS_LOCK) {
+      try (FileChannel channel = FileChannel.open(new File(root, hash + N_LOCK_SUFFIX).toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+        FileLock lock = channel.lock();
+        try {
+          if (complete.isFile()) {
+            LOG.debug("Using {} extracted by another analysis in: {}", tool, target);
+            return;
+          }
+          // left over by an analysis killed during its extraction
+          deleteTemporaryFiles(root.toPath());
+          extractLocked(root, target, tool);
+          Files.createFile(complete.toPath());
+        } finally {
+          lock.release();
+        }
       }
+    }
+  }
 
-      UnZip unZip = new UnZip();
-      unZip.unZipIt(zipFile.getAbsolutePath(), toolWorkingDir.getAbsolutePath());
-        
-      return new File(toolWorkingDir, fileName);
+  private void extractLocked(File root, File target, String tool) throws IOException {
+    Path temp = new File(root, hash + N_TEMP_SUFFIX).toPath();
+    try (ZipFile zip = new ZipFile(archiveCopy(root).toFile())) {
+      Predicate<String> entries = entries(zip, tool);
+      LOG.info("Unzip {} from {} => {}", tool, N_PROJECT_ZIP, target.getAbsolutePath());
+      int extracted = new UnZip().unZipEntries(zip, target.toPath(), temp, entries);
+      LOG.debug("{} entries extracted for {}", extracted, tool);
     } catch (IOException e) {
-      LOG.error("Unable to unzip File: {} => {}", fileName, e.getMessage());
+      LOG.error("Unable to unzip File: {} => {}", N_PROJECT_ZIP, e.getMessage());
       throw e;
+    } finally {
+      deleteRecursively(temp);
+    }
+  }
+
+  /**
+   * The zip in the tools directory, copied from the plugin on first use.
+   */
+  private Path archiveCopy(File root) throws IOException {
+    Path copy = new File(root, hash + ".zip").toPath();
+    if (!Files.isRegularFile(copy)) {
+      Path temp = Files.createTempFile(root.toPath(), hash, N_TEMP_SUFFIX);
+      try {
+        try (InputStream is = openArchive()) {
+          Files.copy(is, temp, StandardCopyOption.REPLACE_EXISTING);
+        }
+        MSBuildUtils.moveReplacing(temp, copy);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    }
+    return copy;
+  }
+
+  /**
+   * Entries of the zip needed by the tool, from the manifest.
+   */
+  private static Predicate<String> entries(ZipFile zip, String tool) throws IOException {
+    ZipEntry manifest = zip.getEntry(N_MANIFEST);
+    if (manifest == null) {
+      return name -> true;
+    }
+    Properties tools = new Properties();
+    try (InputStream is = zip.getInputStream(manifest)) {
+      tools.load(is);
+    }
+    String patterns = tools.getProperty(tool);
+    if (patterns == null) {
+      LOG.debug("{} not in {}, extracting every entry", tool, N_MANIFEST);
+      return name -> true;
+    }
+
+    List<PathMatcher> includes = new ArrayList<>();
+    List<PathMatcher> excludes = new ArrayList<>();
+    for (String pattern : patterns.trim().split("\\s+")) {
+      if (pattern.startsWith("!")) {
+        excludes.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern.substring(1)));
+      } else if (!pattern.isEmpty()) {
+        includes.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+      }
+    }
+    return name -> {
+      if (name.equals(tool)) {
+        return true;
+      }
+      Path path = Paths.get(name);
+      return includes.stream().anyMatch(matcher -> matcher.matches(path))
+        && excludes.stream().noneMatch(matcher -> matcher.matches(path));
+    };
+  }
+
+  private void deleteTemporaryFiles(Path root) throws IOException {
+    try (DirectoryStream<Path> temporaries = Files.newDirectoryStream(root, hash + "*" + N_TEMP_SUFFIX)) {
+      for (Path temporary : temporaries) {
+        deleteRecursively(temporary);
+      }
+    }
+  }
+
+  private String archiveHash() throws IOException {
+    try (InputStream is = openArchive()) {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = is.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+      return MSBuildUtils.toHex(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  private InputStream openArchive() throws IOException {
+    if (archive == null) {
+      throw new IOException(N_PROJECT_ZIP + " not found in the plugin");
+    }
+    return archive.openStream();
+  }
+
+  private static void deleteRecursively(Path path) throws IOException {
+    if (!Files.exists(path)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(path)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
     }
   }
 }
@@ -0,0 +1,565 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.sonar.api.Startable;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.batch.ScannerSide;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.utils.command.Command;
+import org.sonar.api.utils.command.StreamConsumer;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Runs the external tools of the plugin, the project checker and the diagram creator.
+ *
+ * By default every run starts a new process. With sonar.msbuild.daemon.enabled
+ * the tool is started once with /daemon and kept alive for the following runs of
+ * the batch, saving the runtime start up, assembly loading and JIT each time.
+ * A daemon reads one request per line on stdin and writes the output of the run
+ * on stdout followed by the exit code:
+ * <pre>
+ *   #ping                    answered with #pong
+ *   #run&lt;TAB&gt;arg&lt;TAB&gt;arg...  answered with the tool output, then #exit&lt;TAB&gt;code
+ *   #quit                    or end of stdin, the daemon exits
+ * </pre>
+ * The tool output may not end with a line break, so #pong and #exit are written
+ * on a line of their own and recognised at the end of a line as well.
+ * A daemon is health checked before each run and replaced when it does not
+ * answer. Daemons idle for sonar.msbuild.daemon.idleTimeout seconds are stopped,
+ * all of them are stopped with the batch.
+ *
+ * Every run is watched: the tool is stopped when the run exceeds its timeout, when
+ * it writes no line for its inactivity timeout or when the analysis is cancelled.
+ * A summary of the run, with the last lines it wrote, is logged when it is stopped.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+@ScannerSide()
+public class MSBuildToolExecutor implements Startable {
+
+  public static final Logger LOG = Loggers.get(MSBuildToolExecutor.class);
+
+  public static final String DAEMON_ENABLED = "sonar.msbuild.daemon.enabled";
+  public static final String DAEMON_IDLE_TIMEOUT = "sonar.msbuild.daemon.idleTimeout";
+
+  static final String DAEMON_ARGUMENT = "/daemon";
+
+  private static final String PONG = "#pong";
+  private static final Pattern EXIT = Pattern.compile("#exit\t(-?\\d+)\\s*$");
+
+  private static final int DEFAULT_IDLE_TIMEOUT = 300;
+  private static final long HEALTH_CHECK_TIMEOUT = 10000;
+  private static final long WATCH_INTERVAL = 200;
+  private static final int SUMMARY_LINES = 20;
+
+  private final boolean daemonEnabled;
+  private final long idleTimeout;
+  private final Map<String, Deque<Daemon>> idleDaemons = new HashMap<>();
+  private ScheduledExecutorService idleChecker;
+  private int started;
+
+  public MSBuildToolExecutor(Configuration settings) {
+    this.daemonEnabled = settings.getBoolean(DAEMON_ENABLED).orElse(false);
+    this.idleTimeout = TimeUnit.SECONDS.toMillis(settings.getInt(DAEMON_IDLE_TIMEOUT).filter(timeout -> timeout > 0).orElse(DEFAULT_IDLE_TIMEOUT));
+  }
+
+  @Override
+  public void start() {
+    // daemons are started on first use
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (idleChecker != null) {
+      idleChecker.shutdownNow();
+      idleChecker = null;
+    }
+    for (Deque<Daemon> daemons : idleDaemons.values()) {
+      for (Daemon daemon : daemons) {
+        daemon.quit();
+      }
+    }
+    idleDaemons.clear();
+  }
+
+  /**
+   * Runs the tool started by the launch command with the arguments.
+   *
+   * @param launch executable and arguments starting the tool, without the arguments of this run
+   * @param arguments arguments of this run
+   * @return the exit code of the run
+   */
+  public int execute(Command launch, List<String> arguments, StreamConsumer stdOut, StreamConsumer stdErr, long timeoutMilliseconds) {
+    return execute(launch, arguments, stdOut, stdErr, timeoutMilliseconds, 0, () -> false);
+  }
+
+  /**
+   * Runs the tool started by the launch command with the arguments, stopping it when the run
+   * takes too long, stalls or is cancelled.
+   *
+   * @param timeoutMilliseconds maximum duration of the run, 0 for no limit
+   * @param inactivityMilliseconds maximum time without a line written by the tool, 0 for no limit
+   * @param cancelled true when the run must be stopped
+   * @return the exit code of the run
+   * @throws IllegalStateException when the run is stopped or fails
+   */
+  public int execute(Command launch, List<String> arguments, StreamConsumer stdOut, StreamConsumer stdErr,
+    long timeoutMilliseconds, long inactivityMilliseconds, BooleanSupplier cancelled) {
+    Watchdog watchdog = new Watchdog(timeoutMilliseconds, inactivityMilliseconds, cancelled);
+    StreamConsumer watchedOut = watchdog.watch(stdOut);
+    StreamConsumer watchedErr = watchdog.watch(stdErr);
+    String key = launch.toCommandLine();
+
+    if (!daemonEnabled) {
+      List<String> command = new ArrayList<>();
+      command.add(launch.getExecutable());
+      command.addAll(launch.getArguments());
+      command.addAll(arguments);
+      try {
+        return runProcess(launch, command, watchedOut, watchedErr, watchdog);
+      } catch (ToolStoppedException e) {
+        throw stopped(key, watchdog, e.getMessage());
+      } catch (IOException e) {
+        throw new IllegalStateException("Unable to run tool: " + e.getMessage(), e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Tool interrupted", e);
+      }
+    }
+
+    Daemon daemon = acquire(key, launch);
+    try {
+      int exitCode = daemon.run(arguments, watchedOut, watchedErr, watchdog);
+      release(key, daemon);
+      return exitCode;
+    } catch (ToolStoppedException e) {
+      daemon.destroy();
+      throw stopped(key, watchdog, e.getMessage());
+    } catch (IOException | RuntimeException e) {
+      daemon.destroy();
+      throw new IllegalStateException("Tool daemon failed: " + e.getMessage(), e);
+    } catch (InterruptedException e) {
+      daemon.destroy();
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Tool daemon interrupted", e);
+    }
+  }
+
+  private static IllegalStateException stopped(String key, Watchdog watchdog, String reason) {
+    LOG.warn(watchdog.summary(key, reason));
+    return new IllegalStateException("Tool stopped: " + reason);
+  }
+
+  /**
+   * Runs the command in a new process, watched until it exits.
+   */
+  private static int runProcess(Command launch, List<String> command, StreamConsumer stdOut, StreamConsumer stdErr,
+    Watchdog watchdog) throws IOException, InterruptedException {
+    ProcessBuilder builder = new ProcessBuilder(command);
+    if (launch.getDirectory() != null) {
+      builder.directory(launch.getDirectory());
+    }
+    builder.environment().putAll(launch.getEnvironmentVariables());
+    Process process = builder.start();
+    process.getOutputStream().close();
+    Thread out = pump(new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)), "stdout", stdOut, null);
+    Thread err = pump(new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8)), "stderr", stdErr, null);
+    try {
+      while (!process.waitFor(WATCH_INTERVAL, TimeUnit.MILLISECONDS)) {
+        watchdog.ensureRunning();
+      }
+      // a child process of the tool may still hold its streams
+      for (Thread pump : Arrays.asList(out, err)) {
+        pump.join(WATCH_INTERVAL);
+        while (pump.isAlive()) {
+          watchdog.ensureRunning();
+          pump.join(WATCH_INTERVAL);
+        }
+      }
+      return process.exitValue();
+    } finally {
+      if (process.isAlive()) {
+        process.destroyForcibly();
+      }
+    }
+  }
+
+  /**
+   * Reads the lines of a tool stream on a background thread.
+   */
+  private static Thread pump(BufferedReader reader, String name, StreamConsumer consumer, Runnable onEnd) {
+    Thread thread = new Thread(() -> {
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          consumer.consumeLine(line);
+        }
+      } catch (IOException e) {
+        LOG.debug("Tool {} closed: {}", name, e.getMessage());
+      } finally {
+        if (onEnd != null) {
+          onEnd.run();
+        }
+      }
+    }, "msbuild-tool-" + name);
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  /**
+   * Number of daemon processes started since the batch started.
+   */
+  public synchronized int getStartedCount() {
+    return started;
+  }
+
+  /**
+   * Number of daemons waiting for a run.
+   */
+  public synchronized int getIdleCount() {
+    int count = 0;
+    for (Deque<Daemon> daemons : idleDaemons.values()) {
+      count += daemons.size();
+    }
+    return count;
+  }
+
+  private Daemon acquire(String key, Command launch) {
+    while (true) {
+      Daemon daemon;
+      synchronized (this) {
+        Deque<Daemon> daemons = idleDaemons.get(key);
+        daemon = daemons == null ? null : daemons.poll();
+        if (daemon == null) {
+          started++;
+          break;
+        }
+      }
+      if (daemon.isHealthy()) {
+        return daemon;
+      }
+      LOG.info("Tool daemon not responding, starting a new one: {}", key);
+      daemon.destroy();
+    }
+
+    try {
+      LOG.info("Start tool daemon: {}", key);
+      return Daemon.start(launch);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to start tool daemon: " + e.getMessage(), e);
+    }
+  }
+
+  private synchronized void release(String key, Daemon daemon) {
+    daemon.lastUsed = System.currentTimeMillis();
+    idleDaemons.computeIfAbsent(key, k -> new ArrayDeque<>()).push(daemon);
+    if (idleChecker == null) {
+      idleChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "msbuild-daemon-idle-checker");
+        thread.setDaemon(true);
+        return thread;
+      });
+      long period = Math.max(100, Math.min(idleTimeout / 2, 10000));
+      idleChecker.scheduleWithFixedDelay(this::stopIdleDaemons, period, period, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void stopIdleDaemons() {
+    List<Daemon> expired = new ArrayList<>();
+    synchronized (this) {
+      long now = System.currentTimeMillis();
+      for (Deque<Daemon> daemons : idleDaemons.values()) {
+        for (Iterator<Daemon> iterator = daemons.iterator(); iterator.hasNext();) {
+          Daemon daemon = iterator.next();
+          if (now - daemon.lastUsed >= idleTimeout) {
+            iterator.remove();
+            expired.add(daemon);
+          }
+        }
+      }
+    }
+    for (Daemon daemon : expired) {
+      LOG.debug("Stop idle tool daemon");
+      daemon.quit();
+    }
+  }
+
+  /**
+   * A tool process serving runs over its standard streams.
+   */
+  private static final class Daemon {
+
+    // compared by identity, so that a line of the tool cannot be taken for the end of the stream
+    private static final String END_OF_STREAM = new String("#eof");
+
+    private final Process process;
+    private final BufferedWriter requests;
+    private final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+    private volatile StreamConsumer stdErr;
+    private long lastUsed;
+
+    private Daemon(Process process) {
+      this.process = process;
+      this.requests = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+      pump(new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)), "daemon-stdout",
+        lines::add, () -> lines.add(END_OF_STREAM));
+      pump(new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8)), "daemon-stderr", line -> {
+        StreamConsumer consumer = stdErr;
+        if (consumer == null) {
+          LOG.warn(line);
+        } else {
+          consumer.consumeLine(line);
+        }
+      }, null);
+    }
+
+    private static Daemon start(Command launch) throws IOException {
+      List<String> command = new ArrayList<>();
+      command.add(launch.getExecutable());
+      command.addAll(launch.getArguments());
+      command.add(DAEMON_ARGUMENT);
+      ProcessBuilder builder = new ProcessBuilder(command);
+      if (launch.getDirectory() != null) {
+        builder.directory(launch.getDirectory());
+      }
+      builder.environment().putAll(launch.getEnvironmentVariables());
+      return new Daemon(builder.start());
+    }
+
+    private boolean isHealthy() {
+      try {
+        send("#ping");
+        long deadline = System.currentTimeMillis() + HEALTH_CHECK_TIMEOUT;
+        while (true) {
+          String line = lines.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+          if (line == null || line == END_OF_STREAM) {
+            return false;
+          }
+          if (line.endsWith(PONG)) {
+            return true;
+          }
+          if (!line.isEmpty()) {
+            LOG.debug(line);
+          }
+        }
+      } catch (IOException e) {
+        return false;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+
+    private int run(List<String> arguments, StreamConsumer stdOut, StreamConsumer stdErr, Watchdog watchdog)
+      throws IOException, InterruptedException {
+      StringBuilder request = new StringBuilder("#run");
+      for (String argument : arguments) {
+        if (argument.indexOf('\t') >= 0 || argument.indexOf('\n') >= 0 || argument.indexOf('\r') >= 0) {
+          throw new IllegalArgumentException("Argument cannot be passed to a tool daemon: " + argument);
+        }
+        request.append('\t').append(argument);
+      }
+
+      this.stdErr = stdErr;
+      try {
+        send(request.toString());
+        // an empty line is held back, it is the line break written before #exit
+        boolean emptyLine = false;
+        while (true) {
+          String line = lines.poll(WATCH_INTERVAL, TimeUnit.MILLISECONDS);
+          if (line == null) {
+            watchdog.ensureRunning();
+            continue;
+          }
+          if (line == END_OF_STREAM) {
+            throw new IllegalStateException("Daemon exited during the run");
+          }
+          Matcher exit = EXIT.matcher(line);
+          boolean exited = exit.find();
+          String output = exited ? line.substring(0, exit.start()) : line;
+          if (emptyLine && !(exited && output.isEmpty())) {
+            stdOut.consumeLine("");
+          }
+          emptyLine = !exited && output.isEmpty();
+          if (exited) {
+            if (!output.isEmpty()) {
+              stdOut.consumeLine(output);
+            }
+            return Integer.parseInt(exit.group(1));
+          }
+          if (!emptyLine) {
+            stdOut.consumeLine(output);
+          }
+        }
+      } finally {
+        this.stdErr = null;
+      }
+    }
+
+    private void send(String request) throws IOException {
+      requests.write(request);
+      requests.write('\n');
+      requests.flush();
+    }
+
+    private void quit() {
+      try {
+        send("#quit");
+        if (!process.waitFor(HEALTH_CHECK_TIMEOUT, TimeUnit.MILLISECONDS)) {
+          destroy();
+        }
+      } catch (IOException e) {
+        destroy();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        destroy();
+      }
+    }
+
+    private void destroy() {
+      process.destroyForcibly();
+    }
+  }
+
+  /**
+   * Signals a run stopped by its {@link Watchdog}.
+   */
+  private static final class ToolStoppedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private ToolStoppedException(String reason) {
+      super(reason);
+    }
+  }
+
+  /**
+   * Limits of one run, and what the tool wrote for the summary of a stopped run.
+   */
+  private static final class Watchdog {
+
+    private final long started = System.currentTimeMillis();
+    private final long timeout;
+    private final long inactivity;
+    private final BooleanSupplier cancelled;
+    private final Deque<String> lastLines = new ArrayDeque<>();
+    private volatile long lastLine = started;
+    private int lineCount;
+
+    private Watchdog(long timeout, long inactivity, BooleanSupplier cancelled) {
+      this.timeout = timeout;
+      this.inactivity = inactivity;
+      this.cancelled = cancelled;
+    }
+
+    private StreamConsumer watch(StreamConsumer consumer) {
+      return line -> {
+        record(line);
+        consumer.consumeLine(line);
+      };
+    }
+
+    private synchronized void record(String line) {
+      lastLine = System.currentTimeMillis();
+      lineCount++;
+      lastLines.addLast(line);
+      if (lastLines.size() > SUMMARY_LINES) {
+        lastLines.removeFirst();
+      }
+    }
+
+    private void ensureRunning() {
+      String reason = check();
+      if (reason != null) {
+        throw new ToolStoppedException(reason);
+      }
+    }
+
+    /**
+     * Reason to stop the run, or null while it may go on.
+     */
+    private String check() {
+      long now = System.currentTimeMillis();
+      if (cancelled.getAsBoolean()) {
+        return "analysis cancelled";
+      }
+      if (timeout > 0 && now - started >= timeout) {
+        return "timeout after " + timeout + " ms";
+      }
+      if (inactivity > 0 && now - lastLine >= inactivity) {
+        return "no output for " + (now - lastLine) + " ms";
+      }
+      return null;
+    }
+
+    private synchronized String summary(String key, String reason) {
+      long now = System.currentTimeMillis();
+      StringBuilder summary = new StringBuilder()
+        .append("Tool stopped, ").append(reason).append(": ").append(key)
+        .append("\n  running for ").append(now - started).append(" ms, ")
+        .append(lineCount).append(" lines written, last one ").append(now - lastLine).append(" ms ago");
+      if (!lastLines.isEmpty()) {
+        summary.append("\n  last lines:");
+        for (String line : lastLines) {
+          summary.append("\n    ").append(line);
+        }
+      }
+      return summary.toString();
+    }
+  }
+}
@@ -0,0 +1,524 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.dgmlcreator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.plugins.msbuild.MSBuildProjectModelCache;
+import org.sonar.plugins.msbuild.parsers.CompactDocument;
+import org.sonar.plugins.msbuild.parsers.ProjectModel;
+import org.sonar.plugins.msbuild.parsers.SaxParser;
+import org.sonar.plugins.msbuild.parsers.SolutionFile;
+import org.sonar.plugins.msbuild.projectchecker.InputFileIndex;
+import org.sonar.plugins.msbuild.utils.MSBuildUtils;
+import org.sonar.plugins.msbuild.utils.XmlFileWriter;
+
+/**
+ * Writes the DGML diagram of the solutions found under the base directory, with the
+ * nodes, links, categories and styles of the MSbuildPackageDiagramCreator tool, without
+ * running it.
+ *
+ * Solutions, then the projects they list, are read on a pool of sonar.msbuild.threads
+ * workers. A project listed by several solutions is parsed once, files of the analysis
+ * through the {@link MSBuildProjectModelCache}. Nothing is evaluated: ProjectReference
+ * items are resolved by their Project guid then by path, packages come from
+ * PackageReference items, packages.config and imports under the packages base path.
+ * Paths still holding a property once $(SolutionDir), $(MSBuildProjectDirectory) and
+ * $(MSBuildThisFileDirectory) are replaced are not resolved. Header dependencies and
+ * the build order between solutions need the evaluated projects, they are only plotted
+ * when the external tool is run.
+ */
+public final class DgmlDiagramGenerator {
+  private static final Logger LOG = Loggers.get(DgmlDiagramGenerator.class);
+
+  private static final String DGML_NAMESPACE = "http://schemas.microsoft.com/vs/2009/dgml";
+
+  private static final Pattern KNOWN_PROPERTY = Pattern.compile(
+    "\\$\\((SolutionDir|MSBuildProjectDirectory|MSBuildThisFileDirectory)\\)", Pattern.CASE_INSENSITIVE);
+  private static final Pattern LIST_SEPARATOR = Pattern.compile("[;\\s]+");
+
+  private static final String[] CATEGORIES = {
+    "Project", "Package", "Solution", "MSBuildTarget",
+    "TargetDependency", "PackageDependency", "BuildDependency", "ProjectDependency", "HeaderDependency", "SolutionBuildDependency"
+  };
+
+  // target type, category, property and color of the styles of DgmlHelper.fs
+  private static final String[][] STYLES = {
+    {"Node", "Project", "Background", "0,0,255"},
+    {"Node", "Package", "Background", "255,204,255"},
+    {"Node", "Solution", "Background", "255,102,102"},
+    {"Node", "MSBuildTarget", "Background", "179,139,0"},
+    {"Link", "TargetDependency", "Stroke", "18,205,205"},
+    {"Link", "PackageDependency", "Stroke", "160,160,160"},
+    {"Link", "BuildDependency", "Stroke", "30,144,255"},
+    {"Link", "SolutionBuildDependency", "Stroke", "191,61,182"},
+    {"Link", "ProjectDependency", "Stroke", "0,0,204"},
+    {"Link", "HeaderDependency", "Stroke", "0,153,0"}
+  };
+
+  private final FileSystem fs;
+  private final MSBuildProjectModelCache models;
+  private final int threads;
+  private final String packagesBasePath;
+  private final boolean plotProjects;
+  private final boolean plotPackages;
+  private final boolean plotBuildDependencies;
+  private final Set<String> ignoredPackages;
+  private final Set<String> solutionFilter;
+
+  public DgmlDiagramGenerator(Configuration settings, FileSystem fs, MSBuildProjectModelCache models, String packagesBasePath) {
+    this.fs = fs;
+    this.models = models;
+    this.threads = MSBuildUtils.getThreads(settings);
+    this.packagesBasePath = key(packagesBasePath);
+    this.plotProjects = settings.getBoolean(MSBuildDiagramCreatorSensor.PLOT_PROJECT_DEPENDENCIES).orElse(true);
+    this.plotPackages = settings.getBoolean(MSBuildDiagramCreatorSensor.PLOT_NUGET_DEPENDENCIES).orElse(true);
+    this.plotBuildDependencies = settings.getBoolean(MSBuildDiagramCreatorSensor.PLOT_SOLUTION_BUILD_DEPENDENCIES).orElse(true);
+    this.ignoredPackages = list(settings.getStringArray(MSBuildDiagramCreatorSensor.IGNORE_NUGET_PACKAGES));
+    this.solutionFilter = list(settings.getStringArray(MSBuildDiagramCreatorSensor.SOLUTION_NODE_FILTER));
+  }
+
+  /**
+   * Solution node, named as the diagram creator does.
+   */
+  private static final class Solution {
+    private final String name;
+    private final SolutionFile file;
+
+    private Solution(SolutionFile file) {
+      this.name = "SLN:" + baseName(file.getFile().getName());
+      this.file = file;
+    }
+  }
+
+  /**
+   * Project file with the packages of the packages.config next to it.
+   */
+  private static final class ProjectFile {
+    private final ProjectModel model;
+    private final List<String> packages;
+
+    private ProjectFile(ProjectModel model, List<String> packages) {
+      this.model = model;
+      this.packages = packages;
+    }
+  }
+
+  /**
+   * Node of a project with its links, resolved in its solution.
+   */
+  private static final class ProjectNode {
+    private final String name;
+    private final Set<String> references = new LinkedHashSet<>();
+    private final Set<String> packages = new LinkedHashSet<>();
+    private final Set<String> buildDependencies = new LinkedHashSet<>();
+    private boolean visible;
+
+    private ProjectNode(String name) {
+      this.name = name;
+    }
+  }
+
+  /**
+   * Writes the diagram of the solutions under the base directory to the output file.
+   *
+   * @return number of solutions in the diagram
+   */
+  public int generate(File output) throws IOException {
+    List<File> solutionFiles = SolutionFile.find(fs.baseDir());
+    LOG.debug("Generate dependency diagram of {} solutions", solutionFiles.size());
+
+    // the projects of the solutions are read on the same pool
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Solution>> parsed = new ArrayList<>();
+      for (File file : solutionFiles) {
+        parsed.add(executor.submit(() -> new Solution(SolutionFile.read(file))));
+      }
+      List<Solution> solutions = new ArrayList<>();
+      for (int i = 0; i < parsed.size(); i++) {
+        Solution solution = waitFor(parsed.get(i), solutionFiles.get(i));
+        if (solution != null) {
+          solutions.add(solution);
+        }
+      }
+
+      InputFileIndex index = new InputFileIndex(fs);
+      Map<String, Future<ProjectFile>> projects = new HashMap<>();
+      for (Solution solution : solutions) {
+        for (SolutionFile.Project project : solution.file.getProjects()) {
+          File path = project.getPath();
+          if (path.isFile()) {
+            InputFile input = index.find(path.getAbsolutePath());
+            projects.computeIfAbsent(key(path.getPath()), k -> executor.submit(() -> readProject(path, input)));
+          }
+        }
+      }
+
+      Map<Solution, List<ProjectNode>> nodes = new LinkedHashMap<>();
+      for (Solution solution : solutions) {
+        nodes.put(solution, resolve(solution, projects));
+      }
+      write(output, nodes);
+      return solutions.size();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Dependency diagram generation interrupted");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static <T> T waitFor(Future<T> result, File file) throws InterruptedException {
+    try {
+      return result.get();
+    } catch (ExecutionException e) {
+      LOG.warn("Unable to read {} for the dependency diagram: {}", file, e.getCause());
+      return null;
+    }
+  }
+
+  private ProjectFile readProject(File file, InputFile input) throws IOException {
+    ProjectModel model = input != null ? models.get(input) : parse(file);
+    if (model == null) {
+      LOG.debug("Unable to parse {} for the dependency diagram", file);
+    }
+    List<String> packages = new ArrayList<>();
+    File packagesConfig = new File(file.getParentFile(), "packages.config");
+    if (packagesConfig.isFile()) {
+      CompactDocument document;
+      try (InputStream is = Files.newInputStream(packagesConfig.toPath())) {
+        document = new SaxParser().parseCompactDocument(is, false, false);
+      }
+      if (document != null) {
+        for (int element : document.elements("package")) {
+          String id = document.attribute(element, "id");
+          String version = document.attribute(element, "version");
+          if (id != null) {
+            // the folder name of the package, as the imports of its build files
+            packages.add(version == null ? id : id + "." + version);
+          }
+        }
+      }
+    }
+    return new ProjectFile(model, packages);
+  }
+
+  private static ProjectModel parse(File file) throws IOException {
+    try (InputStream is = Files.newInputStream(file.toPath())) {
+      CompactDocument document = new SaxParser().parseCompactDocument(is, false, false);
+      return document == null ? null : ProjectModel.of(document);
+    }
+  }
+
+  private List<ProjectNode> resolve(Solution solution, Map<String, Future<ProjectFile>> projects) throws InterruptedException {
+    // solution folders are listed too, as the diagram creator does
+    List<SolutionFile.Project> listed = solution.file.getProjects();
+    Map<String, SolutionFile.Project> byGuid = new HashMap<>();
+    Map<String, SolutionFile.Project> byPath = new HashMap<>();
+    for (SolutionFile.Project project : listed) {
+      byGuid.put(project.getGuid(), project);
+      byPath.put(key(project.getPath().getPath()), project);
+    }
+
+    Map<String, ProjectNode> nodes = new LinkedHashMap<>();
+    for (SolutionFile.Project project : listed) {
+      nodes.put(project.getGuid(), new ProjectNode(project.getName()));
+    }
+    for (SolutionFile.Project project : listed) {
+      ProjectNode node = nodes.get(project.getGuid());
+      for (String dependency : project.getDependencies()) {
+        ProjectNode target = nodes.get(dependency);
+        if (target != null) {
+          node.buildDependencies.add(target.name);
+          node.visible = true;
+          target.visible = true;
+        }
+      }
+
+      Future<ProjectFile> parsed = projects.get(key(project.getPath().getPath()));
+      ProjectFile file = parsed == null ? null : waitFor(parsed, project.getPath());
+      if (file == null) {
+        continue;
+      }
+      for (String packageId : file.packages) {
+        addPackage(node, packageId);
+      }
+      if (file.model != null) {
+        File directory = project.getPath().getParentFile();
+        File solutionDirectory = solution.file.getFile().getParentFile();
+        for (ProjectModel.Entry reference : file.model.getProjectReferences()) {
+          node.references.add(referenceName(reference, directory, solutionDirectory, byGuid, byPath));
+          node.visible = true;
+        }
+        for (ProjectModel.Entry item : file.model.getItems()) {
+          if ("PackageReference".equals(item.getName()) && item.getValue() != null && !item.getValue().contains("$(")) {
+            addPackage(node, item.getValue().trim());
+          }
+        }
+        for (ProjectModel.Entry anImport : file.model.getImports()) {
+          String packageId = importedPackage(anImport.getValue(), directory, solutionDirectory);
+          if (packageId != null) {
+            addPackage(node, packageId);
+          }
+        }
+      }
+    }
+    return new ArrayList<>(nodes.values());
+  }
+
+  private static String referenceName(ProjectModel.Entry reference, File directory, File solutionDirectory,
+    Map<String, SolutionFile.Project> byGuid, Map<String, SolutionFile.Project> byPath) {
+    for (ProjectModel.Entry metadata : reference.getMetadata()) {
+      if ("Project".equals(metadata.getName())) {
+        SolutionFile.Project target = byGuid.get(SolutionFile.guid(metadata.getValue()));
+        if (target != null) {
+          return target.getName();
+        }
+      }
+    }
+    String include = reference.getValue() == null ? "" : reference.getValue().trim();
+    Path path = resolve(include, directory, solutionDirectory);
+    SolutionFile.Project target = path == null ? null : byPath.get(key(path.toString()));
+    if (target != null) {
+      return target.getName();
+    }
+    String normalized = include.replace('\\', '/');
+    return baseName(normalized.substring(normalized.lastIndexOf('/') + 1));
+  }
+
+  /**
+   * Folder of the package under the packages base path holding the imported file, or null.
+   */
+  private String importedPackage(String value, File directory, File solutionDirectory) {
+    Path path = resolve(value, directory, solutionDirectory);
+    if (path == null || packagesBasePath.isEmpty()) {
+      return null;
+    }
+    String imported = path.toString().replace('\\', '/');
+    String prefix = packagesBasePath + "/";
+    if (!imported.toLowerCase(Locale.ROOT).startsWith(prefix)) {
+      return null;
+    }
+    String relative = imported.substring(prefix.length());
+    int end = relative.indexOf('/');
+    return end > 0 ? relative.substring(0, end) : null;
+  }
+
+  private void addPackage(ProjectNode node, String packageId) {
+    String id = packageId.toLowerCase(Locale.ROOT);
+    for (String ignored : ignoredPackages) {
+      if (id.contains(ignored)) {
+        return;
+      }
+    }
+    node.packages.add(packageId);
+    node.visible = true;
+  }
+
+  /**
+   * Normalized path of an MSBuild path, null when it holds other properties.
+   */
+  private static Path resolve(String value, File directory, File solutionDirectory) {
+    if (value == null || value.trim().isEmpty()) {
+      return null;
+    }
+    Matcher matcher = KNOWN_PROPERTY.matcher(value.trim());
+    StringBuffer expanded = new StringBuffer();
+    while (matcher.find()) {
+      File replacement = "SolutionDir".equalsIgnoreCase(matcher.group(1)) ? solutionDirectory : directory;
+      matcher.appendReplacement(expanded, Matcher.quoteReplacement(replacement.getPath() + "/"));
+    }
+    matcher.appendTail(expanded);
+    if (expanded.indexOf("$(") >= 0) {
+      return null;
+    }
+    try {
+      Path path = Paths.get(expanded.toString().replace('\\', '/'));
+      return (path.isAbsolute() ? path : directory.toPath().resolve(path)).normalize();
+    } catch (InvalidPathException e) {
+      return null;
+    }
+  }
+
+  private void write(File output, Map<Solution, List<ProjectNode>> solutions) throws IOException {
+    try (XmlFileWriter writer = new XmlFileWriter(output)) {
+      writer.startElement("DirectedGraph")
+        .attribute("GraphDirection", "LeftToRight")
+        .attribute("xmlns", DGML_NAMESPACE);
+
+      writer.startElement("Nodes");
+      Set<String> packageNodes = new HashSet<>();
+      for (Map.Entry<Solution, List<ProjectNode>> solution : solutions.entrySet()) {
+        writer.emptyElement("Node")
+          .attribute("Id", solution.getKey().name)
+          .attribute("Group", "Collapsed")
+          .attribute("Category", "Solution");
+        for (ProjectNode project : solution.getValue()) {
+          writer.emptyElement("Node")
+            .attribute("Id", project.name)
+            .attribute("Label", project.name)
+            .attribute("Category", "Project");
+          if (!project.visible) {
+            writer.attribute("Visibility", "Hidden");
+          } else if (plotPackages) {
+            for (String packageId : project.packages) {
+              if (packageNodes.add(packageId)) {
+                writer.emptyElement("Node")
+                  .attribute("Id", packageId)
+                  .attribute("Label", packageId)
+                  .attribute("Category", "Package");
+              }
+            }
+          }
+        }
+      }
+      writer.endElement();
+
+      writer.startElement("Links");
+      for (Map.Entry<Solution, List<ProjectNode>> solution : solutions.entrySet()) {
+        if (isIncluded(solution.getKey())) {
+          writeLinks(writer, solution.getKey(), solution.getValue());
+        }
+      }
+      writer.endElement();
+
+      writer.startElement("Categories");
+      for (String category : CATEGORIES) {
+        writer.emptyElement("Category").attribute("Id", category);
+      }
+      writer.endElement();
+
+      writer.startElement("Styles");
+      for (String[] style : STYLES) {
+        writer.startElement("Style")
+          .attribute("TargetType", style[0])
+          .attribute("GroupLabel", style[1])
+          .attribute("ValueLabel", "True");
+        writer.emptyElement("Condition").attribute("Expression", "HasCategory('" + style[1] + "')");
+        writer.emptyElement("Setter").attribute("Property", style[2]).attribute("Expression", "Color.FromRgb(" + style[3] + ")");
+        writer.endElement();
+      }
+      writer.endElement();
+    }
+  }
+
+  private void writeLinks(XmlFileWriter writer, Solution solution, List<ProjectNode> projects) throws IOException {
+    for (ProjectNode project : projects) {
+      link(writer, solution.name, project.name, "Contains");
+      if (plotProjects) {
+        for (String reference : project.references) {
+          link(writer, project.name, reference, "ProjectDependency");
+        }
+      }
+      if (plotPackages) {
+        for (String packageId : project.packages) {
+          link(writer, project.name, packageId, "PackageDependency");
+        }
+      }
+      if (plotBuildDependencies) {
+        for (String dependency : project.buildDependencies) {
+          link(writer, project.name, dependency, "BuildDependency");
+        }
+      }
+    }
+  }
+
+  private static void link(XmlFileWriter writer, String source, String target, String category) throws IOException {
+    writer.emptyElement("Link")
+      .attribute("Source", source)
+      .attribute("Target", target)
+      .attribute("Category", category);
+  }
+
+  /**
+   * Links of a solution are written when the solution node filter is empty or names it,
+   * with or without the SLN: prefix.
+   */
+  private boolean isIncluded(Solution solution) {
+    String name = solution.name.toLowerCase(Locale.ROOT);
+    return solutionFilter.isEmpty() || solutionFilter.contains(name) || solutionFilter.contains(name.substring("sln:".length()));
+  }
+
+  private static Set<String> list(String[] values) {
+    Set<String> result = new LinkedHashSet<>();
+    for (String value : values) {
+      for (String element : LIST_SEPARATOR.split(value)) {
+        if (!element.isEmpty()) {
+          result.add(element.toLowerCase(Locale.ROOT));
+        }
+      }
+    }
+    return result;
+  }
+
+  private static String baseName(String fileName) {
+    int dot = fileName.lastIndexOf('.');
+    return dot > 0 ? fileName.substring(0, dot) : fileName;
+  }
+
+  /**
+   * MSBuild paths are resolved ignoring case.
+   */
+  private static String key(String path) {
+    return Paths.get(path).normalize().toString().replace('\\', '/').toLowerCase(Locale.ROOT);
+  }
+}
@@ -35,6 +35,8 @@ package org.sonar.plugins.msbuild.dgmlcreator;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 import org.sonar.plugins.msbuild.projectchecker.*;
@@ -44,7 +46,6 @@ import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.utils.command.Command;
-import org.sonar.api.utils.command.CommandExecutor;
 import org.sonar.api.utils.command.StreamConsumer;
 
 import org.sonar.api.batch.sensor.SensorDescriptor;
@@ -52,19 +53,36 @@ import org.sonar.api.config.Configuration;
 import org.sonar.plugins.msbuild.MSBuildRunnerExtractor;
 import org.sonar.plugins.msbuild.MSBuildLanguage;
 import org.sonar.plugins.msbuild.MSBuildMetrics;
+import org.sonar.plugins.msbuild.MSBuildProjectModelCache;
+import org.sonar.plugins.msbuild.MSBuildToolExecutor;
 import static org.sonar.plugins.msbuild.MSBuildPlugin.IGNORE_LIST_INCLUDES_FOLDERS;
 import org.sonar.plugins.msbuild.utils.MSBuildUtils;
+import org.sonar.plugins.msbuild.utils.XmlFileWriter;
 
+/**
+ * Saves the DGML dependency diagram of the solutions of the project as a measure.
+ *
+ * The diagram is written by {@link DgmlDiagramGenerator} in the scanner process, the
+ * MSbuildPackageDiagramCreator tool is run instead when sonar.msbuild.diagramCreator.external
+ * is set or a diagram creator path is given. Header dependencies are only plotted by the tool.
+ */
 public class MSBuildDiagramCreatorSensor implements Sensor {
   public static final Logger LOG = Loggers.get(MSBuildDiagramCreatorSensor.class);
   
   private final Configuration settings;
   private final MSBuildRunnerExtractor extractor;
+  private final MSBuildToolExecutor executor;
   private final FileSystem fs;
+  private final MSBuildProjectModelCache models;
   
   public static final String DIAGRAM_CREATOR_PATH = "sonar.msbuild.diagramCreator.path";
   public static final String DIAGRAM_CREATOR_ENABLED = "sonar.msbuild.diagramCreator.enabled";
+  public static final String DIAGRAM_CREATOR_EXTERNAL = "sonar.msbuild.diagramCreator.external";
+  public static final String DIAGRAM_CREATOR_TIMEOUT = "sonar.msbuild.diagramCreator.timeout";
+  public static final String DIAGRAM_CREATOR_INACTIVITY_TIMEOUT = "sonar.msbuild.diagramCreator.inactivityTimeout";
   public static final String PACKAGES_BASE_PATH  = "sonar.msbuild.packages.basePath";
+
+  private static final int DEFAULT_TIMEOUT = 3600;
   
   public static final String SOLUTION_NODE_FILTER  = "sonar.msbuild.solution.node.filter";
   public static final String PLOT_SOLUTION_BUILD_DEPENDENCIES  = "sonar.msbuild.plot.solution.build.dependencies";
@@ -77,10 +95,13 @@ public class MSBuildDiagramCreatorSensor implements Sensor {
   public static final String PLOT_HEADER_DEPENDENCIES_INSIDE_PROJECT  = "sonar.msbuild.plot.header.dependencies.inside.project";
   public static final String PLOT_HEADER_DEPENDENCIES  = "sonar.msbuild.plot.header.dependencies";
   
-  public MSBuildDiagramCreatorSensor(Configuration settings, MSBuildRunnerExtractor extractor, FileSystem fs) {
+  public MSBuildDiagramCreatorSensor(Configuration settings, MSBuildRunnerExtractor extractor, MSBuildToolExecutor executor, FileSystem fs,
+    MSBuildProjectModelCache models) {
     this.settings = settings;
     this.extractor = extractor;
+    this.executor = executor;
     this.fs = fs;
+    this.models = models;
   }
 
   @Override
@@ -101,69 +122,95 @@ public class MSBuildDiagramCreatorSensor implements Sensor {
         return;        
     }
     try {
-      analyze();
-      importResults(context);
+      String external = externalReason();
+      if (external != null) {
+        LOG.info("Dependency diagram written by the external diagram creator: {}", external);
+      }
+      boolean created = external != null ? analyze(context) : generate();
+      if (created) {
+        importResults(context);
+      }
     } catch (Exception ex) {
       LOG.warn("Failed to execute sensor '{0}' msbuild checks are not going to be available", ex.getMessage());
     } 
   }
 
-  private void analyze() {       
+  /**
+   * Why the external diagram creator is run, or null when the diagram is generated in process.
+   */
+  private String externalReason() {
+    if (settings.getBoolean(DIAGRAM_CREATOR_EXTERNAL).orElse(false)) {
+      return DIAGRAM_CREATOR_EXTERNAL + " is set";
+    }
+    Optional<String> path = settings.get(DIAGRAM_CREATOR_PATH);
+    if (path.isPresent() && !path.get().equals("")) {
+      return DIAGRAM_CREATOR_PATH + " is set";
+    }
+    return null;
+  }
+
+  /**
+   * @return false when the diagram could not be written, it is not imported
+   */
+  private boolean generate() {
+    if (settings.getBoolean(PLOT_HEADER_DEPENDENCIES).orElse(false)) {
+      LOG.debug("Header dependencies are only plotted when {} is set", DIAGRAM_CREATOR_EXTERNAL);
+    }
+    try {
+      String projectRoot = fs.baseDir().getCanonicalPath();
+      File analysisOutput = new File(fs.workDir(), "msbuild-diagram-output.dgml");
+      int solutions = new DgmlDiagramGenerator(settings, fs, models, packagesBasePath(projectRoot)).generate(analysisOutput);
+      LOG.info("Dependency diagram of {} solutions written to {}", solutions, analysisOutput);
+      return true;
+    } catch (IOException ex) {
+      LOG.warn("Cannot generate the dependency diagram, details: '{}'", ex.toString());
+      return false;
+    }
+  }
+
+  /**
+   * Packages base path setting when absolute, Packages under the project root otherwise.
+   */
+  private String packagesBasePath(String projectRoot) {
+    Optional<String> basePath = settings.get(PACKAGES_BASE_PATH);
+    if (basePath.isPresent() && new File(basePath.get()).isAbsolute()) {
+      return basePath.get();
+    }
+    return new File(projectRoot, "Packages").toString();
+  }
+
+  /**
+   * @return false when the diagram creator could not run to its end, its output is not imported
+   */
+  private boolean analyze(SensorContext context) {
     try {       
       String projectRoot = fs.baseDir().getCanonicalPath();      
-      String projectRootPackages = new File(projectRoot, "Packages").toString();
-      
-      if (new File(settings.get(PACKAGES_BASE_PATH).get()).isAbsolute()) {
-        projectRootPackages = settings.get(PACKAGES_BASE_PATH).get();
-      }
-      
-      StringBuilder sb = new StringBuilder();
-      appendLine(sb, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-      appendLine(sb, "<Configuration>");
-      appendLine(sb, "  <IgnoreNugetPackages>");
-      appendLine(sb, "      " + MSBuildUtils.getStringArrayProperty(IGNORE_NUGET_PACKAGES, this.settings));
-      appendLine(sb, "  </IgnoreNugetPackages>");
-      appendLine(sb, "  <PackageBasePath>" + projectRootPackages + "</PackageBasePath>");
-      appendLine(sb, "  <IgnoreIncludeFolders>");
-      appendLine(sb, "      " + MSBuildUtils.getStringArrayProperty(IGNORE_LIST_INCLUDES_FOLDERS, this.settings));
-      appendLine(sb, "  </IgnoreIncludeFolders>");
-      appendLine(sb, "  <PlotHeaderDependency>" + (settings.getBoolean(PLOT_HEADER_DEPENDENCIES).get() ? "true" : "false")  + "</PlotHeaderDependency>");
-      appendLine(sb, "  <CheckRedundantIncludes>false</CheckRedundantIncludes>");
-      appendLine(sb, "  <PlotPackagesDependecies>" + (settings.getBoolean(PLOT_NUGET_DEPENDENCIES).get() ? "true" : "false")  + "</PlotPackagesDependecies>");
-      appendLine(sb, "  <PlotProjectDependencies>" + (settings.getBoolean(PLOT_PROJECT_DEPENDENCIES).get() ? "true" : "false")  + "</PlotProjectDependencies>");
-      appendLine(sb, "  <PlotSolutionBuildDependencies>" + (settings.getBoolean(PLOT_SOLUTION_BUILD_DEPENDENCIES).get() ? "true" : "false")  + "</PlotSolutionBuildDependencies>");
-      appendLine(sb, "  <PlotHeaderDependencyInsideProject>" + (settings.getBoolean(PLOT_HEADER_DEPENDENCIES_INSIDE_PROJECT).get() ? "true" : "false")  + "</PlotHeaderDependencyInsideProject>");
-      appendLine(sb, "  <PlotHeaderDependencFilter>");
-      appendLine(sb, "      " + MSBuildUtils.getStringArrayProperty(HEADER_DEPENDENCY_FILTER, this.settings));
-      appendLine(sb, "  </PlotHeaderDependencFilter>");
-      appendLine(sb, "  <PlotSolutionNodeFilter>");
-      appendLine(sb, "      " + MSBuildUtils.getStringArrayProperty(SOLUTION_NODE_FILTER, this.settings));
-      appendLine(sb, "  </PlotSolutionNodeFilter>");       
-      appendLine(sb, "</Configuration>");
+      String projectRootPackages = packagesBasePath(projectRoot);
       
       File analysisInput = toolInput();
       File analysisOutput = new File(fs.workDir(), "msbuild-diagram-output");      
       
-      MSBuildUtils.writeStringToFile(analysisInput.getAbsolutePath(), sb.toString());
+      writeConfiguration(analysisInput, projectRootPackages);
       
       File executableFile = extractor.diagramCreatorFile(fs.workDir().getCanonicalPath());
       
-      Command command;
+      Command launch;
       if (OsUtils.isWindows()) {
-        command = Command.create(executableFile.getAbsolutePath())
-                .addArgument("/i:" + analysisInput.getAbsolutePath())
-                .addArgument("/o:" + analysisOutput.getAbsolutePath())
-                .addArgument("/d:" + projectRoot);
+        launch = Command.create(executableFile.getAbsolutePath());
       } else {
-        command = Command.create("mono")
-                .addArgument(executableFile.getAbsolutePath())
-                .addArgument("/i:" + analysisInput.getAbsolutePath())
-                .addArgument("/o:" + analysisOutput.getAbsolutePath())
-                .addArgument("/d:" + projectRoot);
+        launch = Command.create("mono").addArgument(executableFile.getAbsolutePath());
       }
+      List<String> arguments = Arrays.asList(
+        "/i:" + analysisInput.getAbsolutePath(),
+        "/o:" + analysisOutput.getAbsolutePath(),
+        "/d:" + projectRoot);
       
-      LOG.debug(command.toCommandLine());
-      CommandExecutor.create().execute(command, new LogInfoStreamConsumer(), new LogErrorStreamConsumer(), Integer.MAX_VALUE);
+      LOG.debug(launch.toCommandLine() + " " + String.join(" ", arguments));
+      executor.execute(launch, arguments, new LogInfoStreamConsumer(), new LogErrorStreamConsumer(),
+        MSBuildUtils.getTimeout(settings, DIAGRAM_CREATOR_TIMEOUT, DEFAULT_TIMEOUT),
+        MSBuildUtils.getTimeout(settings, DIAGRAM_CREATOR_INACTIVITY_TIMEOUT, 0),
+        context::isCancelled);
+      return true;
     } catch (Exception ex) {
         String msg = new StringBuilder()
           .append("Cannot execute diagram creator, details: '")
@@ -172,9 +219,35 @@ public class MSBuildDiagramCreatorSensor implements Sensor {
           .toString();
         LOG.info("Diagram Creator failed to execute, will skip");
         LOG.warn(msg);
+        return false;
     }
   }
 
+  /**
+   * Streams the Configuration document read by the diagram creator.
+   */
+  private void writeConfiguration(File analysisInput, String projectRootPackages) throws IOException {
+    try (XmlFileWriter writer = new XmlFileWriter(analysisInput)) {
+      writer.startElement("Configuration");
+      writer.element("IgnoreNugetPackages", MSBuildUtils.getStringArrayProperty(IGNORE_NUGET_PACKAGES, this.settings));
+      writer.element("PackageBasePath", projectRootPackages);
+      writer.element("IgnoreIncludeFolders", MSBuildUtils.getStringArrayProperty(IGNORE_LIST_INCLUDES_FOLDERS, this.settings));
+      writer.element("PlotHeaderDependency", flag(PLOT_HEADER_DEPENDENCIES));
+      writer.element("CheckRedundantIncludes", "false");
+      writer.element("PlotPackagesDependecies", flag(PLOT_NUGET_DEPENDENCIES));
+      writer.element("PlotProjectDependencies", flag(PLOT_PROJECT_DEPENDENCIES));
+      writer.element("PlotSolutionBuildDependencies", flag(PLOT_SOLUTION_BUILD_DEPENDENCIES));
+      writer.element("PlotHeaderDependencyInsideProject", flag(PLOT_HEADER_DEPENDENCIES_INSIDE_PROJECT));
+      writer.element("PlotHeaderDependencFilter", MSBuildUtils.getStringArrayProperty(HEADER_DEPENDENCY_FILTER, this.settings));
+      writer.element("PlotSolutionNodeFilter", MSBuildUtils.getStringArrayProperty(SOLUTION_NODE_FILTER, this.settings));
+      writer.endElement();
+    }
+  }
+
+  private String flag(String key) {
+    return settings.getBoolean(key).get() ? "true" : "false";
+  }
+
   private void importResults(SensorContext sensorContext) {
     try {
       File analysisOutput = new File(sensorContext.fileSystem().workDir(), "msbuild-diagram-output.dgml");
@@ -202,11 +275,6 @@ public class MSBuildDiagramCreatorSensor implements Sensor {
     }
   }
 
-  private void appendLine(StringBuilder sb, String line) {
-    sb.append(line);
-    sb.append("\r\n");
-  }
-
   private static class LogInfoStreamConsumer implements StreamConsumer {
 
     @Override
@@ -0,0 +1,267 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.parsers;
+
+import java.util.Arrays;
+
+/**
+ * Compact, read only, XML tree with line and column numbers.
+ *
+ * Nodes are indexes in parallel primitive arrays instead of objects, names are
+ * ids of the shared {@link SymbolTable}. Attributes are nodes too,
+ * they come before the child nodes of their element. Top level nodes have no
+ * parent, -1 is used for missing nodes, names and namespaces.
+ *
+ * Built by {@link SaxParser#parseCompactDocument}, at a fraction of the heap of
+ * the DOM built by {@link SaxParser#parseDocument}.
+ */
+public final class CompactDocument {
+
+  public static final byte ELEMENT = 1;
+  public static final byte ATTRIBUTE = 2;
+  public static final byte TEXT = 3;
+  public static final byte COMMENT = 4;
+
+  public static final int NONE = -1;
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final SymbolTable symbols;
+  private final int size;
+  private final byte[] kind;
+  private final int[] name;
+  private final int[] namespace;
+  private final int[] parent;
+  private final int[] firstChild;
+  private final int[] nextSibling;
+  private final int[] line;
+  private final int[] column;
+  private final String[] value;
+  private final int root;
+
+  private CompactDocument(Builder builder) {
+    symbols = builder.symbols;
+    size = builder.size;
+    kind = Arrays.copyOf(builder.kind, size);
+    name = Arrays.copyOf(builder.name, size);
+    namespace = Arrays.copyOf(builder.namespace, size);
+    parent = Arrays.copyOf(builder.parent, size);
+    firstChild = Arrays.copyOf(builder.firstChild, size);
+    nextSibling = Arrays.copyOf(builder.nextSibling, size);
+    line = Arrays.copyOf(builder.line, size);
+    column = Arrays.copyOf(builder.column, size);
+    value = Arrays.copyOf(builder.value, size);
+    root = builder.root;
+  }
+
+  /**
+   * Number of nodes, node ids go from 0 to size - 1 in document order.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * The document element, or NONE for an empty document.
+   */
+  public int root() {
+    return root;
+  }
+
+  public byte kind(int node) {
+    return kind[node];
+  }
+
+  /**
+   * Qualified name, or local name for a namespace aware parse, of an element or attribute.
+   */
+  public String name(int node) {
+    return symbols.name(name[node]);
+  }
+
+  /**
+   * Symbol id of the name of an element or attribute.
+   */
+  public int nameId(int node) {
+    return name[node];
+  }
+
+  public String namespace(int node) {
+    return symbols.name(namespace[node]);
+  }
+
+  /**
+   * Attribute value, text or comment content.
+   */
+  public String value(int node) {
+    return value[node];
+  }
+
+  public int parent(int node) {
+    return parent[node];
+  }
+
+  public int firstChild(int node) {
+    return firstChild[node];
+  }
+
+  public int nextSibling(int node) {
+    return nextSibling[node];
+  }
+
+  public int line(int node) {
+    return line[node];
+  }
+
+  public int column(int node) {
+    return column[node];
+  }
+
+  /**
+   * Value of the attribute of an element, or null.
+   */
+  public String attribute(int element, String attributeName) {
+    int id = symbols.find(attributeName);
+    if (id == NONE) {
+      return null;
+    }
+    for (int child = firstChild[element]; child != NONE && kind[child] == ATTRIBUTE; child = nextSibling[child]) {
+      if (name[child] == id) {
+        return value[child];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Elements with the given name, in document order.
+   */
+  public int[] elements(String elementName) {
+    int id = symbols.find(elementName);
+    if (id == NONE) {
+      return new int[0];
+    }
+    int[] result = new int[8];
+    int count = 0;
+    for (int node = 0; node < size; node++) {
+      if (kind[node] == ELEMENT && name[node] == id) {
+        if (count == result.length) {
+          result = Arrays.copyOf(result, count * 2);
+        }
+        result[count++] = node;
+      }
+    }
+    return Arrays.copyOf(result, count);
+  }
+
+  /**
+   * Appends nodes in document order, a node is complete once all its children are added.
+   */
+  static final class Builder {
+
+    private final SymbolTable symbols;
+    private int size;
+    private byte[] kind = new byte[INITIAL_CAPACITY];
+    private int[] name = new int[INITIAL_CAPACITY];
+    private int[] namespace = new int[INITIAL_CAPACITY];
+    private int[] parent = new int[INITIAL_CAPACITY];
+    private int[] firstChild = new int[INITIAL_CAPACITY];
+    private int[] nextSibling = new int[INITIAL_CAPACITY];
+    private int[] lastChild = new int[INITIAL_CAPACITY];
+    private int[] line = new int[INITIAL_CAPACITY];
+    private int[] column = new int[INITIAL_CAPACITY];
+    private String[] value = new String[INITIAL_CAPACITY];
+    private int lastTopLevel = NONE;
+    private int root = NONE;
+
+    Builder(SymbolTable symbols) {
+      this.symbols = symbols;
+    }
+
+    int add(byte nodeKind, String nodeName, String nodeNamespace, String nodeValue, int parentNode, int nodeLine, int nodeColumn) {
+      if (size == kind.length) {
+        grow();
+      }
+      int node = size++;
+      kind[node] = nodeKind;
+      name[node] = symbols.id(nodeName);
+      namespace[node] = symbols.id(nodeNamespace);
+      value[node] = nodeValue;
+      parent[node] = parentNode;
+      firstChild[node] = NONE;
+      nextSibling[node] = NONE;
+      lastChild[node] = NONE;
+      line[node] = nodeLine;
+      column[node] = nodeColumn;
+
+      int previous = parentNode == NONE ? lastTopLevel : lastChild[parentNode];
+      if (previous != NONE) {
+        nextSibling[previous] = node;
+      } else if (parentNode != NONE) {
+        firstChild[parentNode] = node;
+      }
+      if (parentNode == NONE) {
+        lastTopLevel = node;
+        if (nodeKind == ELEMENT && root == NONE) {
+          root = node;
+        }
+      } else {
+        lastChild[parentNode] = node;
+      }
+      return node;
+    }
+
+    int parent(int node) {
+      return parent[node];
+    }
+
+    private void grow() {
+      int capacity = kind.length * 2;
+      kind = Arrays.copyOf(kind, capacity);
+      name = Arrays.copyOf(name, capacity);
+      namespace = Arrays.copyOf(namespace, capacity);
+      parent = Arrays.copyOf(parent, capacity);
+      firstChild = Arrays.copyOf(firstChild, capacity);
+      nextSibling = Arrays.copyOf(nextSibling, capacity);
+      lastChild = Arrays.copyOf(lastChild, capacity);
+      line = Arrays.copyOf(line, capacity);
+      column = Arrays.copyOf(column, capacity);
+      value = Arrays.copyOf(value, capacity);
+    }
+
+    CompactDocument build() {
+      return new CompactDocument(this);
+    }
+  }
+}
@@ -55,7 +55,7 @@ import org.xml.sax.helpers.DefaultHandler;
  * Original from: https://github.com/SonarSource/sonar-xml
  * Modified to fit msbuild files
  */
-public final class DetectSchemaParser extends AbstractParser {
+public final class DetectSchemaParser {
   public static final Logger LOG = Loggers.get(DetectSchemaParser.class);
   /**
    * Doctype declaration in a Document.
@@ -142,15 +142,22 @@ public final class DetectSchemaParser extends AbstractParser {
   public Doctype findDoctype(InputStream input, InputFile file) throws ParserConfigurationException {
     Handler handler = new Handler();
 
+    SAXParser parser = null;
     try {
-      SAXParser parser = newSaxParser();
+      parser = SaxParserProvider.DEFAULT.acquire();
       XMLReader xmlReader = parser.getXMLReader();
       xmlReader.setFeature(Constants.XERCES_FEATURE_PREFIX + "continue-after-fatal-error", true);
       xmlReader.setProperty("http://xml.org/sax/properties/lexical-handler", handler);
       parser.parse(input, handler);
 
+    } catch (StopParserException ex) {
+      // root element reached
     } catch (IOException | ParserConfigurationException | SAXException ex ) {
-      LOG.error("countLinesOfComment fails for '{}' => '{}'", file.filename(), ex.getMessage());
+      LOG.error("findDoctype fails for '{}' => '{}'", file.filename(), ex.getMessage());
+    } finally {
+      if (parser != null) {
+        SaxParserProvider.DEFAULT.release(parser);
+      }
     }
     
     return handler.doctype;
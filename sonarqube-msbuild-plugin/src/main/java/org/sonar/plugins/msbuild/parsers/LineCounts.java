@@ -33,43 +33,50 @@
  */
 package org.sonar.plugins.msbuild.parsers;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
-import org.apache.xerces.jaxp.SAXParserFactoryImpl;
-import org.xml.sax.SAXException;
-
 /**
- * Provides reusable code for Xml parsers.
- * 
- * @author Matthijs Galesloot
+ * Line, blank line and comment line counts of a single MSBuild file, with the
+ * {@link StructureCounts} gathered in the same pass.
  */
-public abstract class AbstractParser {
+public final class LineCounts {
 
-  protected static final SAXParserFactory SAX_FACTORY;
+  private final int lines;
+  private final int blankLines;
+  private final int commentLines;
+  private final StructureCounts structure;
 
-  /**
-   * Build the SAXParserFactory.
-   */
-  static {
+  public LineCounts(int lines, int blankLines, int commentLines) {
+    this(lines, blankLines, commentLines, StructureCounts.EMPTY);
+  }
 
-    SAX_FACTORY = new SAXParserFactoryImpl();
+  public LineCounts(int lines, int blankLines, int commentLines, StructureCounts structure) {
+    this.lines = lines;
+    this.blankLines = blankLines;
+    this.commentLines = commentLines;
+    this.structure = structure;
+  }
+
+  public int getLines() {
+    return lines;
+  }
+
+  public int getBlankLines() {
+    return blankLines;
+  }
+
+  public int getCommentLines() {
+    return commentLines;
+  }
+
+  public StructureCounts getStructure() {
+    return structure;
+  }
 
-    try {
-      SAX_FACTORY.setValidating(false);
-      SAX_FACTORY.setNamespaceAware(false);
-      SAX_FACTORY.setFeature("http://xml.org/sax/features/validation", false);
-      SAX_FACTORY.setFeature("http://apache.org/xml/features/nonvalidating/load-dtd-grammar", false);
-      SAX_FACTORY.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-      SAX_FACTORY.setFeature("http://xml.org/sax/features/external-general-entities", false);
-      SAX_FACTORY.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
-    } catch (SAXException e) {
-    } catch (ParserConfigurationException e) {
-    }
+  public int getNcloc() {
+    return lines - blankLines - commentLines;
   }
 
-  protected SAXParser newSaxParser() throws ParserConfigurationException, SAXException {
-    return SAX_FACTORY.newSAXParser();
+  @Override
+  public String toString() {
+    return lines + "," + blankLines + "," + commentLines + " " + structure;
   }
 }
@@ -0,0 +1,498 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.parsers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Byte level lexer counting lines, blank lines and comment lines of MSBuild files.
+ *
+ * The lexer only recognises what the counts depend on: comments, CDATA sections,
+ * tags and line breaks. It works directly on the file bytes, so nothing is
+ * decoded or allocated per token. UTF-8, single byte charsets and UTF-16 are
+ * supported, the encoding is taken from the BOM or the first bytes of the
+ * document and otherwise from the charset of the input file.
+ *
+ * Comment lines are counted the same way {@link MSBuildLineCountParser#countLinesOfComment}
+ * does with SAX: every line break inside a comment is a comment line, and the
+ * line a comment ends on counts once character data or a start tag is found on
+ * a later line.
+ *
+ * The same pass gathers the {@link StructureCounts}: start tags are matched
+ * against the MSBuild element names and their Condition attributes are counted
+ * while the tag is skipped.
+ */
+public final class MSBuildLexer {
+
+  /**
+   * Files up to this size are read at once into a byte array reused by the
+   * calling thread, bigger files are read from their channel and lexed window
+   * by window. They are not memory mapped, a mapping keeps the file locked on
+   * Windows until it is garbage collected.
+   */
+  static final int WINDOW_THRESHOLD = 1024 * 1024;
+
+  private static final int INITIAL_WINDOW_SIZE = 64 * 1024;
+
+  private static final boolean[] TEXT_STOPS = stops('<');
+  private static final boolean[] TAG_STOPS = stops('>', '"', '\'', '/', 'C');
+  private static final boolean[] DOUBLE_QUOTE_STOPS = stops('"');
+  private static final boolean[] SINGLE_QUOTE_STOPS = stops('\'');
+  private static final boolean[][] DELIMITER_STOPS = {stops('-'), stops(']'), stops('?')};
+
+  private static final ThreadLocal<byte[]> WINDOWS = ThreadLocal.withInitial(() -> new byte[INITIAL_WINDOW_SIZE]);
+
+  private final byte[] window;
+  private final ByteBuffer source;
+  private final ReadableByteChannel channel;
+  private int limit;
+  private int pos;
+  private int width = 1;
+  private boolean bigEndian;
+
+  private int line = 1;
+  private int lines;
+  private int blankLines;
+  private boolean lineHasChars;
+  private boolean pendingCarriageReturn;
+
+  private int commentLines;
+  private int pendingCommentLine = -1;
+  private int depth;
+
+  private int imports;
+  private int propertyGroups;
+  private int itemGroups;
+  private int conditions;
+  private int projectReferences;
+  private int references;
+  private int maxDepth;
+
+  private MSBuildLexer(byte[] window, int limit, ByteBuffer source, ReadableByteChannel channel) {
+    this.window = window;
+    this.limit = limit;
+    this.source = source;
+    this.channel = channel;
+  }
+
+  /**
+   * Counts the lines of a file, charset is used when the content does not tell its encoding.
+   */
+  public static LineCounts countLines(Path path, Charset charset) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > WINDOW_THRESHOLD) {
+        MSBuildLexer lexer = new MSBuildLexer(pooledWindow(WINDOW_THRESHOLD), 0, null, channel);
+        try {
+          return lexer.scan(charset);
+        } catch (UncheckedIOException e) {
+          throw e.getCause();
+        }
+      }
+
+      byte[] content = pooledWindow((int) size);
+      ByteBuffer target = ByteBuffer.wrap(content, 0, (int) size);
+      while (target.hasRemaining() && channel.read(target) != -1) {
+        // fill
+      }
+      return new MSBuildLexer(content, target.position(), null, null).scan(charset);
+    }
+  }
+
+  /**
+   * Counts the lines between position and limit of the buffer.
+   */
+  public static LineCounts countLines(ByteBuffer content, Charset charset) {
+    int size = Math.min(content.remaining(), WINDOW_THRESHOLD);
+    return new MSBuildLexer(pooledWindow(size), 0, content.duplicate(), null).scan(charset);
+  }
+
+  private static byte[] pooledWindow(int size) {
+    byte[] pooled = WINDOWS.get();
+    if (pooled.length < size) {
+      pooled = new byte[Math.min(WINDOW_THRESHOLD, Math.max(size, pooled.length * 2))];
+      WINDOWS.set(pooled);
+    }
+    return pooled;
+  }
+
+  private LineCounts scan(Charset charset) {
+    detectEncoding(charset);
+
+    while (available(1)) {
+      if (skipOrdinary(TEXT_STOPS) >= 0 && depth > 0) {
+        checkPendingComment();
+        continue;
+      }
+      int c = read();
+      if (c == '<') {
+        scanMarkup();
+      } else if (depth > 0) {
+        // character data inside the root element
+        checkPendingComment();
+      }
+    }
+
+    StructureCounts structure = new StructureCounts(imports, propertyGroups, itemGroups, conditions,
+      projectReferences, references, maxDepth);
+    return new LineCounts(lineHasChars ? lines + 1 : lines, blankLines, commentLines, structure);
+  }
+
+  private void detectEncoding(Charset charset) {
+    available(3);
+    int b0 = byteAt(0);
+    int b1 = byteAt(1);
+    int b2 = byteAt(2);
+
+    if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) {
+      pos += 3;
+    } else if (b0 == 0xFE && b1 == 0xFF) {
+      pos += 2;
+      utf16(true);
+    } else if (b0 == 0xFF && b1 == 0xFE) {
+      pos += 2;
+      utf16(false);
+    } else if (b0 == 0x00 && b1 == '<') {
+      utf16(true);
+    } else if (b0 == '<' && b1 == 0x00) {
+      utf16(false);
+    } else if (StandardCharsets.UTF_16LE.equals(charset)) {
+      utf16(false);
+    } else if (StandardCharsets.UTF_16BE.equals(charset) || StandardCharsets.UTF_16.equals(charset)) {
+      utf16(true);
+    }
+  }
+
+  private void utf16(boolean isBigEndian) {
+    width = 2;
+    bigEndian = isBigEndian;
+  }
+
+  private int byteAt(int offset) {
+    return pos + offset < limit ? window[pos + offset] & 0xFF : -1;
+  }
+
+  private void scanMarkup() {
+    if (lookingAt("!--")) {
+      skip(3);
+      int startLine = line;
+      skipPast("-->");
+      commentLines += line - startLine;
+      pendingCommentLine = line;
+    } else if (lookingAt("![CDATA[")) {
+      skip(8);
+      skipPast("]]>");
+      if (depth > 0) {
+        checkPendingComment();
+      }
+    } else if (lookingAt("!")) {
+      skipDeclaration();
+    } else if (lookingAt("?")) {
+      skipPast("?>");
+    } else if (lookingAt("/")) {
+      skipTag(false);
+      if (depth > 0) {
+        depth--;
+      }
+    } else {
+      countElement();
+      maxDepth = Math.max(maxDepth, depth + 1);
+      boolean emptyElement = skipTag(true);
+      checkPendingComment();
+      if (!emptyElement) {
+        depth++;
+      }
+    }
+  }
+
+  private void checkPendingComment() {
+    if (pendingCommentLine >= 0 && line > pendingCommentLine) {
+      commentLines++;
+      pendingCommentLine = -1;
+    }
+  }
+
+  /**
+   * Counts the start tag at the current position when it is one of the MSBuild elements of interest.
+   */
+  private void countElement() {
+    int first = available(1) ? unitAt(pos) : -1;
+    if (first == 'I') {
+      if (lookingAtName("Import")) {
+        imports++;
+      } else if (lookingAtName("ItemGroup")) {
+        itemGroups++;
+      }
+    } else if (first == 'P') {
+      if (lookingAtName("PropertyGroup")) {
+        propertyGroups++;
+      } else if (lookingAtName("ProjectReference")) {
+        projectReferences++;
+      }
+    } else if (first == 'R' && lookingAtName("Reference")) {
+      references++;
+    }
+  }
+
+  /**
+   * Returns true when the name at the current position is exactly the given one.
+   */
+  private boolean lookingAtName(String name) {
+    if (!lookingAt(name) || !available(name.length() + 1)) {
+      return false;
+    }
+    int next = unitAt(pos + name.length() * width);
+    return next == '>' || next == '/' || next == '=' || next <= ' ';
+  }
+
+  /**
+   * Skips to the end of a start or end tag, returns true for an empty element tag.
+   * Condition attributes are counted for start tags.
+   */
+  private boolean skipTag(boolean startTag) {
+    int quote = 0;
+    int previous = '<';
+    while (available(1)) {
+      int last = skipOrdinary(quote == 0 ? TAG_STOPS : quote == '"' ? DOUBLE_QUOTE_STOPS : SINGLE_QUOTE_STOPS);
+      if (last >= 0) {
+        previous = last;
+        continue;
+      }
+      if (startTag && quote == 0 && previous <= ' ' && unitAt(pos) == 'C' && lookingAtName("Condition")) {
+        conditions++;
+        skip(9);
+        previous = 'n';
+        continue;
+      }
+      int c = read();
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+      } else if (c == '>') {
+        return previous == '/';
+      }
+      previous = c;
+    }
+    return false;
+  }
+
+  /**
+   * Skips a DOCTYPE or other declaration, including an internal subset.
+   */
+  private void skipDeclaration() {
+    int quote = 0;
+    int brackets = 0;
+    while (available(1)) {
+      int c = read();
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+      } else if (c == '[') {
+        brackets++;
+      } else if (c == ']') {
+        brackets--;
+      } else if (c == '>' && brackets <= 0) {
+        return;
+      }
+    }
+  }
+
+  private void skipPast(String delimiter) {
+    int first = delimiter.charAt(0);
+    boolean[] stops = DELIMITER_STOPS[first == '-' ? 0 : first == ']' ? 1 : 2];
+    while (available(1)) {
+      if (skipOrdinary(stops) >= 0) {
+        continue;
+      }
+      if (unitAt(pos) == first && lookingAt(delimiter)) {
+        skip(delimiter.length());
+        return;
+      }
+      read();
+    }
+  }
+
+  /**
+   * Fast path over single byte units that are neither line breaks nor stops,
+   * returns the last unit skipped or -1 when nothing was skipped.
+   */
+  private int skipOrdinary(boolean[] stops) {
+    if (width != 1) {
+      return -1;
+    }
+    byte[] bytes = window;
+    int end = limit;
+    int index = pos;
+    while (index < end && !stops[bytes[index] & 0xFF]) {
+      index++;
+    }
+    if (index == pos) {
+      return -1;
+    }
+    pos = index;
+    lineHasChars = true;
+    pendingCarriageReturn = false;
+    return bytes[index - 1] & 0xFF;
+  }
+
+  private static boolean[] stops(char... units) {
+    boolean[] stops = new boolean[256];
+    stops['\n'] = true;
+    stops['\r'] = true;
+    for (char unit : units) {
+      stops[unit] = true;
+    }
+    return stops;
+  }
+
+  private void skip(int units) {
+    for (int i = 0; i < units && available(1); i++) {
+      read();
+    }
+  }
+
+  private boolean lookingAt(String ascii) {
+    if (!available(ascii.length())) {
+      return false;
+    }
+    int index = pos;
+    for (int i = 0; i < ascii.length(); i++, index += width) {
+      if (unitAt(index) != ascii.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Makes sure the next units are in the window, refilling it from the source when needed.
+   */
+  private boolean available(int units) {
+    return pos + units * width <= limit || refill(units * width);
+  }
+
+  private boolean refill(int bytes) {
+    if (channel != null) {
+      return refillFromChannel(bytes);
+    }
+    if (source == null || !source.hasRemaining()) {
+      return false;
+    }
+
+    int kept = limit - pos;
+    System.arraycopy(window, pos, window, 0, kept);
+    int count = Math.min(window.length - kept, source.remaining());
+    source.get(window, kept, count);
+    pos = 0;
+    limit = kept + count;
+    return bytes <= limit;
+  }
+
+  private boolean refillFromChannel(int bytes) {
+    int kept = limit - pos;
+    System.arraycopy(window, pos, window, 0, kept);
+    ByteBuffer target = ByteBuffer.wrap(window, kept, window.length - kept);
+    try {
+      while (target.hasRemaining() && channel.read(target) != -1) {
+        // fill
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    pos = 0;
+    limit = target.position();
+    return bytes <= limit;
+  }
+
+  private int unitAt(int index) {
+    if (width == 1) {
+      return window[index] & 0xFF;
+    }
+    int first = window[index] & 0xFF;
+    int second = window[index + 1] & 0xFF;
+    return bigEndian ? (first << 8) | second : (second << 8) | first;
+  }
+
+  /**
+   * Consumes one code unit and keeps the line counts up to date.
+   */
+  private int read() {
+    int c = unitAt(pos);
+    pos += width;
+
+    if (c > '\r') {
+      lineHasChars = true;
+      pendingCarriageReturn = false;
+      return c;
+    }
+
+    if (c == '\n') {
+      if (pendingCarriageReturn) {
+        pendingCarriageReturn = false;
+        return c;
+      }
+      newLine();
+    } else if (c == '\r') {
+      newLine();
+      pendingCarriageReturn = true;
+    } else {
+      lineHasChars = true;
+      pendingCarriageReturn = false;
+    }
+    return c;
+  }
+
+  private void newLine() {
+    line++;
+    lines++;
+    if (!lineHasChars) {
+      blankLines++;
+    }
+    lineHasChars = false;
+  }
+}
@@ -36,13 +36,15 @@ package org.sonar.plugins.msbuild.parsers;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Paths;
 import javax.xml.parsers.ParserConfigurationException;
 
 import javax.xml.parsers.SAXParser;
 
 import org.apache.xerces.impl.Constants;
 import org.sonar.api.batch.fs.InputFile;
-import org.sonar.plugins.msbuild.MSBuildAbastractParser;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
 import org.xml.sax.Attributes;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
@@ -52,11 +54,12 @@ import org.xml.sax.ext.LexicalHandler;
 import org.xml.sax.helpers.DefaultHandler;
 
 /**
- * Comment Counting in XML files
+ * Comment Counting in XML files, line counting for measures is done by {@link MSBuildLexer}
  * Original from: https://github.com/SonarSource/sonar-xml
  * Modified to fit msbuild files
  */
-public final class MSBuildLineCountParser extends MSBuildAbastractParser {
+public final class MSBuildLineCountParser {
+  public static final Logger LOG = Loggers.get(MSBuildLineCountParser.class);
   
   private static class CommentHandler extends DefaultHandler implements LexicalHandler {
 
@@ -139,8 +142,9 @@ public final class MSBuildLineCountParser extends MSBuildAbastractParser {
   }
 
   public int countLinesOfComment(InputStream input, InputFile file) {
+    SAXParser parser = null;
     try {
-      SAXParser parser = newSaxParser();
+      parser = SaxParserProvider.DEFAULT.acquire();
       XMLReader xmlReader = parser.getXMLReader();
       xmlReader.setFeature(Constants.XERCES_FEATURE_PREFIX + "continue-after-fatal-error", true);
       CommentHandler commentHandler = new CommentHandler();
@@ -150,6 +154,17 @@ public final class MSBuildLineCountParser extends MSBuildAbastractParser {
     } catch (IOException | SAXException | ParserConfigurationException ex ) {
       LOG.error("countLinesOfComment fails for '{}' => '{}'", file.filename(), ex.getMessage());
       return 0;
+    } finally {
+      if (parser != null) {
+        SaxParserProvider.DEFAULT.release(parser);
+      }
     }
   }
+
+  /**
+   * Counts lines, blank lines and comment lines in a single read of the file.
+   */
+  public LineCounts countLines(InputFile file) throws IOException {
+    return MSBuildLexer.countLines(Paths.get(file.uri()), file.charset());
+  }
 }
\ No newline at end of file
@@ -0,0 +1,278 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.parsers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable model of an MSBuild file: imports, properties and items with their
+ * conditions and line numbers. Built from a {@link CompactDocument}, values are
+ * the raw values of the file, nothing is evaluated.
+ */
+public final class ProjectModel {
+
+  /**
+   * An import, property or item of the file.
+   */
+  public static final class Entry {
+
+    private final int name;
+    private final String value;
+    private final String condition;
+    private final int line;
+    private final List<Entry> metadata;
+
+    public Entry(String name, String value, String condition, int line) {
+      this(SymbolTable.shared().id(name), value, condition, line, Collections.emptyList());
+    }
+
+    private Entry(int name, String value, String condition, int line, List<Entry> metadata) {
+      this.name = name;
+      this.value = value;
+      this.condition = condition;
+      this.line = line;
+      this.metadata = metadata;
+    }
+
+    /**
+     * Import for an import, property name for a property and item type for an item.
+     */
+    public String getName() {
+      return SymbolTable.shared().name(name);
+    }
+
+    /**
+     * Symbol id of the name.
+     */
+    public int getNameId() {
+      return name;
+    }
+
+    /**
+     * Imported project, property value or item include.
+     */
+    public String getValue() {
+      return value;
+    }
+
+    public String getCondition() {
+      return condition;
+    }
+
+    public int getLine() {
+      return line;
+    }
+
+    /**
+     * Metadata elements of an item, in document order. Empty for imports and properties.
+     */
+    public List<Entry> getMetadata() {
+      return metadata;
+    }
+
+    @Override
+    public String toString() {
+      return getName() + "=" + value + ":" + line;
+    }
+  }
+
+  private static final int IMPORT = SymbolTable.shared().id("Import");
+  private static final int PROPERTY_GROUP = SymbolTable.shared().id("PropertyGroup");
+  private static final int ITEM_GROUP = SymbolTable.shared().id("ItemGroup");
+
+  private final String rootElement;
+  private final String namespace;
+  private final String toolsVersion;
+  private final List<Entry> emptyElements;
+  private final List<Entry> imports;
+  private final List<Entry> properties;
+  private final List<Entry> items;
+  private final List<Entry> projectReferences;
+  private final List<Entry> references;
+
+  private ProjectModel(String rootElement, String namespace, String toolsVersion, List<Entry> emptyElements,
+    List<Entry> imports, List<Entry> properties, List<Entry> items) {
+    this.rootElement = rootElement;
+    this.namespace = namespace;
+    this.toolsVersion = toolsVersion;
+    this.emptyElements = Collections.unmodifiableList(emptyElements);
+    this.imports = Collections.unmodifiableList(imports);
+    this.properties = Collections.unmodifiableList(properties);
+    this.items = Collections.unmodifiableList(items);
+    this.projectReferences = itemsOfType(items, "ProjectReference");
+    this.references = itemsOfType(items, "Reference");
+  }
+
+  /**
+   * Builds the model of a document parsed without namespace awareness.
+   */
+  public static ProjectModel of(CompactDocument document) {
+    List<Entry> imports = new ArrayList<>();
+    List<Entry> properties = new ArrayList<>();
+    List<Entry> items = new ArrayList<>();
+    List<Entry> emptyElements = new ArrayList<>();
+
+    for (int node = 0; node < document.size(); node++) {
+      if (document.kind(node) != CompactDocument.ELEMENT) {
+        continue;
+      }
+      int name = document.nameId(node);
+      int parent = document.parent(node);
+      int parentName = parent == CompactDocument.NONE ? SymbolTable.NONE : document.nameId(parent);
+
+      if (name == IMPORT) {
+        imports.add(entry(document, node, document.attribute(node, "Project")));
+      } else if (parentName == PROPERTY_GROUP) {
+        properties.add(entry(document, node, text(document, node)));
+      } else if (parentName == ITEM_GROUP) {
+        items.add(item(document, node));
+      }
+      if (parent != CompactDocument.NONE && parent == document.root() && isEmpty(document, node)) {
+        emptyElements.add(entry(document, node, null));
+      }
+    }
+
+    int root = document.root();
+    if (root == CompactDocument.NONE) {
+      return new ProjectModel(null, null, null, emptyElements, imports, properties, items);
+    }
+    return new ProjectModel(document.name(root), rootNamespace(document), document.attribute(root, "ToolsVersion"),
+      emptyElements, imports, properties, items);
+  }
+
+  private static Entry entry(CompactDocument document, int element, String value) {
+    return new Entry(document.nameId(element), value, document.attribute(element, "Condition"),
+      SaxParser.getLineNumber(document, element), Collections.emptyList());
+  }
+
+  private static Entry item(CompactDocument document, int element) {
+    List<Entry> metadata = new ArrayList<>();
+    for (int child = document.firstChild(element); child != CompactDocument.NONE; child = document.nextSibling(child)) {
+      if (document.kind(child) == CompactDocument.ELEMENT) {
+        metadata.add(entry(document, child, text(document, child)));
+      }
+    }
+    return new Entry(document.nameId(element), document.attribute(element, "Include"), document.attribute(element, "Condition"),
+      SaxParser.getLineNumber(document, element), metadata.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(metadata));
+  }
+
+  /**
+   * True for an element without attributes and without child elements, text does not count.
+   */
+  private static boolean isEmpty(CompactDocument document, int element) {
+    for (int child = document.firstChild(element); child != CompactDocument.NONE; child = document.nextSibling(child)) {
+      byte kind = document.kind(child);
+      if (kind == CompactDocument.ATTRIBUTE || kind == CompactDocument.ELEMENT) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String text(CompactDocument document, int element) {
+    StringBuilder text = new StringBuilder();
+    for (int child = document.firstChild(element); child != CompactDocument.NONE; child = document.nextSibling(child)) {
+      if (document.kind(child) == CompactDocument.TEXT) {
+        text.append(document.value(child));
+      }
+    }
+    return text.toString().trim();
+  }
+
+  private static String rootNamespace(CompactDocument document) {
+    int root = document.root();
+    return root == CompactDocument.NONE ? null : document.attribute(root, "xmlns");
+  }
+
+  private static List<Entry> itemsOfType(List<Entry> items, String type) {
+    int typeId = SymbolTable.shared().find(type);
+    List<Entry> result = new ArrayList<>();
+    for (Entry item : items) {
+      if (item.getNameId() == typeId && typeId != SymbolTable.NONE) {
+        result.add(item);
+      }
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  /**
+   * Name of the document element, Project for MSBuild files.
+   */
+  public String getRootElement() {
+    return rootElement;
+  }
+
+  /**
+   * Default namespace declared on the document element, or null.
+   */
+  public String getNamespace() {
+    return namespace;
+  }
+
+  /**
+   * ToolsVersion attribute of the document element, or null.
+   */
+  public String getToolsVersion() {
+    return toolsVersion;
+  }
+
+  /**
+   * Children of the document element that have neither attributes nor child elements.
+   */
+  public List<Entry> getEmptyElements() {
+    return emptyElements;
+  }
+
+  public List<Entry> getImports() {
+    return imports;
+  }
+
+  public List<Entry> getProperties() {
+    return properties;
+  }
+
+  public List<Entry> getItems() {
+    return items;
+  }
+
+  public List<Entry> getProjectReferences() {
+    return projectReferences;
+  }
+
+  public List<Entry> getReferences() {
+    return references;
+  }
+}
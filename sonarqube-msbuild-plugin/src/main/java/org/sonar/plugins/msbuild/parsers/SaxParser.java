@@ -43,9 +43,9 @@ import org.xml.sax.SAXException;
 import org.xml.sax.ext.LexicalHandler;
 import org.xml.sax.helpers.DefaultHandler;
 
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -60,7 +60,7 @@ import java.util.logging.Logger;
  *
  * @author Matthijs Galesloot
  */
-public final class SaxParser extends AbstractParser {
+public final class SaxParser {
 
   /**
    * From http://will.thestranathans.com/post/1026712315/getting-line-numbers-from-xpath-in-java
@@ -211,10 +211,138 @@ public final class SaxParser extends AbstractParser {
     }
   }
 
+  /**
+   * Records the document into a {@link CompactDocument}, text is merged into one node
+   * per run of character data and whitespace only text can be dropped.
+   */
+  private static final class CompactRecordingHandler extends DefaultHandler implements LexicalHandler {
+
+    private final CompactDocument.Builder builder = new CompactDocument.Builder(SymbolTable.shared());
+    private final boolean keepWhitespace;
+    private final StringBuilder text = new StringBuilder();
+    private Locator locator;
+    private int current = CompactDocument.NONE;
+    private int textLine;
+    private int textColumn;
+
+    public CompactRecordingHandler(boolean keepWhitespace) {
+      this.keepWhitespace = keepWhitespace;
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+      this.locator = locator;
+    }
+
+    @Override
+    public void characters(char[] buf, int offset, int length) {
+      if (current == CompactDocument.NONE) {
+        return;
+      }
+      if (text.length() == 0) {
+        textLine = line();
+        textColumn = column();
+      }
+      text.append(buf, offset, length);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attrs) {
+      flushText();
+      boolean namespaced = localName != null && !localName.isEmpty();
+      int line = line();
+      int column = column();
+      current = builder.add(CompactDocument.ELEMENT, namespaced ? localName : qName, namespaced ? uri : null, null, current, line, column);
+
+      if (attrs != null) {
+        for (int i = 0; i < attrs.getLength(); i++) {
+          String attrLocalName = attrs.getLocalName(i);
+          boolean attrNamespaced = attrLocalName != null && !attrLocalName.isEmpty();
+          builder.add(CompactDocument.ATTRIBUTE, attrNamespaced ? attrLocalName : attrs.getQName(i), attrNamespaced ? attrs.getURI(i) : null,
+            attrs.getValue(i), current, line, column);
+        }
+      }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+      flushText();
+      if (current != CompactDocument.NONE) {
+        current = builder.parent(current);
+      }
+    }
+
+    @Override
+    public void comment(char[] buf, int offset, int length) throws SAXException {
+      flushText();
+      builder.add(CompactDocument.COMMENT, null, null, new String(buf, offset, length), current, line(), column());
+    }
+
+    private void flushText() {
+      if (text.length() == 0) {
+        return;
+      }
+      if (keepWhitespace || !isWhitespace(text)) {
+        builder.add(CompactDocument.TEXT, null, null, text.toString(), current, textLine, textColumn);
+      }
+      text.setLength(0);
+    }
+
+    private static boolean isWhitespace(CharSequence chars) {
+      for (int i = 0; i < chars.length(); i++) {
+        if (!Character.isWhitespace(chars.charAt(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private int line() {
+      return locator == null ? 0 : locator.getLineNumber();
+    }
+
+    private int column() {
+      return locator == null ? 0 : locator.getColumnNumber();
+    }
+
+    CompactDocument build() {
+      return builder.build();
+    }
+
+    public void endCDATA() throws SAXException {
+      // empty - Lexical Handler method
+    }
+
+    public void endDTD() throws SAXException {
+      // empty - Lexical Handler method
+    }
+
+    public void endEntity(String arg0) throws SAXException {
+      // empty - Lexical Handler method
+    }
+
+    public void startCDATA() throws SAXException {
+      // empty - Lexical Handler method
+    }
+
+    public void startDTD(String arg0, String arg1, String arg2) throws SAXException {
+      // empty - Lexical Handler method
+    }
+
+    public void startEntity(String arg0) throws SAXException {
+      // empty - Lexical Handler method
+    }
+  }
+
   private static final String KEY_LINE_NO = "saxParser.lineNumber";
 
   private static final String KEY_COLUMN_NO = "saxParser.columnNumber";
 
+  /**
+   * Document builders are not thread safe, each thread creates its documents with its own.
+   */
+  private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDERS = ThreadLocal.withInitial(SaxParser::newDocumentBuilder);
+
   /**
    * Gets the LineNumber of a node.
    */
@@ -223,22 +351,51 @@ public final class SaxParser extends AbstractParser {
     return lineNumber == null ? 0 : lineNumber;
   }
 
+  /**
+   * Gets the LineNumber of a node of a compact document.
+   */
+  public static int getLineNumber(CompactDocument document, int node) {
+    return node == CompactDocument.NONE ? 0 : document.line(node);
+  }
+
   public void parse(InputStream input, DefaultHandler handler) throws ParserConfigurationException, SAXException, IOException {
-    SAXParser parser = newSaxParser();
     // read comments too, so use lexical handler.
-    parser.getXMLReader().setProperty("http://xml.org/sax/properties/lexical-handler", handler);
-    parser.parse(input, handler);
+    SaxParserProvider.DEFAULT.parse(input, handler);
   }
 
+  /**
+   * Parses the input into a document with line numbers. Safe to call concurrently,
+   * whatever the namespace handling asked by each caller.
+   */
   public Document parseDocument(InputStream input, boolean namespaceAware) {
     try {
-      SAX_FACTORY.setNamespaceAware(namespaceAware);
-      Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+      Document document = DOCUMENT_BUILDERS.get().newDocument();
       LocationRecordingHandler handler = new LocationRecordingHandler(document);
-      parse(input, handler);
+      SaxParserProvider.get(namespaceAware).parse(input, handler);
       return document;
     } catch (ParserConfigurationException | SAXException | IOException e) {
       return null;
     }
   }
+
+  /**
+   * Parses the input into a {@link CompactDocument}, whitespace only text is dropped unless keepWhitespace is set.
+   */
+  public CompactDocument parseCompactDocument(InputStream input, boolean namespaceAware, boolean keepWhitespace) {
+    try {
+      CompactRecordingHandler handler = new CompactRecordingHandler(keepWhitespace);
+      SaxParserProvider.get(namespaceAware).parse(input, handler);
+      return handler.build();
+    } catch (ParserConfigurationException | SAXException | IOException e) {
+      return null;
+    }
+  }
+
+  private static DocumentBuilder newDocumentBuilder() {
+    try {
+      return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+    } catch (ParserConfigurationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
 }
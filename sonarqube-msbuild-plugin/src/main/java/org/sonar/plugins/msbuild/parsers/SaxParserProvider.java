@@ -0,0 +1,175 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.parsers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.xerces.jaxp.SAXParserFactoryImpl;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Provides the SAX parsers used by the plugin parsers.
+ *
+ * Creating a parser costs more than parsing a small MSBuild file, so each thread
+ * keeps the parser it used last and gets it back, reset, on the next parse.
+ * Features set on a reused parser are restored by the reset.
+ *
+ * There is one provider per configuration, {@link #DEFAULT} and {@link #NAMESPACE_AWARE}.
+ * Their factories are configured once, without validation and without loading
+ * DTDs or external entities, and never changed afterwards, so providers can be
+ * used from any number of threads.
+ */
+public final class SaxParserProvider {
+
+  private static final Logger LOG = Loggers.get(SaxParserProvider.class);
+
+  private static final String LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+
+  /**
+   * Namespace unaware parsers, element and attribute names are reported as qualified names.
+   */
+  public static final SaxParserProvider DEFAULT = new SaxParserProvider(false);
+
+  /**
+   * Namespace aware parsers, element and attribute names are reported with their namespace URI and local name.
+   */
+  public static final SaxParserProvider NAMESPACE_AWARE = new SaxParserProvider(true);
+
+  private final SAXParserFactory factory;
+  private final ThreadLocal<SAXParser> pool = new ThreadLocal<>();
+  private final AtomicLong parses = new AtomicLong();
+  private final AtomicLong created = new AtomicLong();
+
+  private SaxParserProvider(boolean namespaceAware) {
+    this.factory = newFactory(namespaceAware);
+  }
+
+  /**
+   * Provider for the given namespace handling.
+   */
+  public static SaxParserProvider get(boolean namespaceAware) {
+    return namespaceAware ? NAMESPACE_AWARE : DEFAULT;
+  }
+
+  private static SAXParserFactory newFactory(boolean namespaceAware) {
+    SAXParserFactory factory = new SAXParserFactoryImpl();
+    try {
+      factory.setValidating(false);
+      factory.setNamespaceAware(namespaceAware);
+      factory.setFeature("http://xml.org/sax/features/validation", false);
+      factory.setFeature("http://apache.org/xml/features/nonvalidating/load-dtd-grammar", false);
+      factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+      factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+      factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+    } catch (SAXException | ParserConfigurationException ex) {
+      LOG.error("SAX_FACTORY error '{}'", ex.getMessage());
+    }
+    return factory;
+  }
+
+  /**
+   * Takes the parser of the calling thread, or a new one. Give it back with {@link #release(SAXParser)}.
+   */
+  public SAXParser acquire() throws ParserConfigurationException, SAXException {
+    parses.incrementAndGet();
+    SAXParser parser = pool.get();
+    if (parser != null) {
+      pool.remove();
+      return parser;
+    }
+    created.incrementAndGet();
+    synchronized (factory) {
+      return factory.newSAXParser();
+    }
+  }
+
+  /**
+   * Resets the parser and keeps it for the next parse of the calling thread.
+   */
+  public void release(SAXParser parser) {
+    try {
+      parser.reset();
+      pool.set(parser);
+    } catch (UnsupportedOperationException e) {
+      LOG.debug("SAX parser cannot be reset, it will not be reused");
+    }
+  }
+
+  /**
+   * Parses the input with a pooled parser, comments are reported to handlers implementing {@link LexicalHandler}.
+   */
+  public void parse(InputStream input, DefaultHandler handler) throws ParserConfigurationException, SAXException, IOException {
+    SAXParser parser = acquire();
+    try {
+      if (handler instanceof LexicalHandler) {
+        parser.getXMLReader().setProperty(LEXICAL_HANDLER, handler);
+      }
+      parser.parse(input, handler);
+    } finally {
+      release(parser);
+    }
+  }
+
+  /**
+   * Number of parsers handed out.
+   */
+  public long getParseCount() {
+    return parses.get();
+  }
+
+  /**
+   * Number of parsers created because the calling thread had none to reuse.
+   */
+  public long getCreatedCount() {
+    return created.get();
+  }
+
+  /**
+   * Share of the parses served by a reused parser, between 0 and 1.
+   */
+  public double getHitRate() {
+    long count = parses.get();
+    return count == 0 ? 0 : (double) (count - created.get()) / count;
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.parsers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Projects listed by a Visual Studio solution file, with the build dependencies
+ * of their ProjectDependencies sections. Solution folders are listed as projects
+ * whose path is not a file.
+ */
+public final class SolutionFile {
+
+  private static final Pattern PROJECT = Pattern.compile(
+    "^\\s*Project\\(\"\\{[^}]*\\}\"\\)\\s*=\\s*\"([^\"]*)\"\\s*,\\s*\"([^\"]*)\"\\s*,\\s*\"\\{([^}]*)\\}\"");
+  private static final Pattern DEPENDENCY = Pattern.compile("^\\s*\\{([^}]*)\\}\\s*=");
+
+  /**
+   * A project of the solution.
+   */
+  public static final class Project {
+    private final String name;
+    private final String guid;
+    private final File path;
+    private final List<String> dependencies = new ArrayList<>();
+
+    private Project(String name, String guid, File path) {
+      this.name = name;
+      this.guid = guid;
+      this.path = path;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Upper case guid, without braces.
+     */
+    public String getGuid() {
+      return guid;
+    }
+
+    public File getPath() {
+      return path;
+    }
+
+    /**
+     * Guids of the projects built before this one.
+     */
+    public List<String> getDependencies() {
+      return Collections.unmodifiableList(dependencies);
+    }
+  }
+
+  private final File file;
+  private final List<Project> projects;
+
+  private SolutionFile(File file, List<Project> projects) {
+    this.file = file;
+    this.projects = Collections.unmodifiableList(projects);
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public List<Project> getProjects() {
+    return projects;
+  }
+
+  /**
+   * Solution files under the directory, sorted by path.
+   */
+  public static List<File> find(File directory) throws IOException {
+    try (Stream<Path> paths = Files.walk(directory.toPath())) {
+      return paths
+        .filter(path -> path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".sln") && Files.isRegularFile(path))
+        .sorted()
+        .map(Path::toFile)
+        .collect(Collectors.toList());
+    }
+  }
+
+  public static SolutionFile read(File file) throws IOException {
+    List<Project> projects = new ArrayList<>();
+    String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    Project project = null;
+    boolean inDependencies = false;
+    for (String line : content.split("\r?\n")) {
+      String trimmed = line.trim();
+      Matcher matcher = PROJECT.matcher(line);
+      if (matcher.find()) {
+        File path = new File(file.getParentFile(), matcher.group(2).trim().replace('\\', '/'));
+        project = new Project(matcher.group(1), guid(matcher.group(3)), path);
+        projects.add(project);
+      } else if (trimmed.startsWith("EndProjectSection")) {
+        inDependencies = false;
+      } else if (trimmed.startsWith("EndProject")) {
+        project = null;
+      } else if (project != null && trimmed.startsWith("ProjectSection(ProjectDependencies)")) {
+        inDependencies = true;
+      } else if (project != null && inDependencies) {
+        Matcher dependency = DEPENDENCY.matcher(line);
+        if (dependency.find()) {
+          project.dependencies.add(guid(dependency.group(1)));
+        }
+      }
+    }
+    return new SolutionFile(file, projects);
+  }
+
+  /**
+   * Upper case guid without braces, the form used by {@link Project#getGuid()}.
+   */
+  public static String guid(String value) {
+    return value.trim().replace("{", "").replace("}", "").toUpperCase(Locale.ROOT);
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.parsers;
+
+/**
+ * Structure counts of a single MSBuild file, the elements and attributes that
+ * drive the cost of an MSBuild evaluation.
+ */
+public final class StructureCounts {
+
+  public static final StructureCounts EMPTY = new StructureCounts(0, 0, 0, 0, 0, 0, 0);
+
+  private final int imports;
+  private final int propertyGroups;
+  private final int itemGroups;
+  private final int conditions;
+  private final int projectReferences;
+  private final int references;
+  private final int maxDepth;
+
+  public StructureCounts(int imports, int propertyGroups, int itemGroups, int conditions,
+    int projectReferences, int references, int maxDepth) {
+    this.imports = imports;
+    this.propertyGroups = propertyGroups;
+    this.itemGroups = itemGroups;
+    this.conditions = conditions;
+    this.projectReferences = projectReferences;
+    this.references = references;
+    this.maxDepth = maxDepth;
+  }
+
+  public int getImports() {
+    return imports;
+  }
+
+  public int getPropertyGroups() {
+    return propertyGroups;
+  }
+
+  public int getItemGroups() {
+    return itemGroups;
+  }
+
+  public int getConditions() {
+    return conditions;
+  }
+
+  public int getProjectReferences() {
+    return projectReferences;
+  }
+
+  public int getReferences() {
+    return references;
+  }
+
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  @Override
+  public String toString() {
+    return imports + "," + propertyGroups + "," + itemGroups + "," + conditions + ","
+      + projectReferences + "," + references + "," + maxDepth;
+  }
+}
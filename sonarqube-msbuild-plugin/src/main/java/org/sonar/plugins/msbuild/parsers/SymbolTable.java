@@ -0,0 +1,129 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.parsers;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe table giving stable int ids to element, attribute and namespace names.
+ *
+ * MSBuild files repeat the same few hundred names, the parsed models keep ids
+ * into the shared table instead of a String per file. Ids are never reused, the
+ * table only grows with the number of distinct names.
+ */
+public final class SymbolTable {
+
+  public static final int NONE = -1;
+
+  private static final SymbolTable SHARED = new SymbolTable();
+
+  private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+  private volatile String[] names = new String[256];
+  private int size;
+
+  private final LongAdder lookups = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  SymbolTable() {
+  }
+
+  /**
+   * The table shared by all plugin parsers.
+   */
+  public static SymbolTable shared() {
+    return SHARED;
+  }
+
+  /**
+   * Id of the name, added to the table when new. Null and empty names have no id.
+   */
+  public int id(String name) {
+    if (name == null || name.isEmpty()) {
+      return NONE;
+    }
+    lookups.increment();
+    Integer id = ids.get(name);
+    return id != null ? id : add(name);
+  }
+
+  /**
+   * Id of the name, or NONE when the name was never added.
+   */
+  public int find(String name) {
+    if (name == null) {
+      return NONE;
+    }
+    Integer id = ids.get(name);
+    return id == null ? NONE : id;
+  }
+
+  public String name(int id) {
+    return id == NONE ? null : names[id];
+  }
+
+  private synchronized int add(String name) {
+    Integer id = ids.get(name);
+    if (id != null) {
+      return id;
+    }
+    misses.increment();
+    String[] current = names;
+    if (size == current.length) {
+      current = Arrays.copyOf(current, size * 2);
+    }
+    current[size] = name;
+    names = current;
+    ids.put(name, size);
+    return size++;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  public long getLookupCount() {
+    return lookups.sum();
+  }
+
+  /**
+   * Share of the lookups that found the name already in the table, between 0 and 1.
+   */
+  public double getHitRate() {
+    long count = lookups.sum();
+    return count == 0 ? 0 : (double) (count - misses.sum()) / count;
+  }
+}
@@ -0,0 +1,357 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.projectchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
+
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.plugins.msbuild.MSBuildProjectModelCache;
+import org.sonar.plugins.msbuild.parsers.ProjectModel;
+import org.sonar.plugins.msbuild.parsers.SolutionFile;
+
+/**
+ * Incremental mode of the project checker: only the files changed since the
+ * cached results are analysed, the results of the other files are taken from
+ * the cache.
+ *
+ * A file is changed when the scanner reports it added or changed, or when its
+ * content differs from the one the cached results were computed on. The files
+ * importing or referencing a changed file, or a file of the cached results
+ * that was deleted or renamed since, directly or through other files, are
+ * analysed again as well. So are the files with an import or reference that
+ * cannot be resolved, as it may point to any file.
+ */
+final class CheckerBaseline {
+
+  private static final String FILE = "File";
+  private static final String PATH = "Path";
+  private static final Pattern KNOWN_PROPERTY = Pattern.compile(
+    "\\$\\((SolutionDir|MSBuildProjectDirectory|MSBuildThisFileDirectory)\\)", Pattern.CASE_INSENSITIVE);
+
+  private CheckerBaseline() {
+  }
+
+  /**
+   * Files to give to the checker, in the order of the input files.
+   *
+   * @param hashes content hashes of the input files
+   * @param baselineHashes content hashes by URI of the files of the cached results
+   * @param solutions solutions giving $(SolutionDir) to their projects
+   */
+  static List<InputFile> select(Map<InputFile, String> hashes, Map<String, String> baselineHashes, MSBuildProjectModelCache models,
+    List<SolutionFile> solutions) {
+    Set<InputFile> unresolved = new HashSet<>();
+    Map<String, List<InputFile>> referencedBy = referencedBy(hashes.keySet(), models, solutionDirectories(solutions), unresolved);
+    Deque<InputFile> changed = new ArrayDeque<>();
+    Set<String> uris = new HashSet<>();
+    for (Map.Entry<InputFile, String> hash : hashes.entrySet()) {
+      InputFile file = hash.getKey();
+      String uri = file.uri().toString();
+      uris.add(uri);
+      if (file.status() == InputFile.Status.ADDED || file.status() == InputFile.Status.CHANGED
+        || !hash.getValue().equals(baselineHashes.get(uri)) || unresolved.contains(file)) {
+        changed.add(file);
+      }
+    }
+
+    Set<InputFile> selected = new LinkedHashSet<>(changed);
+    // files of the cached results deleted or renamed since, the files referencing them are changed
+    for (String uri : baselineHashes.keySet()) {
+      if (!uris.contains(uri)) {
+        String removed = uriKey(uri);
+        if (removed != null) {
+          select(referencedBy.get(removed), selected, changed);
+        }
+      }
+    }
+    while (!changed.isEmpty()) {
+      select(referencedBy.get(key(changed.poll().uri())), selected, changed);
+    }
+
+    List<InputFile> result = new ArrayList<>();
+    for (InputFile file : hashes.keySet()) {
+      if (selected.contains(file)) {
+        result.add(file);
+      }
+    }
+    return result;
+  }
+
+  private static void select(List<InputFile> files, Set<InputFile> selected, Deque<InputFile> changed) {
+    if (files == null) {
+      return;
+    }
+    for (InputFile file : files) {
+      if (selected.add(file)) {
+        changed.add(file);
+      }
+    }
+  }
+
+  /**
+   * Directories of the solutions of each project, by key of the project path.
+   */
+  private static Map<String, List<Path>> solutionDirectories(List<SolutionFile> solutions) {
+    Map<String, List<Path>> directories = new HashMap<>();
+    for (SolutionFile solution : solutions) {
+      Path directory = solution.getFile().getAbsoluteFile().toPath().getParent();
+      for (SolutionFile.Project project : solution.getProjects()) {
+        directories.computeIfAbsent(key(project.getPath().getAbsolutePath()), key -> new ArrayList<>()).add(directory);
+      }
+    }
+    return directories;
+  }
+
+  /**
+   * Files importing or referencing each path.
+   *
+   * @param unresolved receives the files with an import or reference that cannot be resolved
+   */
+  private static Map<String, List<InputFile>> referencedBy(Set<InputFile> files, MSBuildProjectModelCache models,
+    Map<String, List<Path>> solutionDirectories, Set<InputFile> unresolved) {
+    Map<String, List<InputFile>> referencedBy = new HashMap<>();
+    for (InputFile file : files) {
+      ProjectModel model = models.get(file);
+      if (model == null) {
+        continue;
+      }
+      Path directory = Paths.get(file.uri()).getParent();
+      String self = key(file.uri());
+      // $(MSBuildProjectDirectory) of an imported file is the one of the project importing it
+      Path projectDirectory = file.filename().toLowerCase(Locale.ROOT).endsWith("proj") ? directory : null;
+      List<Path> solutionDirectoriesOfFile = solutionDirectories.getOrDefault(self, Collections.emptyList());
+      List<ProjectModel.Entry> references = new ArrayList<>(model.getImports());
+      references.addAll(model.getProjectReferences());
+      for (ProjectModel.Entry reference : references) {
+        String value = reference.getValue();
+        if (value == null || value.trim().isEmpty()) {
+          continue;
+        }
+        List<String> targets = targets(value, directory, projectDirectory, solutionDirectoriesOfFile);
+        if (targets.isEmpty()) {
+          unresolved.add(file);
+        }
+        for (String target : targets) {
+          if (!target.equals(self)) {
+            referencedBy.computeIfAbsent(target, key -> new ArrayList<>()).add(file);
+          }
+        }
+      }
+    }
+    return referencedBy;
+  }
+
+  /**
+   * Keys of the paths a reference resolves to, one for each solution of the file when it
+   * uses $(SolutionDir), none when it cannot be resolved.
+   */
+  private static List<String> targets(String value, Path directory, Path projectDirectory, List<Path> solutionDirectories) {
+    if (!value.toLowerCase(Locale.ROOT).contains("$(solutiondir)")) {
+      String target = target(value, directory, projectDirectory, null);
+      return target == null ? Collections.emptyList() : Collections.singletonList(target);
+    }
+    List<String> targets = new ArrayList<>();
+    for (Path solutionDirectory : solutionDirectories) {
+      String target = target(value, directory, projectDirectory, solutionDirectory);
+      if (target == null) {
+        return Collections.emptyList();
+      }
+      targets.add(target);
+    }
+    return targets;
+  }
+
+  /**
+   * Key of the path of a reference with the known properties expanded, null when it cannot be resolved.
+   */
+  private static String target(String value, Path directory, Path projectDirectory, Path solutionDirectory) {
+    Matcher matcher = KNOWN_PROPERTY.matcher(value.trim());
+    StringBuffer expanded = new StringBuffer();
+    while (matcher.find()) {
+      String property = matcher.group(1);
+      Path replacement;
+      if ("SolutionDir".equalsIgnoreCase(property)) {
+        replacement = solutionDirectory;
+      } else if ("MSBuildProjectDirectory".equalsIgnoreCase(property)) {
+        replacement = projectDirectory;
+      } else {
+        replacement = directory;
+      }
+      if (replacement == null) {
+        return null;
+      }
+      matcher.appendReplacement(expanded, Matcher.quoteReplacement(replacement.toString() + "/"));
+    }
+    matcher.appendTail(expanded);
+    if (expanded.indexOf("$(") >= 0 || expanded.indexOf("*") >= 0) {
+      return null;
+    }
+    try {
+      return key(directory.resolve(expanded.toString().replace('\\', '/')).toString());
+    } catch (InvalidPathException e) {
+      return null;
+    }
+  }
+
+  /**
+   * MSBuild paths are resolved ignoring case.
+   */
+  private static String key(String path) {
+    return Paths.get(path).normalize().toString().replace('\\', '/').toLowerCase(Locale.ROOT);
+  }
+
+  private static String key(URI uri) {
+    return key(Paths.get(uri).toString());
+  }
+
+  /**
+   * Key of a URI of the cached results, or null when it is not a file URI.
+   */
+  private static String uriKey(String uri) {
+    try {
+      return key(URI.create(uri));
+    } catch (IllegalArgumentException | FileSystemNotFoundException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Writes the results of the analysed files followed by the cached results of the
+   * other files still in the project.
+   *
+   * @param fresh output of the checker for the analysed files, may not exist
+   * @param baseline cached output
+   * @param analysed files given to the checker
+   */
+  static void merge(File fresh, File baseline, Set<InputFile> analysed, InputFileIndex index, File merged) throws IOException {
+    XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+    XMLEventFactory events = XMLEventFactory.newInstance();
+    try (OutputStream os = Files.newOutputStream(merged.toPath())) {
+      XMLEventWriter writer = XMLOutputFactory.newInstance().createXMLEventWriter(os, "UTF-8");
+      writer.add(events.createStartDocument("UTF-8", "1.0"));
+      writer.add(events.createStartElement("", "", "AnalysisOutput"));
+      writer.add(events.createStartElement("", "", "Files"));
+      if (fresh.isFile()) {
+        copyFiles(inputFactory, fresh, writer, null, index);
+      }
+      copyFiles(inputFactory, baseline, writer, analysed, index);
+      writer.add(events.createEndElement("", "", "Files"));
+      writer.add(events.createEndElement("", "", "AnalysisOutput"));
+      writer.add(events.createEndDocument());
+      writer.flush();
+      writer.close();
+    } catch (XMLStreamException e) {
+      throw new IOException("Unable to merge project checker outputs: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Copies the File elements of an output, skipping the ones of excluded or unknown files when excluded is set.
+   */
+  private static void copyFiles(XMLInputFactory inputFactory, File output, XMLEventWriter writer, Set<InputFile> excluded,
+    InputFileIndex index) throws IOException, XMLStreamException {
+    try (InputStream is = Files.newInputStream(output.toPath())) {
+      XMLEventReader reader = inputFactory.createXMLEventReader(is);
+      XMLEventFactory events = XMLEventFactory.newInstance();
+      List<XMLEvent> element = null;
+      String path = null;
+      while (reader.hasNext()) {
+        XMLEvent event = reader.nextEvent();
+        if (event.isStartElement()) {
+          String name = event.asStartElement().getName().getLocalPart();
+          if (element == null && FILE.equals(name)) {
+            element = new ArrayList<>();
+            path = null;
+          } else if (element != null && path == null && PATH.equals(name)) {
+            element.add(event);
+            path = reader.getElementText();
+            element.add(events.createCharacters(path));
+            element.add(events.createEndElement("", "", PATH));
+            continue;
+          }
+        }
+        if (element != null) {
+          element.add(event);
+        }
+        if (element != null && event.isEndElement() && FILE.equals(event.asEndElement().getName().getLocalPart())) {
+          if (excluded == null || isKept(path, excluded, index)) {
+            for (XMLEvent copied : element) {
+              writer.add(copied);
+            }
+          }
+          element = null;
+        }
+      }
+      reader.close();
+    }
+  }
+
+  private static boolean isKept(String path, Set<InputFile> excluded, InputFileIndex index) {
+    if (path == null) {
+      return false;
+    }
+    InputFile file = index.find(path);
+    return file != null && !excluded.contains(file);
+  }
+}
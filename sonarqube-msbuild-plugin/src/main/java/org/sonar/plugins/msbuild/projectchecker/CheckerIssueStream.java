@@ -0,0 +1,236 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.projectchecker;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.sonar.api.utils.command.StreamConsumer;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Standard output of one project checker run, started with /s.
+ *
+ * The checker writes each issue as a line "#issue TAB path TAB rule TAB line TAB message",
+ * where backslash, tab, carriage return and line feed are escaped as \\, \t, \r and \n,
+ * and ends with "#issues-end TAB count" once all issues are written. Records are handed
+ * to the sensor thread through a bounded queue, other lines are logged. Output written
+ * without a line break may precede a record on its line, that text is logged as well.
+ */
+class CheckerIssueStream implements StreamConsumer {
+
+  private static final Logger LOG = Loggers.get(CheckerIssueStream.class);
+
+  static final String ISSUE = "#issue";
+  static final String END = "#issues-end";
+  static final String ARGUMENT = "/s";
+
+  private final BlockingQueue<Record> queue;
+  private volatile boolean closed;
+  private volatile boolean ended;
+  private volatile int expected = -1;
+  private volatile int received;
+
+  static final class Record {
+    private final String path;
+    private final String ruleKey;
+    private final int line;
+    private final String message;
+
+    Record(String path, String ruleKey, int line, String message) {
+      this.path = path;
+      this.ruleKey = ruleKey;
+      this.line = line;
+      this.message = message;
+    }
+
+    String getPath() {
+      return path;
+    }
+
+    String getRuleKey() {
+      return ruleKey;
+    }
+
+    int getLine() {
+      return line;
+    }
+
+    String getMessage() {
+      return message;
+    }
+  }
+
+  CheckerIssueStream(BlockingQueue<Record> queue) {
+    this.queue = queue;
+  }
+
+  @Override
+  public void consumeLine(String line) {
+    int issue = line.indexOf(ISSUE + "\t");
+    int end = endIndex(line);
+    int start = issue < 0 || (end >= 0 && end < issue) ? end : issue;
+    if (start < 0) {
+      LOG.info(line);
+      return;
+    }
+    if (start > 0) {
+      LOG.info(line.substring(0, start));
+    }
+
+    String record = line.substring(start);
+    if (start == issue) {
+      Record decoded = decode(record);
+      if (decoded == null) {
+        LOG.warn("Invalid project checker issue: {}", record);
+      } else {
+        received++;
+        enqueue(decoded);
+      }
+    } else {
+      expected = count(record);
+      ended = true;
+    }
+  }
+
+  /**
+   * Index of the end record in the line, or -1.
+   */
+  private static int endIndex(String line) {
+    int end = line.indexOf(END);
+    while (end >= 0) {
+      int next = end + END.length();
+      if (next == line.length() || line.charAt(next) == '\t') {
+        return end;
+      }
+      end = line.indexOf(END, next);
+    }
+    return -1;
+  }
+
+  private static int count(String record) {
+    String[] fields = record.split("\t", -1);
+    try {
+      return fields.length == 2 ? Integer.parseInt(fields[1].trim()) : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private void enqueue(Record record) {
+    try {
+      // the sensor stops draining once closed, records after that are dropped
+      while (!closed && !queue.offer(record, 100, TimeUnit.MILLISECONDS)) {
+        // wait for the sensor thread
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * True when the checker wrote the end of the stream.
+   */
+  boolean isEnded() {
+    return ended;
+  }
+
+  /**
+   * True when the checker wrote the end of the stream and every issue it counted there was received.
+   */
+  boolean isComplete() {
+    return ended && expected == received;
+  }
+
+  /**
+   * Number of issues received.
+   */
+  int getReceived() {
+    return received;
+  }
+
+  /**
+   * Number of issues written by the checker, from the end of the stream, or -1 when unknown.
+   */
+  int getExpected() {
+    return expected;
+  }
+
+  void close() {
+    closed = true;
+  }
+
+  static Record decode(String line) {
+    String[] fields = line.split("\t", -1);
+    if (fields.length != 5 || !ISSUE.equals(fields[0])) {
+      return null;
+    }
+    try {
+      return new Record(unescape(fields[1]), unescape(fields[2]), Integer.parseInt(fields[3].trim()), unescape(fields[4]));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static String unescape(String field) {
+    if (field.indexOf('\\') < 0) {
+      return field;
+    }
+    StringBuilder result = new StringBuilder(field.length());
+    for (int i = 0; i < field.length(); i++) {
+      char c = field.charAt(i);
+      if (c != '\\' || i == field.length() - 1) {
+        result.append(c);
+        continue;
+      }
+      char escaped = field.charAt(++i);
+      switch (escaped) {
+        case 't':
+          result.append('\t');
+          break;
+        case 'r':
+          result.append('\r');
+          break;
+        case 'n':
+          result.append('\n');
+          break;
+        default:
+          result.append(escaped);
+          break;
+      }
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,359 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.projectchecker;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the AnalysisOutput of the project checker in chunks parsed concurrently.
+ *
+ * The document is split at the byte offsets of File start tags, each chunk is parsed
+ * on its own reader into immutable results, keeping only its File elements so that the
+ * Files elements of merged shard outputs do not matter. Results are handed to the
+ * caller thread in document order.
+ */
+final class CheckerOutputReader {
+
+  private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+  private static final byte[] FILE_START = "<File".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] FILE_END = "</File>".getBytes(StandardCharsets.US_ASCII);
+
+  private CheckerOutputReader() {
+  }
+
+  /**
+   * A File element of the output, with its issues.
+   */
+  static final class ResultFile {
+    private final String path;
+    private final List<CheckerIssueStream.Record> issues;
+
+    private ResultFile(String path, List<CheckerIssueStream.Record> issues) {
+      this.path = path;
+      this.issues = Collections.unmodifiableList(issues);
+    }
+
+    String getPath() {
+      return path;
+    }
+
+    List<CheckerIssueStream.Record> getIssues() {
+      return issues;
+    }
+  }
+
+  /**
+   * Reads the output in chunks of at least 1 MB on up to threads workers, the committer is called on this thread.
+   */
+  static void read(File output, int threads, Consumer<ResultFile> committer) throws IOException {
+    long chunks = Math.max(1, Math.min(threads, output.length() / MIN_CHUNK_SIZE));
+    read(output, (int) chunks, threads, committer);
+  }
+
+  static void read(File output, int chunks, int threads, Consumer<ResultFile> committer) throws IOException {
+    List<Long> boundaries = boundaries(output, chunks);
+    if (boundaries.size() == 1) {
+      parse(output, 0, output.length()).forEach(committer);
+      return;
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, boundaries.size()));
+    try {
+      List<Future<List<ResultFile>>> results = new ArrayList<>(boundaries.size());
+      for (int i = 0; i < boundaries.size(); i++) {
+        long start = boundaries.get(i);
+        long end = i + 1 < boundaries.size() ? boundaries.get(i + 1) : output.length();
+        results.add(pool.submit(() -> parse(output, start, end)));
+      }
+      for (Future<List<ResultFile>> result : results) {
+        result.get().forEach(committer);
+      }
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Unable to read project checker output: " + e.getCause().getMessage(), e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Project checker output import interrupted", e);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Start offsets of the chunks, the first one is 0 and the others are File start tags.
+   */
+  static List<Long> boundaries(File output, int chunks) throws IOException {
+    List<Long> boundaries = new ArrayList<>();
+    boundaries.add(0L);
+    long size = output.length();
+    try (FileChannel channel = FileChannel.open(output.toPath(), StandardOpenOption.READ)) {
+      for (int i = 1; i < chunks; i++) {
+        long last = boundaries.get(boundaries.size() - 1);
+        long target = size * i / chunks;
+        if (target <= last) {
+          continue;
+        }
+        long start = nextFileStart(channel, target);
+        if (start < 0) {
+          break;
+        }
+        if (start > last) {
+          boundaries.add(start);
+        }
+      }
+    }
+    return boundaries;
+  }
+
+  private static long nextFileStart(FileChannel channel, long from) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    long position = from;
+    while (true) {
+      buffer.clear();
+      int read = channel.read(buffer, position);
+      if (read <= FILE_START.length) {
+        return -1;
+      }
+      byte[] bytes = buffer.array();
+      for (int i = 0; i + FILE_START.length < read; i++) {
+        if (startsWith(bytes, i, FILE_START) && isFileStartDelimiter(bytes[i + FILE_START.length])) {
+          return position + i;
+        }
+      }
+      // keep the last bytes, a tag may span both reads
+      position += read - FILE_START.length;
+    }
+  }
+
+  private static boolean startsWith(byte[] bytes, int offset, byte[] prefix) {
+    for (int i = 0; i < prefix.length; i++) {
+      if (bytes[offset + i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isFileStartDelimiter(int c) {
+    return c == '>' || c == ' ' || c == '\t' || c == '\r' || c == '\n';
+  }
+
+  private static List<ResultFile> parse(File output, long start, long end) throws IOException {
+    try {
+      return parseChunk(output, start, end);
+    } catch (XMLStreamException | NumberFormatException e) {
+      throw new IOException("Unable to read project checker output: " + e.getMessage(), e);
+    }
+  }
+
+  private static List<ResultFile> parseChunk(File output, long start, long end) throws IOException, XMLStreamException {
+    List<ResultFile> files = new ArrayList<>();
+    try (InputStream is = Files.newInputStream(output.toPath())) {
+      skipFully(is, start);
+      InputStream chunk = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+        new ByteArrayInputStream("<Chunk>".getBytes(StandardCharsets.UTF_8)),
+        new FileElements(new BufferedInputStream(is), end - start),
+        new ByteArrayInputStream("</Chunk>".getBytes(StandardCharsets.UTF_8)))));
+      XMLStreamReader stream = XMLInputFactory.newInstance().createXMLStreamReader(chunk, "UTF-8");
+      try {
+        String path = null;
+        List<CheckerIssueStream.Record> issues = null;
+        String id = null;
+        String message = null;
+        int line = 1;
+        while (stream.hasNext()) {
+          int next = stream.next();
+          if (next == XMLStreamConstants.START_ELEMENT) {
+            String tagName = stream.getLocalName();
+            if ("File".equals(tagName)) {
+              path = null;
+              issues = new ArrayList<>();
+            } else if ("Path".equals(tagName)) {
+              path = stream.getElementText();
+            } else if ("Issue".equals(tagName)) {
+              id = null;
+              message = null;
+              line = 1;
+            } else if ("Id".equals(tagName)) {
+              id = stream.getElementText();
+            } else if ("Line".equals(tagName)) {
+              line = Integer.parseInt(stream.getElementText().trim());
+            } else if ("Message".equals(tagName)) {
+              message = stream.getElementText();
+            }
+          } else if (next == XMLStreamConstants.END_ELEMENT) {
+            String tagName = stream.getLocalName();
+            if ("Issue".equals(tagName) && issues != null) {
+              issues.add(new CheckerIssueStream.Record(path, id, line, message));
+            } else if ("File".equals(tagName) && issues != null) {
+              files.add(new ResultFile(path, issues));
+              issues = null;
+            }
+          }
+        }
+      } finally {
+        stream.close();
+      }
+    }
+    return files;
+  }
+
+  private static void skipFully(InputStream is, long count) throws IOException {
+    long remaining = count;
+    while (remaining > 0) {
+      long skipped = is.skip(remaining);
+      if (skipped <= 0) {
+        throw new EOFException("Project checker output is shorter than expected");
+      }
+      remaining -= skipped;
+    }
+  }
+
+  /**
+   * The File elements of a byte range, without the bytes between them.
+   *
+   * File elements do not nest and their text is escaped, so a File element starts at
+   * the first "&lt;File" followed by '&gt;' or a space and ends at the next "&lt;/File&gt;".
+   */
+  private static final class FileElements extends InputStream {
+
+    private final InputStream in;
+    private long remaining;
+    private final byte[] pending = new byte[FILE_START.length + 1];
+    private int pendingLength;
+    private int pendingPosition;
+    private boolean inside;
+    private int matched;
+
+    private FileElements(InputStream in, long length) {
+      this.in = in;
+      this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      while (true) {
+        if (pendingPosition < pendingLength) {
+          return pending[pendingPosition++] & 0xff;
+        }
+        int c = next();
+        if (c < 0) {
+          return -1;
+        }
+        if (inside) {
+          matched = match(FILE_END, matched, c);
+          if (matched == FILE_END.length) {
+            inside = false;
+            matched = 0;
+          }
+          return c;
+        }
+        if (matched == FILE_START.length) {
+          matched = c == '<' ? 1 : 0;
+          if (isFileStartDelimiter(c)) {
+            inside = true;
+            System.arraycopy(FILE_START, 0, pending, 0, FILE_START.length);
+            pending[FILE_START.length] = (byte) c;
+            pendingLength = pending.length;
+            pendingPosition = 0;
+          }
+          continue;
+        }
+        matched = match(FILE_START, matched, c);
+      }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      int count = 0;
+      while (count < len) {
+        int c = read();
+        if (c < 0) {
+          break;
+        }
+        b[off + count++] = (byte) c;
+      }
+      return count == 0 ? -1 : count;
+    }
+
+    private int next() throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int c = in.read();
+      if (c >= 0) {
+        remaining--;
+      }
+      return c;
+    }
+
+    private static int match(byte[] tag, int matched, int c) {
+      if (c == tag[matched]) {
+        return matched + 1;
+      }
+      // '<' only starts the tags
+      return c == '<' ? 1 : 0;
+    }
+  }
+}
@@ -0,0 +1,250 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.projectchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sonar.api.config.Configuration;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.plugins.msbuild.utils.MSBuildUtils;
+
+/**
+ * Project checker results kept between analyses, keyed by a fingerprint of
+ * the checker configuration and a fingerprint of the file contents.
+ *
+ * Results live under projectchecker in the sonar.msbuild.cache.path directory,
+ * one directory per project holding the results of the last run only, with the
+ * content hashes of the files it analysed for the incremental mode.
+ */
+class CheckerResultCache {
+
+  private static final Logger LOG = Loggers.get(CheckerResultCache.class);
+
+  private static final String RESULT_SUFFIX = ".xml";
+  private static final String HASHES_SUFFIX = ".hashes";
+
+  private final File directory;
+
+  CheckerResultCache(Configuration settings, String projectKey) {
+    this.directory = new File(new File(MSBuildUtils.getCacheDirectory(settings), "projectchecker"),
+      sha256(projectKey).substring(0, 16));
+  }
+
+  /**
+   * Digest of the checker inputs, entries are length prefixed so that adjacent values cannot be confused.
+   */
+  static final class Fingerprint {
+
+    private final MessageDigest digest = newDigest();
+
+    Fingerprint add(String key, String value) {
+      update(key);
+      update(value == null ? "" : value);
+      return this;
+    }
+
+    /**
+     * Adds the size and modification time of a file outside of the project, or its absence.
+     */
+    Fingerprint addStamp(File file) {
+      return add(file.getAbsolutePath(), file.isFile() ? file.length() + "@" + file.lastModified() : "missing");
+    }
+
+    private void update(String value) {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      digest.update((byte) (bytes.length >>> 24));
+      digest.update((byte) (bytes.length >>> 16));
+      digest.update((byte) (bytes.length >>> 8));
+      digest.update((byte) bytes.length);
+      digest.update(bytes);
+    }
+
+    @Override
+    public String toString() {
+      return MSBuildUtils.toHex(digest.digest());
+    }
+  }
+
+  /**
+   * Results of an earlier run with the same configuration, and the content hashes of the files it analysed.
+   */
+  static final class Baseline {
+
+    private final File output;
+    private final Map<String, String> hashes;
+
+    private Baseline(File output, Map<String, String> hashes) {
+      this.output = output;
+      this.hashes = hashes;
+    }
+
+    File getOutput() {
+      return output;
+    }
+
+    /**
+     * Content hashes by file URI.
+     */
+    Map<String, String> getHashes() {
+      return hashes;
+    }
+  }
+
+  /**
+   * Copies the results stored for the fingerprints to the output file, false when there are none.
+   */
+  boolean restore(String configuration, String content, File output) {
+    File result = result(configuration, content, RESULT_SUFFIX);
+    if (!result.isFile()) {
+      return false;
+    }
+    try {
+      Files.copy(result.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      return true;
+    } catch (IOException e) {
+      LOG.warn("Unable to restore project checker results '{}': {}", result, e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Results kept for the configuration fingerprint whatever the file contents, or null.
+   */
+  Baseline baseline(String configuration) {
+    if (!directory.isDirectory()) {
+      return null;
+    }
+    try (DirectoryStream<Path> results = Files.newDirectoryStream(directory.toPath(), configuration + "-*" + RESULT_SUFFIX)) {
+      for (Path result : results) {
+        String name = result.getFileName().toString();
+        Path hashes = directory.toPath().resolve(name.substring(0, name.length() - RESULT_SUFFIX.length()) + HASHES_SUFFIX);
+        if (Files.isRegularFile(hashes)) {
+          return new Baseline(result.toFile(), readHashes(hashes));
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to read project checker results from '{}': {}", directory, e.getMessage());
+    }
+    return null;
+  }
+
+  /**
+   * Keeps the output file as the results of the fingerprints, replacing the results of earlier runs.
+   */
+  void store(String configuration, String content, File output, Map<String, String> hashes) {
+    File result = result(configuration, content, RESULT_SUFFIX);
+    File hashFile = result(configuration, content, HASHES_SUFFIX);
+    try {
+      Files.createDirectories(directory.toPath());
+      StringBuilder lines = new StringBuilder();
+      for (Map.Entry<String, String> hash : hashes.entrySet()) {
+        lines.append(hash.getValue()).append(' ').append(hash.getKey()).append('\n');
+      }
+      write(hashFile.toPath(), lines.toString().getBytes(StandardCharsets.UTF_8));
+      write(result.toPath(), Files.readAllBytes(output.toPath()));
+      deleteOtherResults(result.toPath(), hashFile.toPath());
+    } catch (IOException e) {
+      LOG.warn("Unable to cache project checker results '{}': {}", result, e.getMessage());
+    }
+  }
+
+  private File result(String configuration, String content, String suffix) {
+    return new File(directory, configuration + "-" + content + suffix);
+  }
+
+  private static Map<String, String> readHashes(Path file) throws IOException {
+    Map<String, String> hashes = new HashMap<>();
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      int separator = line.indexOf(' ');
+      if (separator > 0) {
+        hashes.put(line.substring(separator + 1), line.substring(0, separator));
+      }
+    }
+    return hashes;
+  }
+
+  /**
+   * Writes through a temporary file, so that concurrent readers never see a partial file.
+   */
+  private void write(Path target, byte[] content) throws IOException {
+    Path temp = Files.createTempFile(directory.toPath(), target.getFileName().toString(), ".tmp");
+    try {
+      Files.write(temp, content);
+      MSBuildUtils.moveReplacing(temp, target);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private void deleteOtherResults(Path... kept) throws IOException {
+    List<Path> keep = Arrays.asList(kept);
+    try (DirectoryStream<Path> results = Files.newDirectoryStream(directory.toPath())) {
+      for (Path result : results) {
+        String name = result.getFileName().toString();
+        if (!keep.contains(result) && (name.endsWith(RESULT_SUFFIX) || name.endsWith(HASHES_SUFFIX))) {
+          Files.deleteIfExists(result);
+        }
+      }
+    }
+  }
+
+  File getDirectory() {
+    return directory;
+  }
+
+  private static String sha256(String value) {
+    return MSBuildUtils.toHex(newDigest().digest(value.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.projectchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
+
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.plugins.msbuild.parsers.SolutionFile;
+
+/**
+ * Splits the files given to the project checker into balanced shards and merges
+ * the outputs of the checker processes back into a single output.
+ *
+ * Projects of the same solution, with the files of their directories, always go
+ * to the same shard, as do the files of a directory no solution lists a project
+ * of, a project with its props and targets. A project listed by several solutions
+ * goes with the first one. Groups are assigned largest first to the shard with
+ * the fewest lines so far.
+ */
+final class CheckerShards {
+
+  private static final Logger LOG = Loggers.get(CheckerShards.class);
+
+  private CheckerShards() {
+  }
+
+  private static final class Shard {
+    private final List<InputFile> files = new ArrayList<>();
+    private long weight;
+  }
+
+  static List<List<InputFile>> split(Iterable<InputFile> files, int count) {
+    return split(files, count, Collections.emptyList());
+  }
+
+  static List<List<InputFile>> split(Iterable<InputFile> files, int count, List<SolutionFile> solutions) {
+    Map<String, String> solutionOfDirectory = new HashMap<>();
+    for (SolutionFile solution : solutions) {
+      for (SolutionFile.Project project : solution.getProjects()) {
+        File directory = project.getPath().getParentFile();
+        // solution folders are not files
+        if (directory != null && project.getPath().isFile()) {
+          solutionOfDirectory.putIfAbsent(key(directory.toPath()), key(solution.getFile().toPath()));
+        }
+      }
+    }
+
+    Map<String, List<InputFile>> groups = new LinkedHashMap<>();
+    Map<String, Long> weights = new LinkedHashMap<>();
+    for (InputFile file : files) {
+      String directory = key(Paths.get(file.uri()).getParent());
+      String group = solutionOfDirectory.getOrDefault(directory, directory);
+      groups.computeIfAbsent(group, k -> new ArrayList<>()).add(file);
+      weights.merge(group, weight(file), Long::sum);
+    }
+    List<String> largestFirst = new ArrayList<>(groups.keySet());
+    largestFirst.sort(Comparator.comparing(weights::get).reversed());
+
+    int shardCount = Math.max(1, Math.min(count, largestFirst.size()));
+    PriorityQueue<Shard> lightestFirst = new PriorityQueue<>(shardCount, Comparator.comparingLong((Shard shard) -> shard.weight));
+    List<Shard> shards = new ArrayList<>(shardCount);
+    for (int i = 0; i < shardCount; i++) {
+      Shard shard = new Shard();
+      shards.add(shard);
+      lightestFirst.add(shard);
+    }
+
+    for (String group : largestFirst) {
+      Shard shard = lightestFirst.poll();
+      shard.files.addAll(groups.get(group));
+      shard.weight += weights.get(group);
+      lightestFirst.add(shard);
+    }
+
+    List<List<InputFile>> result = new ArrayList<>(shardCount);
+    for (Shard shard : shards) {
+      if (!shard.files.isEmpty()) {
+        result.add(shard.files);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * MSBuild paths are resolved ignoring case.
+   */
+  private static String key(Path path) {
+    return path.normalize().toString().replace('\\', '/').toLowerCase(Locale.ROOT);
+  }
+
+  private static long weight(InputFile file) {
+    return Math.max(1, file.lines());
+  }
+
+  /**
+   * Copies the content of the root element of each output into one document, missing outputs are skipped.
+   * Nothing is written when every output is missing.
+   *
+   * @return false when there was no output to merge
+   */
+  static boolean merge(List<File> outputs, File merged) throws IOException {
+    Files.deleteIfExists(merged.toPath());
+    if (outputs.stream().noneMatch(File::isFile)) {
+      LOG.warn("No project checker output to merge, no issue is imported");
+      return false;
+    }
+    XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+    XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+    try (OutputStream os = Files.newOutputStream(merged.toPath())) {
+      XMLEventWriter writer = outputFactory.createXMLEventWriter(os, "UTF-8");
+      XMLEvent rootEnd = null;
+      boolean started = false;
+      for (File output : outputs) {
+        if (!output.isFile()) {
+          LOG.warn("Project checker output '{}' is missing, its issues are not imported", output.getName());
+          continue;
+        }
+        try (InputStream is = Files.newInputStream(output.toPath())) {
+          XMLEventReader reader = inputFactory.createXMLEventReader(is);
+          int depth = 0;
+          while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartDocument() || event.isEndDocument()) {
+              continue;
+            }
+            if (event.isStartElement()) {
+              depth++;
+              if (depth == 1) {
+                if (!started) {
+                  writer.add(event);
+                  started = true;
+                }
+                continue;
+              }
+            } else if (event.isEndElement()) {
+              depth--;
+              if (depth == 0) {
+                rootEnd = event;
+                continue;
+              }
+            }
+            if (depth > 0) {
+              writer.add(event);
+            }
+          }
+          reader.close();
+        }
+      }
+      if (rootEnd != null) {
+        writer.add(rootEnd);
+      }
+      writer.flush();
+      writer.close();
+      return true;
+    } catch (XMLStreamException e) {
+      throw new IOException("Unable to merge project checker outputs: " + e.getMessage(), e);
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.projectchecker;
+
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+
+/**
+ * Index of the input files by normalised absolute path, built once per import.
+ *
+ * Paths reported by the project checker or listed by solutions may use either
+ * separator, another case than the file system or a file URI. Paths are compared with forward slashes,
+ * exactly first and then ignoring case when only one file matches that way.
+ */
+public class InputFileIndex {
+
+  private final Map<String, InputFile> byPath = new HashMap<>();
+  private final Map<String, InputFile> byLowerCasePath = new HashMap<>();
+  private int unknownPaths;
+
+  public InputFileIndex(FileSystem fs) {
+    for (InputFile file : fs.inputFiles(fs.predicates().all())) {
+      String path = normalize(Paths.get(file.uri()).toString());
+      byPath.put(path, file);
+      String lowerCase = path.toLowerCase(Locale.ROOT);
+      // a path differing only by case from another one cannot be resolved ignoring case
+      if (byLowerCasePath.containsKey(lowerCase)) {
+        byLowerCasePath.put(lowerCase, null);
+      } else {
+        byLowerCasePath.put(lowerCase, file);
+      }
+    }
+  }
+
+  /**
+   * Input file of a path reported by the project checker, or null when the path is not in the project.
+   */
+  public InputFile find(String reportedPath) {
+    String path = normalize(reportedPath);
+    InputFile file = byPath.get(path);
+    if (file == null) {
+      file = byLowerCasePath.get(path.toLowerCase(Locale.ROOT));
+    }
+    if (file == null) {
+      unknownPaths++;
+    }
+    return file;
+  }
+
+  /**
+   * Number of lookups that found no input file.
+   */
+  int getUnknownPaths() {
+    return unknownPaths;
+  }
+
+  static String normalize(String path) {
+    String result = path.trim();
+    if (result.startsWith("file:")) {
+      try {
+        result = Paths.get(URI.create(result)).toString();
+      } catch (IllegalArgumentException e) {
+        result = result.substring("file:".length());
+      }
+    }
+    result = result.replace('\\', '/');
+    while (result.contains("//")) {
+      result = result.replace("//", "/");
+    }
+    if (result.length() > 1 && result.endsWith("/")) {
+      result = result.substring(0, result.length() - 1);
+    }
+    return result;
+  }
+}
@@ -38,25 +38,34 @@ import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.rule.ActiveRule;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.utils.command.Command;
-import org.sonar.api.utils.command.CommandExecutor;
 import org.sonar.api.utils.command.StreamConsumer;
 
 import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.utils.log.Logger;
 
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamConstants;
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamReader;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.Map.Entry;
 import org.sonar.api.batch.sensor.SensorDescriptor;
 import org.sonar.api.batch.sensor.issue.NewIssue;
@@ -65,8 +74,14 @@ import org.sonar.api.config.Configuration;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.plugins.msbuild.MSBuildRunnerExtractor;
 import org.sonar.plugins.msbuild.MSBuildLanguage;
+import org.sonar.plugins.msbuild.MSBuildMeasureCache;
+import org.sonar.plugins.msbuild.MSBuildProjectModelCache;
+import org.sonar.plugins.msbuild.MSBuildToolExecutor;
 import static org.sonar.plugins.msbuild.MSBuildPlugin.IGNORE_LIST_INCLUDES_FOLDERS;
+import org.sonar.plugins.msbuild.parsers.ProjectModel;
+import org.sonar.plugins.msbuild.parsers.SolutionFile;
 import org.sonar.plugins.msbuild.utils.MSBuildUtils;
+import org.sonar.plugins.msbuild.utils.XmlFileWriter;
 
 public class MSBuildProjectCheckerExtensionSensor implements Sensor {
 
@@ -74,18 +89,32 @@ public class MSBuildProjectCheckerExtensionSensor implements Sensor {
 
   private final Configuration settings;
   private final MSBuildRunnerExtractor extractor;
+  private final MSBuildProjectModelCache models;
+  private final MSBuildToolExecutor executor;
   private final FileSystem fs;
 
   public static final String EXTERNAL_CUSTOM_RULES = "sonar.msbuild.projectchecker.customrules";
   public static final String PROJECT_CHECKER_PATH = "sonar.msbuild.prjectChecker.Path";
   public static String CHECKER_ENABLED = "sonar.msbuild.projectchecker.enabled";
+  public static final String SHARDS_KEY = "sonar.msbuild.projectchecker.shards";
+  public static final String INCREMENTAL_KEY = "sonar.msbuild.projectchecker.incremental";
+  public static final String TIMEOUT_KEY = "sonar.msbuild.projectchecker.timeout";
+  public static final String INACTIVITY_TIMEOUT_KEY = "sonar.msbuild.projectchecker.inactivityTimeout";
+
+  private static final int DEFAULT_TIMEOUT = 3600;
+
+  private static final int STREAM_CAPACITY = 1024;
   
   public MSBuildProjectCheckerExtensionSensor(
           Configuration settings,
           MSBuildRunnerExtractor extractor,
+          MSBuildProjectModelCache models,
+          MSBuildToolExecutor executor,
           FileSystem fs) {
     this.settings = settings;
     this.extractor = extractor;
+    this.models = models;
+    this.executor = executor;
     this.fs = fs;
   }
 
@@ -107,13 +136,126 @@ public class MSBuildProjectCheckerExtensionSensor implements Sensor {
     } 
     
     try {
-      analyze(context);
-      importResults(context);
+      Set<String> ruleKeys = activeRuleKeys(context);
+      StructuralChecks checks = new StructuralChecks(ruleKeys, assemblyLookup(context, ruleKeys));
+      if (!checks.isEmpty()) {
+        analyzeStructure(context, checks);
+      }
+
+      if (requiresExternalChecker(context)) {
+        StreamedIssues streamed = analyze(context);
+        importResults(context, streamed);
+      } else {
+        LOG.info("Project Checker - Only structural rules active, external checker not executed");
+      }
     } catch (Exception ex) {
       LOG.warn("Failed to execute sensor '{0}' msbuild checks are not going to be available", ex.getMessage());
     }
   }
   
+  private static Set<String> activeRuleKeys(SensorContext context) {
+    Set<String> keys = new HashSet<>();
+    for (ActiveRule activeRule : context.activeRules().findByRepository(MSBuildProjectCheckerRulesDefinition.REPOSITORY_KEY)) {
+      keys.add(activeRule.ruleKey().rule());
+    }
+    return keys;
+  }
+
+  /**
+   * The external checker is needed for rules evaluating projects with MSBuild, custom rules and external rule assemblies.
+   */
+  /**
+   * Assembly names the checker left in the directory it is launched in, only read when a rule uses them.
+   */
+  private List<String> assemblyLookup(SensorContext context, Set<String> ruleKeys) throws IOException {
+    if (!ruleKeys.contains(StructuralChecks.FULLY_QUALIFIED_REFERENCE)) {
+      return Collections.emptyList();
+    }
+    File executableFile = extractor.projectCheckerFile(context.fileSystem().workDir().getCanonicalPath());
+    return StructuralChecks.readAssemblyLookup(new File(checkerDirectory(executableFile), StructuralChecks.ASSEMBLY_LOOKUP).toPath());
+  }
+
+  private boolean requiresExternalChecker(SensorContext context) {
+    if (!MSBuildUtils.getStringArrayProperty(EXTERNAL_CUSTOM_RULES, this.settings).isEmpty()) {
+      return true;
+    }
+    for (String key : activeRuleKeys(context)) {
+      if (!StructuralChecks.isStructural(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Runs the structural rules on a pool of sonar.msbuild.threads workers, issues are saved from the sensor thread.
+   */
+  private void analyzeStructure(SensorContext context, StructuralChecks checks) {
+    List<InputFile> files = new ArrayList<>();
+    for (InputFile file : filesToAnalyze()) {
+      files.add(file);
+    }
+    if (files.isEmpty()) {
+      return;
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(MSBuildUtils.getThreads(settings), files.size()));
+    try {
+      List<Future<List<StructuralChecks.Issue>>> results = new ArrayList<>(files.size());
+      for (InputFile file : files) {
+        results.add(pool.submit(() -> checkStructure(file, checks)));
+      }
+      for (int i = 0; i < files.size(); i++) {
+        try {
+          for (StructuralChecks.Issue issue : results.get(i).get()) {
+            saveIssue(context, files.get(i), issue.getRuleKey(), issue.getLine(), issue.getMessage());
+          }
+        } catch (ExecutionException e) {
+          LOG.warn("Unable to check file: " + files.get(i).filename());
+          LOG.warn("Cause: {}", e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOG.warn("Structural checks interrupted");
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private List<StructuralChecks.Issue> checkStructure(InputFile file, StructuralChecks checks) {
+    ProjectModel model = models.get(file);
+    if (model == null) {
+      // the checker does not report files it cannot parse
+      return new ArrayList<>();
+    }
+    // path as passed to the checker in the analysis input
+    String path = file.uri().toString().replace("file:///", "");
+    return checks.check(path, model, () -> {
+      try {
+        return file.contents();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  /**
+   * Saves an issue on its line, or on the file when the line is outside of it.
+   */
+  private static void saveIssue(SensorContext context, InputFile inputFile, String ruleKey, int line, String message) {
+    NewIssue newIssue = context.newIssue().forRule(RuleKey.of(MSBuildProjectCheckerRulesDefinition.REPOSITORY_KEY, ruleKey));
+    NewIssueLocation location = newIssue.newLocation()
+      .on(inputFile)
+      .message(message);
+    if (line >= 1 && line <= inputFile.lines()) {
+      location.at(inputFile.selectLine(line));
+    }
+
+    newIssue.at(location);
+    newIssue.save();
+  }
+
   private String getEmptyStringOrValue(SensorContext ctx, String key) {
     if (ctx.config().get(key).isPresent()) {
       return ctx.config().get(key).get();
@@ -122,256 +264,461 @@ public class MSBuildProjectCheckerExtensionSensor implements Sensor {
     return "";    
   }
     
-  private void analyze(SensorContext context) {       
+  /**
+   * Runs the checker when its inputs changed, into the tool output.
+   *
+   * @return the issues already saved from the checker output stream
+   */
+  private StreamedIssues analyze(SensorContext context) {
+    StreamedIssues streamed = new StreamedIssues();
     try {       
       String workdirRoot = context.fileSystem().workDir().getCanonicalPath();
       String projectRoot = context.fileSystem().baseDir().getCanonicalPath();
-      
-      StringBuilder sb = new StringBuilder();
-      appendLine(sb, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-      appendLine(sb, "<AnalysisInput>");
-      appendLine(sb, "  <Settings>");
-      appendLine(sb, "    <Setting>");
-      appendLine(sb, "      <Key>" + IGNORE_LIST_INCLUDES_FOLDERS + "</Key>");
-      appendLine(sb, "      <Value>" + (MSBuildUtils.getStringArrayProperty(IGNORE_LIST_INCLUDES_FOLDERS, this.settings)) + "</Value>");
-      appendLine(sb, "    </Setting>");
-      appendLine(sb, "    <Setting>");
-      appendLine(sb, "      <Key>" + EXTERNAL_CUSTOM_RULES + "</Key>");
-      appendLine(sb, "      <Value>" + (MSBuildUtils.getStringArrayProperty(EXTERNAL_CUSTOM_RULES, this.settings)) + "</Value>");
-      appendLine(sb, "    </Setting>");      
-      appendLine(sb, "    <Setting>");
-      appendLine(sb, "      <Key>ProjectRoot</Key>");
-      appendLine(sb, "      <Value>" + projectRoot + "</Value>");
-      appendLine(sb, "    </Setting>");
-      appendLine(sb, "  </Settings>");
-      appendLine(sb, "  <Rules>");
-      for (ActiveRule activeRule : context.activeRules().findByRepository(MSBuildProjectCheckerRulesDefinition.REPOSITORY_KEY)) {
-        appendLine(sb, "    <Rule>");
-        Map<String, String> parameters = effectiveParameters(activeRule);
-        appendLine(sb, "      <Key>" + parameters.get("RuleKey") + "</Key>");
-        if (!parameters.isEmpty()) {
-          appendLine(sb, "      <Parameters>");
-          for (Entry<String, String> parameter : parameters.entrySet()) {
-            appendLine(sb, "        <Parameter>");
-            appendLine(sb, "          <Key>" + parameter.getKey() + "</Key>");
-            appendLine(sb, "          <Value>" + parameter.getValue() + "</Value>");
-            appendLine(sb, "        </Parameter>");
-          }
-          appendLine(sb, "      </Parameters>");
-        }
-        appendLine(sb, "    </Rule>");
-      }
-      appendLine(sb, "  </Rules>");
-      appendLine(sb, "  <Files>");
+
+      Map<InputFile, String> hashes = new LinkedHashMap<>();
+      CheckerResultCache.Fingerprint content = new CheckerResultCache.Fingerprint();
       for (InputFile file : filesToAnalyze()) {
-        appendLine(sb, "    <File>" + file.uri() + "</File>");
+        String hash = MSBuildMeasureCache.hash(file);
+        hashes.put(file, hash);
+        content.add(file.uri().toString(), hash);
       }
-      appendLine(sb, "  </Files>");
-      appendLine(sb, "</AnalysisInput>");
-      
-      File analysisInput = toolInput();
-      File analysisOutput = toolOutput();
-      
-      try {
-        MSBuildUtils.writeStringToFile(analysisInput.getAbsolutePath(), sb.toString());
-      } catch (IOException e) {
-        LOG.error("Could not write settings to file '{0}'", e.getMessage());
-        throw e;
+      CheckerResultCache resultCache = new CheckerResultCache(settings, context.config().get("sonar.projectKey").orElse(projectRoot));
+      String configuration = configurationFingerprint(context, projectRoot);
+      String contentFingerprint = content.toString();
+      if (resultCache.restore(configuration, contentFingerprint, toolOutput())) {
+        LOG.info("Project Checker inputs unchanged, reusing results from: " + resultCache.getDirectory());
+        return streamed;
       }
-      
-      File executableFile = extractor.projectCheckerFile(workdirRoot);
-      LOG.info("Using ProjectChecker from:" + executableFile.getCanonicalPath());
-      
-      String username = getEmptyStringOrValue(context, "sonar.login");
-      String password = getEmptyStringOrValue(context, "sonar.password");
-      
-
-      String host = getEmptyStringOrValue(context, "sonar.host.url");
-      if(!context.config().get("sonar.projectKey").isPresent()) {
-        LOG.info("ProjectChecker Skipped because projectKey not available...");
+
+      List<InputFile> files = new ArrayList<>(hashes.keySet());
+      CheckerResultCache.Baseline baseline = null;
+      if (settings.getBoolean(INCREMENTAL_KEY).orElse(false)) {
+        baseline = resultCache.baseline(configuration);
+        if (baseline != null) {
+          files = CheckerBaseline.select(hashes, baseline.getHashes(), models, solutions());
+          LOG.info("Project Checker incremental analysis of {} out of {} files", files.size(), hashes.size());
+        }
       }
-      String projectKey = context.config().get("sonar.projectKey").get();
-    
-      Command command;
-      if (OsUtils.isWindows()) {
-        command = Command.create(executableFile.getAbsolutePath())
-                .addArgument("/i:" + analysisInput.getAbsolutePath())
-                .addArgument("/h:" + host)
-                .addArgument("/k:" + projectKey)
-                .addArgument("/o:" + analysisOutput.getAbsolutePath());
+
+      boolean complete = true;
+      if (baseline == null || !files.isEmpty()) {
+        complete = runChecker(context, workdirRoot, projectRoot, files, streamed);
       } else {
-        command = Command.create("mono")
-                .addArgument(executableFile.getAbsolutePath())
-                .addArgument("/i:" + analysisInput.getAbsolutePath())
-                .addArgument("/h:" + host)                
-                .addArgument("/k:" + projectKey)
-                .addArgument("/o:" + analysisOutput.getAbsolutePath());
+        Files.deleteIfExists(toolOutput().toPath());
+      }
+
+      if (baseline != null) {
+        File changed = new File(fs.workDir(), "msbuild-analysis-output-changed.xml");
+        Files.deleteIfExists(changed.toPath());
+        if (toolOutput().isFile()) {
+          Files.move(toolOutput().toPath(), changed.toPath());
+        }
+        CheckerBaseline.merge(changed, baseline.getOutput(), new HashSet<>(files), new InputFileIndex(fs), toolOutput());
+      }
+
+      if (complete) {
+        Map<String, String> analysed = new LinkedHashMap<>();
+        for (Entry<InputFile, String> hash : hashes.entrySet()) {
+          analysed.put(hash.getKey().uri().toString(), hash.getValue());
+        }
+        resultCache.store(configuration, contentFingerprint, toolOutput(), analysed);
       }
-      
-      command.addArgument("/u:" + username);
-      LOG.info(command.toCommandLine());
-      
-      if (!password.equals("")){
-        command.addArgument("/p:" + password);
-      } 
-      
-      CommandExecutor.create().execute(command, new LogInfoStreamConsumer(), new LogErrorStreamConsumer(), Integer.MAX_VALUE);
     } catch (IOException ex) {
         LOG.info("Project Checker failed to execute, will skip");
         LOG.warn("Cannot execute project Checker, details: '" + ex + "'");
     }
+    return streamed;
   }
 
-  private static Map<String, String> effectiveParameters(ActiveRule activeRule) {
-    Map<String, String> builder = new HashMap<>();
+  /**
+   * Runs the checker on the files, in shards, into the tool output.
+   *
+   * @param streamed receives the issues saved while the checker was running
+   * @return false when a shard produced no output
+   */
+  private boolean runChecker(SensorContext context, String workdirRoot, String projectRoot, List<InputFile> files,
+    StreamedIssues streamed) throws IOException {
+    File executableFile = extractor.projectCheckerFile(workdirRoot);
+    LOG.info("Using ProjectChecker from:" + executableFile.getCanonicalPath());
+    
+    String username = getEmptyStringOrValue(context, "sonar.login");
+    String password = getEmptyStringOrValue(context, "sonar.password");
+    
 
-    if (!"".equals(activeRule.templateRuleKey())) {
-      builder.put("RuleKey", activeRule.ruleKey().rule());
+    String host = getEmptyStringOrValue(context, "sonar.host.url");
+    if(!context.config().get("sonar.projectKey").isPresent()) {
+      LOG.info("ProjectChecker Skipped because projectKey not available...");
     }
+    String projectKey = context.config().get("sonar.projectKey").get();
 
-    for (Map.Entry<String, String> param : activeRule.params().entrySet()) {
-      builder.put(param.getKey(), param.getValue());
+    List<List<InputFile>> shards = CheckerShards.split(files, getShards(), getShards() > 1 ? solutions() : Collections.emptyList());
+    if (shards.isEmpty()) {
+      shards.add(new ArrayList<>());
+    }
+    Command launch = checkerLaunch(executableFile);
+    List<File> outputs = new ArrayList<>();
+    List<List<String>> runs = new ArrayList<>();
+    for (int i = 0; i < shards.size(); i++) {
+      File analysisInput = shards.size() == 1 ? toolInput() : toolInput(i);
+      File analysisOutput = shards.size() == 1 ? toolOutput() : toolOutput(i);
+      try {
+        writeAnalysisInput(context, analysisInput, projectRoot, shards.get(i));
+      } catch (IOException e) {
+        LOG.error("Could not write settings to file '{0}'", e.getMessage());
+        throw e;
+      }
+      Files.deleteIfExists(analysisOutput.toPath());
+      outputs.add(analysisOutput);
+      runs.add(checkerArguments(launch, analysisInput, analysisOutput, host, projectKey, username, password));
     }
 
-    return builder;
-  }
+    if (runs.size() > 1) {
+      LOG.info("Run ProjectChecker in {} shards", runs.size());
+    }
+    executeAll(context, launch, runs, shards, outputs, streamed);
 
-  private void importResults(SensorContext context) throws IOException, XMLStreamException {
-    File analysisOutput = toolOutput();
+    boolean complete = true;
+    for (File output : outputs) {
+      complete &= output.isFile();
+    }
+    if (runs.size() > 1 && !CheckerShards.merge(outputs, toolOutput())) {
+      return false;
+    }
+    return complete;
+  }
 
-    new AnalysisResultImporter(context).parse(analysisOutput, context);
+  /**
+   * Solutions under the base directory, so that the projects of a solution are checked by the same shard.
+   */
+  private List<SolutionFile> solutions() {
+    List<SolutionFile> solutions = new ArrayList<>();
+    try {
+      for (File file : SolutionFile.find(fs.baseDir())) {
+        solutions.add(SolutionFile.read(file));
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to read the solutions, shards group projects by directory: {}", e.getMessage());
+    }
+    return solutions;
   }
 
-  private static class AnalysisResultImporter {
+  /**
+   * Fingerprint of everything the checker reads but the files: settings, active rules and checker version.
+   */
+  private String configurationFingerprint(SensorContext context, String projectRoot) {
+    CheckerResultCache.Fingerprint fingerprint = new CheckerResultCache.Fingerprint();
+
+    Optional<String> checkerPath = settings.get(PROJECT_CHECKER_PATH).filter(path -> !path.isEmpty());
+    if (checkerPath.isPresent()) {
+      fingerprint.addStamp(new File(checkerPath.get()));
+    } else {
+      fingerprint.add("checker", MSBuildUtils.getPluginVersion());
+    }
 
-    private final FileSystem fs;
-    private XMLStreamReader stream;
+    fingerprint.add("ProjectRoot", projectRoot);
+    fingerprint.add(IGNORE_LIST_INCLUDES_FOLDERS, MSBuildUtils.getStringArrayProperty(IGNORE_LIST_INCLUDES_FOLDERS, this.settings));
+    String customRules = MSBuildUtils.getStringArrayProperty(EXTERNAL_CUSTOM_RULES, this.settings);
+    fingerprint.add(EXTERNAL_CUSTOM_RULES, customRules);
+    for (String customRule : customRules.split(";")) {
+      if (!customRule.isEmpty()) {
+        File assembly = new File(customRule);
+        fingerprint.addStamp(assembly.isAbsolute() ? assembly : new File(projectRoot, customRule));
+      }
+    }
 
-    private AnalysisResultImporter(SensorContext context) {
-      this.fs = context.fileSystem();
+    Map<String, Map<String, String>> rules = new TreeMap<>();
+    for (ActiveRule activeRule : context.activeRules().findByRepository(MSBuildProjectCheckerRulesDefinition.REPOSITORY_KEY)) {
+      rules.put(activeRule.ruleKey().rule(), new TreeMap<>(effectiveParameters(activeRule)));
+    }
+    for (Entry<String, Map<String, String>> rule : rules.entrySet()) {
+      fingerprint.add("Rule", rule.getKey());
+      for (Entry<String, String> parameter : rule.getValue().entrySet()) {
+        fingerprint.add(parameter.getKey(), parameter.getValue());
+      }
     }
+    return fingerprint.toString();
+  }
 
-    private void parse(File file, SensorContext context) throws IOException, XMLStreamException {
-      InputStreamReader reader;
-      XMLInputFactory xmlFactory = XMLInputFactory.newInstance();
+  private int getShards() {
+    return settings.getInt(SHARDS_KEY).filter(shards -> shards > 0).orElse(Runtime.getRuntime().availableProcessors());
+  }
 
-      try {
-        reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
-        stream = xmlFactory.createXMLStreamReader(reader);
+  /**
+   * Runs the checker from its own directory, where it resolves the assembly lookup file.
+   */
+  private static Command checkerLaunch(File executableFile) {
+    Command launch = OsUtils.isWindows() ? Command.create(executableFile.getAbsolutePath())
+      : Command.create("mono").addArgument(executableFile.getAbsolutePath());
+    return launch.setDirectory(checkerDirectory(executableFile));
+  }
 
-        while (stream.hasNext()) {
-          if (stream.next() == XMLStreamConstants.START_ELEMENT) {
-            String tagName = stream.getLocalName();
+  private static File checkerDirectory(File executableFile) {
+    return executableFile.getAbsoluteFile().getParentFile();
+  }
 
-            if ("File".equals(tagName)) {
-              handleFileTag(context);
-            }
-          }
+  private static List<String> checkerArguments(Command launch, File analysisInput, File analysisOutput,
+    String host, String projectKey, String username, String password) {
+    List<String> arguments = new ArrayList<>();
+    arguments.add("/i:" + analysisInput.getAbsolutePath());
+    arguments.add("/h:" + host);
+    arguments.add("/k:" + projectKey);
+    arguments.add("/o:" + analysisOutput.getAbsolutePath());
+    arguments.add(CheckerIssueStream.ARGUMENT);
+    arguments.add("/u:" + username);
+    LOG.info(launch.toCommandLine() + " " + String.join(" ", arguments));
+    
+    if (!password.equals("")){
+      arguments.add("/p:" + password);
+    } 
+    return arguments;
+  }
+
+  /**
+   * Runs the checker processes concurrently, saving the issues they stream from the sensor thread
+   * until all of them exited. The output of a run stopped or failed is removed, it may be incomplete,
+   * the issues it streamed until then are kept.
+   *
+   * @param streamed receives the streamed issues, and the files of the runs that streamed all of their issues
+   */
+  private void executeAll(SensorContext context, Command launch, List<List<String>> runs,
+    List<List<InputFile>> shards, List<File> outputs, StreamedIssues streamed) throws IOException {
+    long timeout = MSBuildUtils.getTimeout(settings, TIMEOUT_KEY, DEFAULT_TIMEOUT);
+    long inactivity = MSBuildUtils.getTimeout(settings, INACTIVITY_TIMEOUT_KEY, 0);
+    BlockingQueue<CheckerIssueStream.Record> queue = new ArrayBlockingQueue<>(STREAM_CAPACITY);
+    List<CheckerIssueStream> streams = new ArrayList<>();
+    InputFileIndex index = new InputFileIndex(fs);
+    int issues = 0;
+    int skippedIssues = 0;
+    ExecutorService pool = Executors.newFixedThreadPool(runs.size());
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (List<String> arguments : runs) {
+        CheckerIssueStream stream = new CheckerIssueStream(queue);
+        streams.add(stream);
+        results.add(pool.submit(() -> executor.execute(launch, arguments, stream, new LogErrorStreamConsumer(),
+          timeout, inactivity, context::isCancelled)));
+      }
+
+      while (!allDone(results) || !queue.isEmpty()) {
+        CheckerIssueStream.Record record = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (record == null) {
+          continue;
         }
-        
-        reader.close();
-      } catch (IOException | XMLStreamException e) {        
-        closeXmlStream();
-        LOG.error("Not able to parse file : {0}", e.getMessage());
-        throw e; 
-      }      
-    }
+        InputFile inputFile = index.find(record.getPath());
+        if (inputFile == null) {
+          LOG.debug("Result file not found in the project: {}", record.getPath());
+          skippedIssues++;
+          continue;
+        }
+        streamed.add(inputFile, record);
+        if (!StructuralChecks.covers(record.getRuleKey(), record.getMessage())) {
+          saveIssue(context, inputFile, record.getRuleKey(), record.getLine(), record.getMessage());
+          issues++;
+        }
+      }
 
-    private void closeXmlStream() {
-      if (stream != null) {
+      for (int i = 0; i < results.size(); i++) {
         try {
-          stream.close();
-        } catch (XMLStreamException e) {
-          LOG.error("Not able to close stream file : {0}", e.getMessage());
+          results.get(i).get();
+          CheckerIssueStream stream = streams.get(i);
+          if (stream.isComplete()) {
+            streamed.complete(shards.get(i));
+          } else if (stream.isEnded()) {
+            LOG.warn("Project checker shard streamed {} out of {} issues, the others are imported from its output",
+              stream.getReceived(), stream.getExpected());
+          }
+        } catch (ExecutionException e) {
+          LOG.warn("Project checker shard failed: '{}'", e.getCause().getMessage());
+          Files.deleteIfExists(outputs.get(i).toPath());
         }
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Project checker interrupted", e);
+    } finally {
+      streams.forEach(CheckerIssueStream::close);
+      pool.shutdownNow();
     }
 
-    private void handleFileTag(SensorContext context) throws XMLStreamException {
-      InputFile inputFile = null;
-
-      while (stream.hasNext()) {
-        int next = stream.next();
+    LOG.info("Project Checker streamed {} issues", issues);
+    if (skippedIssues > 0) {
+      LOG.warn("{} streamed issues are not on files of the project and were skipped", skippedIssues);
+    }
+  }
 
-        if (next == XMLStreamConstants.END_ELEMENT && "File".equals(stream.getLocalName())) {
-          break;
-        } else if (next == XMLStreamConstants.START_ELEMENT) {
-          String tagName = stream.getLocalName();
+  private static boolean allDone(List<Future<?>> results) {
+    for (Future<?> result : results) {
+      if (!result.isDone()) {
+        return false;
+      }
+    }
+    return true;
+  }
 
-          if ("Path".equals(tagName)) {
-            String path = stream.getElementText();
-            inputFile = fs.inputFile(fs.predicates().hasAbsolutePath(path));
-          } if ("Issues".equals(tagName)) {
-            handleIssuesTag(context, inputFile);
+  /**
+   * Streams the AnalysisInput document read by the project checker, one File element per MSBuild file.
+   */
+  private void writeAnalysisInput(SensorContext context, File analysisInput, String projectRoot, List<InputFile> files) throws IOException {
+    try (XmlFileWriter writer = new XmlFileWriter(analysisInput)) {
+      writer.startElement("AnalysisInput");
+      writer.startElement("Settings");
+      writeSetting(writer, IGNORE_LIST_INCLUDES_FOLDERS, MSBuildUtils.getStringArrayProperty(IGNORE_LIST_INCLUDES_FOLDERS, this.settings));
+      writeSetting(writer, EXTERNAL_CUSTOM_RULES, MSBuildUtils.getStringArrayProperty(EXTERNAL_CUSTOM_RULES, this.settings));
+      writeSetting(writer, "ProjectRoot", projectRoot);
+      writer.endElement();
+
+      writer.startElement("Rules");
+      for (ActiveRule activeRule : context.activeRules().findByRepository(MSBuildProjectCheckerRulesDefinition.REPOSITORY_KEY)) {
+        writer.startElement("Rule");
+        Map<String, String> parameters = effectiveParameters(activeRule);
+        writer.element("Key", parameters.get("RuleKey"));
+        if (!parameters.isEmpty()) {
+          writer.startElement("Parameters");
+          for (Entry<String, String> parameter : parameters.entrySet()) {
+            writer.startElement("Parameter");
+            writer.element("Key", parameter.getKey());
+            writer.element("Value", parameter.getValue());
+            writer.endElement();
           }
+          writer.endElement();
         }
+        writer.endElement();
       }
+      writer.endElement();
+
+      writer.startElement("Files");
+      for (InputFile file : files) {
+        writer.element("File", file.uri().toString());
+      }
+      writer.endElement();
+      writer.endElement();
     }
+  }
 
-    private void handleIssuesTag(SensorContext context, InputFile inputFile) throws XMLStreamException {
+  private static void writeSetting(XmlFileWriter writer, String key, String value) throws IOException {
+    writer.startElement("Setting");
+    writer.element("Key", key);
+    writer.element("Value", value);
+    writer.endElement();
+  }
 
-      while (stream.hasNext()) {
-        int next = stream.next();
+  private static Map<String, String> effectiveParameters(ActiveRule activeRule) {
+    Map<String, String> builder = new HashMap<>();
 
-        if (next == XMLStreamConstants.END_ELEMENT && "Issues".equals(stream.getLocalName())) {
-          break;
-        } else if (next == XMLStreamConstants.START_ELEMENT) {
-          String tagName = stream.getLocalName();
+    if (!"".equals(activeRule.templateRuleKey())) {
+      builder.put("RuleKey", activeRule.ruleKey().rule());
+    }
 
-          if ("Issue".equals(tagName)) {
-            handleIssueTag(context, inputFile);
-          }
-        }
-      }
+    for (Map.Entry<String, String> param : activeRule.params().entrySet()) {
+      builder.put(param.getKey(), param.getValue());
     }
 
-    private void handleIssueTag(SensorContext sensorContext, InputFile inputFile) throws XMLStreamException {
-      String id = null;
-      String message = null;
-      int line = 1;
+    return builder;
+  }
 
-      while (stream.hasNext()) {
-        int next = stream.next();
+  /**
+   * Imports the tool output, but for the files whose issues were already streamed.
+   */
+  private void importResults(SensorContext context, StreamedIssues streamed) throws IOException {
+    File analysisOutput = toolOutput();
+    if (!analysisOutput.isFile()) {
+      LOG.warn("Project checker output is missing, only the streamed issues are imported");
+      return;
+    }
 
-        if (next == XMLStreamConstants.END_ELEMENT && "Issue".equals(stream.getLocalName())) {
+    new AnalysisResultImporter(context, streamed).parse(analysisOutput, context);
+  }
 
-          NewIssue newIssue = sensorContext.newIssue().forRule(RuleKey.of(MSBuildProjectCheckerRulesDefinition.REPOSITORY_KEY, id));
-          NewIssueLocation location = newIssue.newLocation()
-            .on(inputFile)
-            .at(inputFile.selectLine(line))
-            .message(message);
+  /**
+   * Saves the issues of the tool output from the sensor thread, in document order, while
+   * {@link CheckerOutputReader} parses the next chunks of the output on sonar.msbuild.threads workers.
+   */
+  private class AnalysisResultImporter {
 
-          newIssue.at(location);
-          newIssue.save();
-            
-          break;
-        } else if (next == XMLStreamConstants.START_ELEMENT) {
-          String tagName = stream.getLocalName();
+    private final InputFileIndex index;
+    private final StreamedIssues streamed;
+    private int skippedIssues;
 
-          if ("Id".equals(tagName)) {
-            id = stream.getElementText();
-          } else if ("Line".equals(tagName)) {
-            line = Integer.parseInt(stream.getElementText());
-          } else if ("Message".equals(tagName)) {
-            message = stream.getElementText();
-          }
+    private AnalysisResultImporter(SensorContext context, StreamedIssues streamed) {
+      this.index = new InputFileIndex(context.fileSystem());
+      this.streamed = streamed;
+    }
+
+    private void parse(File file, SensorContext context) throws IOException {
+      try {
+        CheckerOutputReader.read(file, MSBuildUtils.getThreads(settings), result -> handleFile(context, result));
+        if (index.getUnknownPaths() > 0) {
+          LOG.warn("{} result files are not part of the project, {} issues skipped", index.getUnknownPaths(), skippedIssues);
         }
-      }            
-    }   
-  }
+      } catch (IOException e) {
+        LOG.error("Not able to parse file : {0}", e.getMessage());
+        throw e;
+      }
+    }
 
-  private void appendLine(StringBuilder sb, String line) {
-    sb.append(line);
-    sb.append("\r\n");
+    private void handleFile(SensorContext context, CheckerOutputReader.ResultFile result) {
+      InputFile inputFile = result.getPath() == null ? null : index.find(result.getPath());
+      if (inputFile == null) {
+        LOG.debug("Result file not found in the project: {}", result.getPath());
+        skippedIssues += result.getIssues().size();
+        return;
+      }
+      if (streamed.isComplete(inputFile)) {
+        return;
+      }
+      for (CheckerIssueStream.Record issue : result.getIssues()) {
+        if (!streamed.remove(inputFile, issue) && !StructuralChecks.covers(issue.getRuleKey(), issue.getMessage())) {
+          saveIssue(context, inputFile, issue.getRuleKey(), issue.getLine(), issue.getMessage());
+        }
+      }
+    }
   }
 
-  private static class LogInfoStreamConsumer implements StreamConsumer {
+  /**
+   * Issues saved while the checker was running. The output of a file is skipped when its run
+   * streamed all of its issues, otherwise only the issues of the file not streamed are imported.
+   */
+  private static final class StreamedIssues {
 
-    @Override
-    public void consumeLine(String line) {
-      LOG.info(line);
+    private final Set<InputFile> complete = new HashSet<>();
+    private final Map<InputFile, Map<String, Integer>> saved = new HashMap<>();
+
+    private void add(InputFile file, CheckerIssueStream.Record issue) {
+      saved.computeIfAbsent(file, key -> new HashMap<>()).merge(key(issue), 1, Integer::sum);
     }
 
+    private void complete(List<InputFile> files) {
+      complete.addAll(files);
+    }
+
+    private boolean isComplete(InputFile file) {
+      return complete.contains(file);
+    }
+
+    /**
+     * True when the issue of the output was streamed, each streamed issue matches one issue of the output.
+     */
+    private boolean remove(InputFile file, CheckerIssueStream.Record issue) {
+      Map<String, Integer> issues = saved.get(file);
+      if (issues == null) {
+        return false;
+      }
+      String key = key(issue);
+      Integer count = issues.get(key);
+      if (count == null) {
+        return false;
+      }
+      if (count == 1) {
+        issues.remove(key);
+      } else {
+        issues.put(key, count - 1);
+      }
+      return true;
+    }
+
+    private static String key(CheckerIssueStream.Record issue) {
+      return issue.getRuleKey() + '\t' + issue.getLine() + '\t' + issue.getMessage();
+    }
   }
 
   private static class LogErrorStreamConsumer implements StreamConsumer {
@@ -395,6 +742,14 @@ public class MSBuildProjectCheckerExtensionSensor implements Sensor {
     return toolOutput(fs);
   }
 
+  private File toolInput(int shard) {
+    return new File(fs.workDir(), "msbuild-analysis-input-" + shard + ".xml");
+  }
+
+  private File toolOutput(int shard) {
+    return new File(fs.workDir(), "msbuild-analysis-output-" + shard + ".xml");
+  }
+
   private static File toolOutput(FileSystem fileSystem) {
     return new File(fileSystem.workDir(), "msbuild-analysis-output.xml");
   }
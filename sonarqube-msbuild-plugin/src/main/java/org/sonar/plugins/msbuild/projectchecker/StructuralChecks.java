@@ -0,0 +1,285 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.projectchecker;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.sonar.plugins.msbuild.parsers.ProjectModel;
+
+/**
+ * Structural rules of the project checker, evaluated in process on the shared
+ * {@link ProjectModel} instead of by the external checker.
+ *
+ * Each rule reports the issues of the ProjectCheckerTask check it replaces:
+ * same lines, same messages and the same file types. Only elements in the
+ * MSBuild namespace are seen by those checks, so SDK style projects only get
+ * the rules that look at the document element.
+ */
+public final class StructuralChecks {
+
+  public static final String CANNOT_READ_PROJECT = "CannotReadProjectError";
+  public static final String FULLY_QUALIFIED_REFERENCE = "FullyQualifiedReferenceRule";
+  public static final String MULTIPLE_PRIVATE_SET = "MultiplePrivateSet";
+  public static final String EMPTY_TAGS = "EmptyTagsRule";
+  public static final String CSHARP_TARGETS = "MicrosoftCSharpShouldBeIncludeAlways";
+
+  /**
+   * File the checker reads assembly names from, resolved against its working directory,
+   * which is the directory of the checker executable.
+   */
+  public static final String ASSEMBLY_LOOKUP = "assemblyLookup.txt";
+
+  /**
+   * Rules handled here. The checker looks up the Microsoft.CSharp.targets import with
+   * Array.findIndex, which throws before the issue is saved, so CSHARP_TARGETS never
+   * reports anything; it is claimed here only to keep it away from the external checker.
+   */
+  private static final Set<String> RULES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+    CANNOT_READ_PROJECT, FULLY_QUALIFIED_REFERENCE, MULTIPLE_PRIVATE_SET, EMPTY_TAGS, CSHARP_TARGETS)));
+
+  private static final String MSBUILD_NAMESPACE = "http://schemas.microsoft.com/developer/msbuild/2003";
+  private static final String CANNOT_READ_MESSAGE = "Cannot Read File: ";
+  private static final Pattern DECIMAL = Pattern.compile("[+-]?(\\d+\\.?\\d*|\\.\\d+)");
+  private static final Pattern LINE_BREAK = Pattern.compile("\r\n|\r|\n");
+
+  /**
+   * Issue found by a structural rule.
+   */
+  static final class Issue {
+
+    private final String ruleKey;
+    private final int line;
+    private final String message;
+
+    Issue(String ruleKey, int line, String message) {
+      this.ruleKey = ruleKey;
+      this.line = line;
+      this.message = message;
+    }
+
+    String getRuleKey() {
+      return ruleKey;
+    }
+
+    /**
+     * Line as reported by the checker, may be 0 when the searched text is not found.
+     */
+    int getLine() {
+      return line;
+    }
+
+    String getMessage() {
+      return message;
+    }
+
+    @Override
+    public String toString() {
+      return ruleKey + ":" + line + ":" + message;
+    }
+  }
+
+  private final Set<String> activeRules;
+  private final List<String> assemblyLookup;
+
+  public StructuralChecks(Set<String> activeRules, List<String> assemblyLookup) {
+    this.activeRules = new HashSet<>(activeRules);
+    this.activeRules.retainAll(RULES);
+    this.assemblyLookup = assemblyLookup;
+  }
+
+  /**
+   * True for the rules evaluated in process.
+   */
+  public static boolean isStructural(String ruleKey) {
+    return RULES.contains(ruleKey);
+  }
+
+  /**
+   * True when an issue of the external checker is one of the issues found in process.
+   * Projects the checker fails to evaluate with MSBuild are also reported as
+   * CannotReadProjectError, with another message, those are left to the checker.
+   */
+  public static boolean covers(String ruleKey, String message) {
+    if (CANNOT_READ_PROJECT.equals(ruleKey)) {
+      return message != null && message.startsWith(CANNOT_READ_MESSAGE);
+    }
+    return isStructural(ruleKey);
+  }
+
+  public boolean isEmpty() {
+    return activeRules.isEmpty();
+  }
+
+  /**
+   * Lines of the assembly lookup file written by the checker preprocessing, empty when it does not exist.
+   */
+  public static List<String> readAssemblyLookup(Path path) throws IOException {
+    if (!Files.isRegularFile(path)) {
+      return Collections.emptyList();
+    }
+    return Files.readAllLines(path, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Issues of a file, in the order the checker reports them.
+   *
+   * @param path the file as passed to the checker, used to select rules by extension and in messages
+   * @param model the model of the file
+   * @param contents supplies the content of the file, only called when a reference is reported
+   */
+  List<Issue> check(String path, ProjectModel model, Supplier<String> contents) {
+    List<Issue> issues = new ArrayList<>();
+    boolean project = path.endsWith(".fsproj") || path.endsWith(".csproj") || path.endsWith(".vcxproj");
+    boolean msbuildNamespace = MSBUILD_NAMESPACE.equals(model.getNamespace());
+
+    if (isActive(CANNOT_READ_PROJECT) && !isDecimal(model.getToolsVersion())) {
+      add(issues, new Issue(CANNOT_READ_PROJECT, 1, CANNOT_READ_MESSAGE + path));
+    }
+
+    if (project && msbuildNamespace) {
+      checkReferences(issues, model, new Lines(contents));
+    }
+
+    if (project && isActive(EMPTY_TAGS) && !model.getEmptyElements().isEmpty()) {
+      add(issues, new Issue(EMPTY_TAGS, 1, "Make sure all empty xml nodes in this file are removed."));
+    }
+
+    return issues;
+  }
+
+  private void checkReferences(List<Issue> issues, ProjectModel model, Lines lines) {
+    for (ProjectModel.Entry reference : model.getReferences()) {
+      String include = reference.getValue();
+      if (include == null) {
+        continue;
+      }
+
+      if (isActive(FULLY_QUALIFIED_REFERENCE)
+        && (!include.contains("Version=") || !include.contains("Culture") || !include.contains("PublicKeyToken"))
+        && lookupIndex(include) > 0) {
+        add(issues, new Issue(FULLY_QUALIFIED_REFERENCE, lines.find(include) + 1,
+          "Always specify reference with Version, PublicKeyToken and Culture"));
+      }
+
+      if (isActive(MULTIPLE_PRIVATE_SET) && countMetadata(reference, "Private") > 1) {
+        add(issues, new Issue(MULTIPLE_PRIVATE_SET, lines.find(include) + 1, include + " contains multiple private flags."));
+      }
+    }
+  }
+
+  /**
+   * Index of the first lookup line whose assembly name starts the reference, or -1.
+   * The checker does not report references matching the first line.
+   */
+  private int lookupIndex(String include) {
+    for (int i = 0; i < assemblyLookup.size(); i++) {
+      String assembly = assemblyLookup.get(i).split(":", -1)[0];
+      if (include.regionMatches(true, 0, assembly, 0, assembly.length())) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int countMetadata(ProjectModel.Entry item, String name) {
+    int count = 0;
+    for (ProjectModel.Entry metadata : item.getMetadata()) {
+      if (name.equals(metadata.getName())) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static boolean isDecimal(String value) {
+    return value != null && DECIMAL.matcher(value.trim()).matches();
+  }
+
+  private boolean isActive(String ruleKey) {
+    return activeRules.contains(ruleKey);
+  }
+
+  /**
+   * Adds the issue unless the file already has one with the same line and message.
+   */
+  private static void add(List<Issue> issues, Issue issue) {
+    for (Issue existing : issues) {
+      if (existing.line == issue.line && existing.message.equals(issue.message)) {
+        return;
+      }
+    }
+    issues.add(issue);
+  }
+
+  /**
+   * Lines of the file, split on first use.
+   */
+  private static final class Lines {
+
+    private final Supplier<String> contents;
+    private String[] lowerCaseLines;
+
+    private Lines(Supplier<String> contents) {
+      this.contents = contents;
+    }
+
+    /**
+     * One based number of the first line containing the text ignoring case, or -1.
+     */
+    private int find(String text) {
+      if (lowerCaseLines == null) {
+        lowerCaseLines = LINE_BREAK.split(contents.get().toLowerCase(Locale.ROOT));
+      }
+      String lowerCase = text.toLowerCase(Locale.ROOT);
+      for (int i = 0; i < lowerCaseLines.length; i++) {
+        if (lowerCaseLines[i].contains(lowerCase)) {
+          return i + 1;
+        }
+      }
+      return -1;
+    }
+  }
+}
@@ -35,9 +35,18 @@ package org.sonar.plugins.msbuild.utils;
 
 import java.io.*;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.config.Configuration;
+import org.sonar.plugins.msbuild.MSBuildPlugin;
 
 /**
  * Utility class holding various, well, utilities
@@ -57,6 +66,78 @@ public final class MSBuildUtils {
     return sb.toString();
   }  
 
+  /**
+   * Number of worker threads configured through sonar.msbuild.threads,
+   * defaults to the available processors.
+   */
+  public static int getThreads(Configuration settings) {
+    Optional<Integer> threads = settings.getInt(MSBuildPlugin.THREADS_KEY);
+    if (threads.isPresent() && threads.get() > 0) {
+      return threads.get();
+    }
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Timeout setting in seconds as milliseconds, 0 when the setting is 0 or negative, for no limit.
+   */
+  public static long getTimeout(Configuration settings, String key, int defaultSeconds) {
+    int seconds = settings.getInt(key).orElse(defaultSeconds);
+    return seconds > 0 ? TimeUnit.SECONDS.toMillis(seconds) : 0;
+  }
+
+  /**
+   * Directory kept between analyses, sonar.msbuild.cache.path or msbuild under the scanner user home.
+   */
+  public static File getCacheDirectory(Configuration settings) {
+    Optional<String> path = settings.get(MSBuildPlugin.CACHE_PATH_KEY);
+    if (path.isPresent() && !path.get().trim().isEmpty()) {
+      return new File(path.get().trim());
+    }
+
+    Optional<String> userHome = settings.get("sonar.userHome");
+    File sonarHome = userHome.isPresent() ? new File(userHome.get()) : new File(System.getProperty("user.home"), ".sonar");
+    return new File(sonarHome, "msbuild");
+  }
+
+  /**
+   * Version of the plugin, used to invalidate results cached by a different version.
+   */
+  public static String getPluginVersion() {
+    Properties properties = new Properties();
+    try (InputStream is = MSBuildUtils.class.getResourceAsStream("/org/sonar/plugins/msbuild/msbuild-plugin.properties")) {
+      if (is != null) {
+        properties.load(is);
+      }
+    } catch (IOException e) {
+      // unknown version
+    }
+    return properties.getProperty("version", "unknown");
+  }
+
+  /**
+   * Lower case hex encoding of digests, used for cache keys and file names.
+   */
+  public static String toHex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Moves a fully written temporary file over its target, atomically when the file system
+   * supports it, so that concurrent readers never see a partial file.
+   */
+  public static void moveReplacing(Path source, Path target) throws IOException {
+    try {
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
   public static String readLinesToString(String filename) throws IOException {
     FileReader fileReader = new FileReader(filename);
     BufferedReader bufferedReader = new BufferedReader(fileReader);
@@ -70,13 +151,6 @@ public final class MSBuildUtils {
   }
 
   public static void writeStringToFile(String path, String content) throws IOException {
-    File file = new File(path);
-    BufferedWriter writer = null;
-    try {
-        writer = new BufferedWriter(new FileWriter(file));
-        writer.write(content);
-    } finally {
-        if (writer != null) writer.close();
-    }
+    Files.write(new File(path).toPath(), content.getBytes(StandardCharsets.UTF_8));
   }
 }
@@ -34,12 +34,17 @@
 package org.sonar.plugins.msbuild.utils;
 
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.util.List;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.function.Predicate;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
@@ -48,60 +53,98 @@ import org.sonar.api.utils.log.Loggers;
 public class UnZip
 {
   public static final Logger LOG = Loggers.get(UnZip.class);
-  List<String> fileList;
+
+  private static final int BUFFER_SIZE = 256 * 1024;
 
   /**
-   * Unzip it
+   * Unzip it, entries resolving outside of the output folder are rejected
    * @param zipFile input zip file
    * @param output zip file output folder
    */
   public void unZipIt(String zipFile, String outputFolder) throws IOException{
 
-    byte[] buffer = new byte[1024];
-
-    try{
-
-      //create output directory is not exists
-      File folder = new File(outputFolder);
-      if(!folder.exists()){
-          folder.mkdir();
-      }
-
-      //get the zip file content
-      ZipInputStream zis =
-          new ZipInputStream(new FileInputStream(zipFile));
-      //get the zipped file list entry
-      ZipEntry ze = zis.getNextEntry();
-
-      while(ze!=null){
-
-         String fileName = ze.getName();
-         File newFile = new File(outputFolder + File.separator + fileName);
+    byte[] buffer = new byte[BUFFER_SIZE];
+    Path folder = Paths.get(outputFolder).toAbsolutePath().normalize();
 
-         LOG.debug("Unzip {}", newFile.getAbsolutePath());
+    try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(zipFile)), BUFFER_SIZE))) {
+      Files.createDirectories(folder);
 
-          //create all non exists folders
-          //else you will hit FileNotFoundException for compressed folder
-          new File(newFile.getParent()).mkdirs();
+      ZipEntry ze;
+      while ((ze = zis.getNextEntry()) != null) {
+        Path newFile = entryPath(folder, ze);
+        LOG.debug("Unzip {}", newFile);
 
-          FileOutputStream fos = new FileOutputStream(newFile);
-
-          int len;
-          while ((len = zis.read(buffer)) > 0) {
-          fos.write(buffer, 0, len);
+        if (ze.isDirectory()) {
+          Files.createDirectories(newFile);
+        } else {
+          Files.createDirectories(newFile.getParent());
+          try (OutputStream fos = Files.newOutputStream(newFile)) {
+            copy(zis, fos, buffer);
           }
-
-          fos.close();
-          ze = zis.getNextEntry();
+        }
+        zis.closeEntry();
       }
 
-      zis.closeEntry();
-      zis.close();
-
       LOG.debug("Unzip Done.");
-    }catch(IOException ex){
+    } catch (IOException ex) {
       LOG.error("Unzip Failed {}", ex.getMessage());
       throw ex;
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Extracts the selected entries with random access, entries already in the output folder are kept.
+   * Each entry is written to a file of the temporary folder, renamed once complete.
+   * @return the number of entries extracted
+   */
+  public int unZipEntries(ZipFile zip, Path outputFolder, Path tempFolder, Predicate<String> selected) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    Path folder = outputFolder.toAbsolutePath().normalize();
+    Files.createDirectories(folder);
+    Files.createDirectories(tempFolder);
+
+    int extracted = 0;
+    for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+      ZipEntry ze = entries.nextElement();
+      if (ze.isDirectory() || !selected.test(ze.getName())) {
+        continue;
+      }
+      Path newFile = entryPath(folder, ze);
+      if (Files.exists(newFile)) {
+        continue;
+      }
+
+      LOG.debug("Unzip {}", newFile);
+      Files.createDirectories(newFile.getParent());
+      Path temp = Files.createTempFile(tempFolder, "entry", ".tmp");
+      try {
+        try (InputStream is = zip.getInputStream(ze); OutputStream fos = Files.newOutputStream(temp)) {
+          copy(is, fos, buffer);
+        }
+        MSBuildUtils.moveReplacing(temp, newFile);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+      extracted++;
+    }
+    return extracted;
+  }
+
+  /**
+   * Path of an entry in the output folder, entries such as ../file escaping it are not extracted.
+   */
+  static Path entryPath(Path folder, ZipEntry entry) throws IOException {
+    Path path = folder.resolve(entry.getName().replace('\\', '/')).normalize();
+    if (!path.startsWith(folder) || path.equals(folder)) {
+      throw new IOException("Zip entry outside of the output folder: " + entry.getName());
+    }
+    return path;
+  }
+
+  static void copy(InputStream is, OutputStream os, byte[] buffer) throws IOException {
+    int len;
+    while ((len = is.read(buffer)) > 0) {
+      os.write(buffer, 0, len);
+    }
+  }
+}
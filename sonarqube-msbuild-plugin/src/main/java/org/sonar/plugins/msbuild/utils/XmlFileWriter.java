@@ -0,0 +1,168 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes an indented UTF-8 XML document to a file as it is produced.
+ *
+ * Text is escaped by the underlying {@link XMLStreamWriter}, memory use does not
+ * depend on the size of the document.
+ */
+public final class XmlFileWriter implements Closeable {
+
+  private static final String NEW_LINE = "\n";
+  private static final String INDENT = "  ";
+
+  private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+
+  private final Writer out;
+  private final XMLStreamWriter xml;
+  private int depth;
+  private boolean openStartTag;
+
+  public XmlFileWriter(File file) throws IOException {
+    out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+    try {
+      synchronized (OUTPUT_FACTORY) {
+        xml = OUTPUT_FACTORY.createXMLStreamWriter(out);
+      }
+      xml.writeStartDocument("UTF-8", "1.0");
+    } catch (XMLStreamException e) {
+      out.close();
+      throw new IOException(e);
+    }
+  }
+
+  public XmlFileWriter startElement(String name) throws IOException {
+    try {
+      newLine();
+      xml.writeStartElement(name);
+      depth++;
+      openStartTag = true;
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+    return this;
+  }
+
+  public XmlFileWriter endElement() throws IOException {
+    try {
+      depth--;
+      if (!openStartTag) {
+        newLine();
+      }
+      xml.writeEndElement();
+      openStartTag = false;
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+    return this;
+  }
+
+  /**
+   * Writes an element without content, give its attributes with {@link #attribute}.
+   */
+  public XmlFileWriter emptyElement(String name) throws IOException {
+    try {
+      newLine();
+      xml.writeEmptyElement(name);
+      openStartTag = false;
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+    return this;
+  }
+
+  /**
+   * Adds an attribute to the element just started, before its content.
+   */
+  public XmlFileWriter attribute(String name, String value) throws IOException {
+    try {
+      xml.writeAttribute(name, value);
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+    return this;
+  }
+
+  /**
+   * Writes an element with text content, null is written as an empty element.
+   */
+  public XmlFileWriter element(String name, String text) throws IOException {
+    try {
+      newLine();
+      xml.writeStartElement(name);
+      xml.writeCharacters(text == null ? "" : text);
+      xml.writeEndElement();
+      openStartTag = false;
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    }
+    return this;
+  }
+
+  private void newLine() throws XMLStreamException {
+    xml.writeCharacters(NEW_LINE);
+    for (int i = 0; i < depth; i++) {
+      xml.writeCharacters(INDENT);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      while (depth > 0) {
+        endElement();
+      }
+      xml.writeCharacters(NEW_LINE);
+      xml.writeEndDocument();
+      xml.close();
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    } finally {
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Stand-in for the external tools, speaking the protocol of {@link MSBuildToolExecutor}.
+ *
+ * A run prints the process id and its arguments, and exits with the number of
+ * arguments. The argument crash ends the process during the run, the argument hang
+ * blocks the run without further output, the argument partial is written without a
+ * line break. As the daemon host of the tools, #pong and #exit are written on a line
+ * of their own, but after a run with the argument inline, where #exit follows the
+ * output directly.
+ */
+public final class FakeToolDaemon {
+
+  private FakeToolDaemon() {
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (!Arrays.asList(args).contains(MSBuildToolExecutor.DAEMON_ARGUMENT)) {
+      System.exit(run(args));
+    }
+
+    BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+    String line;
+    while ((line = in.readLine()) != null && !"#quit".equals(line)) {
+      if ("#ping".equals(line)) {
+        System.out.println();
+        System.out.println("#pong");
+      } else if (line.startsWith("#run")) {
+        String[] arguments = line.split("\t", -1);
+        int code = run(Arrays.copyOfRange(arguments, 1, arguments.length));
+        if (!Arrays.asList(arguments).contains("inline")) {
+          System.out.println();
+        }
+        System.out.println("#exit\t" + code);
+      }
+      System.out.flush();
+    }
+  }
+
+  private static int run(String[] arguments) throws InterruptedException {
+    System.out.println("pid " + ProcessHandle.current().pid());
+    for (String argument : arguments) {
+      if ("crash".equals(argument)) {
+        System.out.flush();
+        System.exit(3);
+      }
+      if ("hang".equals(argument)) {
+        System.out.flush();
+        Thread.sleep(Long.MAX_VALUE);
+      }
+      if ("partial".equals(argument)) {
+        System.out.print(argument);
+      } else {
+        System.out.println(argument);
+      }
+      System.err.println("err " + argument);
+    }
+    return arguments.length;
+  }
+}
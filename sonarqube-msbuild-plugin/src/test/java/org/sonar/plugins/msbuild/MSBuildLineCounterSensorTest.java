@@ -0,0 +1,148 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.batch.sensor.internal.SensorContextTester;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.measures.CoreMetrics;
+
+public class MSBuildLineCounterSensorTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private final File baseDir = new File("src/test/resources/org/sonar/plugins/msbuild/SampleProject");
+  private SensorContextTester context;
+  private InputFile inputFile;
+
+  @Before
+  public void setup() throws IOException {
+    context = SensorContextTester.create(baseDir);
+    File file = new File(baseDir, "configuration.props");
+    inputFile = TestInputFileBuilder.create("moduleKey", baseDir, file)
+      .setLanguage(MSBuildLanguage.KEY)
+      .setCharset(StandardCharsets.UTF_8)
+      .initMetadata(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8))
+      .build();
+    context.fileSystem().add(inputFile);
+  }
+
+  private MSBuildLineCounterSensor newSensor() throws IOException {
+    MapSettings settings = new MapSettings();
+    settings.setProperty(MSBuildPlugin.CACHE_PATH_KEY, temp.newFolder().getAbsolutePath());
+    return new MSBuildLineCounterSensor(new MSBuildMeasureCache(settings.asConfig()));
+  }
+
+  @Test
+  public void shouldSaveCommentAndNclocMeasures() throws IOException {
+    newSensor().execute(context);
+
+    assertEquals(Integer.valueOf(2), context.measure(inputFile.key(), CoreMetrics.COMMENT_LINES).value());
+    assertEquals(Integer.valueOf(20), context.measure(inputFile.key(), CoreMetrics.NCLOC).value());
+  }
+
+  @Test
+  public void shouldSaveStructureMeasures() throws IOException {
+    newSensor().execute(context);
+
+    assertEquals(Integer.valueOf(1), context.measure(inputFile.key(), MSBuildMetrics.PROPERTY_GROUPS).value());
+    assertEquals(Integer.valueOf(0), context.measure(inputFile.key(), MSBuildMetrics.ITEM_GROUPS).value());
+    assertEquals(Integer.valueOf(11), context.measure(inputFile.key(), MSBuildMetrics.CONDITIONS).value());
+    assertEquals(Integer.valueOf(3), context.measure(inputFile.key(), MSBuildMetrics.MAX_DEPTH).value());
+  }
+
+  @Test
+  public void shouldCountMultiLineCommentsWithWindowsLineEndings() throws IOException {
+    String content = "<Project>\r\n"
+      + "  <!-- first\r\n"
+      + "       second -->\r\n"
+      + "\r\n"
+      + "  <PropertyGroup />\r\n"
+      + "</Project>\r\n";
+    File file = temp.newFile("crlf.props");
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    SensorContextTester crlfContext = SensorContextTester.create(temp.getRoot());
+    InputFile crlfFile = TestInputFileBuilder.create("moduleKey", temp.getRoot(), file)
+      .setLanguage(MSBuildLanguage.KEY)
+      .setCharset(StandardCharsets.UTF_8)
+      .initMetadata(content)
+      .build();
+    crlfContext.fileSystem().add(crlfFile);
+
+    newSensor().execute(crlfContext);
+
+    assertEquals(Integer.valueOf(2), crlfContext.measure(crlfFile.key(), CoreMetrics.COMMENT_LINES).value());
+    assertEquals(Integer.valueOf(3), crlfContext.measure(crlfFile.key(), CoreMetrics.NCLOC).value());
+  }
+
+  @Test
+  public void shouldMeasureEveryFileWithMultipleThreads() throws IOException {
+    SensorContextTester parallelContext = SensorContextTester.create(temp.getRoot());
+    parallelContext.settings().setProperty(MSBuildPlugin.THREADS_KEY, 4);
+    InputFile[] files = new InputFile[50];
+    for (int i = 0; i < files.length; i++) {
+      StringBuilder content = new StringBuilder("<Project>\n");
+      for (int j = 0; j < i; j++) {
+        content.append("  <!-- comment -->\n  <Import Project=\"a.props\" />\n");
+      }
+      content.append("</Project>\n");
+      File file = temp.newFile("file" + i + ".props");
+      Files.write(file.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+      files[i] = TestInputFileBuilder.create("moduleKey", temp.getRoot(), file)
+        .setLanguage(MSBuildLanguage.KEY)
+        .setCharset(StandardCharsets.UTF_8)
+        .initMetadata(content.toString())
+        .build();
+      parallelContext.fileSystem().add(files[i]);
+    }
+
+    newSensor().execute(parallelContext);
+
+    for (int i = 0; i < files.length; i++) {
+      assertEquals(Integer.valueOf(i), parallelContext.measure(files[i].key(), CoreMetrics.COMMENT_LINES).value());
+      assertEquals(Integer.valueOf(i + 2), parallelContext.measure(files[i].key(), CoreMetrics.NCLOC).value());
+    }
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.plugins.msbuild.parsers.LineCounts;
+
+public class MSBuildMeasureCacheTest {
+
+  private static final String HASH = "0123456789abcdef0123456789abcdef";
+  private static final String OTHER_HASH = "fedcba9876543210fedcba9876543210";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private MapSettings settings;
+
+  @Before
+  public void setup() throws IOException {
+    settings = new MapSettings();
+    settings.setProperty(MSBuildPlugin.CACHE_PATH_KEY, temp.newFolder().getAbsolutePath());
+  }
+
+  @Test
+  public void shouldKeepEntriesBetweenAnalyses() {
+    MSBuildMeasureCache cache = new MSBuildMeasureCache(settings.asConfig());
+    cache.putLineCounts(HASH, new LineCounts(10, 2, 3));
+    cache.stop();
+
+    MSBuildMeasureCache reloaded = new MSBuildMeasureCache(settings.asConfig());
+    LineCounts counts = reloaded.getLineCounts(HASH);
+    assertEquals(10, counts.getLines());
+    assertEquals(2, counts.getBlankLines());
+    assertEquals(3, counts.getCommentLines());
+    assertNull(reloaded.getLineCounts(OTHER_HASH));
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedEntries() {
+    settings.setProperty(MSBuildMeasureCache.MAX_ENTRIES, 1);
+    MSBuildMeasureCache cache = new MSBuildMeasureCache(settings.asConfig());
+    cache.putLineCounts(HASH, new LineCounts(1, 0, 0));
+    cache.putLineCounts(OTHER_HASH, new LineCounts(2, 0, 0));
+    cache.stop();
+
+    MSBuildMeasureCache reloaded = new MSBuildMeasureCache(settings.asConfig());
+    assertNull(reloaded.getLineCounts(HASH));
+    assertEquals(2, reloaded.getLineCounts(OTHER_HASH).getLines());
+  }
+
+  @Test
+  public void shouldDiscardCorruptedCache() throws IOException {
+    MSBuildMeasureCache cache = new MSBuildMeasureCache(settings.asConfig());
+    cache.putLineCounts(HASH, new LineCounts(10, 2, 3));
+    cache.stop();
+
+    File file = new File(settings.getString(MSBuildPlugin.CACHE_PATH_KEY), MSBuildMeasureCache.CACHE_FILE);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.seek(raf.length() - 12);
+      raf.write(0x7F);
+    }
+
+    MSBuildMeasureCache reloaded = new MSBuildMeasureCache(settings.asConfig());
+    assertNull(reloaded.getLineCounts(HASH));
+    reloaded.putLineCounts(HASH, new LineCounts(4, 0, 0));
+    reloaded.stop();
+
+    assertEquals(4, new MSBuildMeasureCache(settings.asConfig()).getLineCounts(HASH).getLines());
+  }
+
+  @Test
+  public void shouldDoNothingWhenDisabled() {
+    settings.setProperty(MSBuildMeasureCache.MAX_ENTRIES, 0);
+    MSBuildMeasureCache cache = new MSBuildMeasureCache(settings.asConfig());
+    cache.putLineCounts(HASH, new LineCounts(1, 0, 0));
+    cache.stop();
+
+    assertNull(cache.getLineCounts(HASH));
+    assertEquals(false, new File(settings.getString(MSBuildPlugin.CACHE_PATH_KEY), MSBuildMeasureCache.CACHE_FILE).exists());
+  }
+
+  @Test
+  public void shouldHashTheContentWithItsCharset() throws IOException {
+    File file = temp.newFile("App.csproj");
+    Files.write(file.toPath(), "<Project>\u00e9</Project>".getBytes(StandardCharsets.UTF_8));
+
+    String utf8 = MSBuildMeasureCache.hash(inputFile(file, StandardCharsets.UTF_8));
+    assertEquals(utf8, MSBuildMeasureCache.hash(inputFile(file, StandardCharsets.UTF_8)));
+    assertNotEquals(utf8, MSBuildMeasureCache.hash(inputFile(file, StandardCharsets.ISO_8859_1)));
+
+    Files.write(file.toPath(), "<Project>e</Project>".getBytes(StandardCharsets.UTF_8));
+    assertNotEquals(utf8, MSBuildMeasureCache.hash(inputFile(file, StandardCharsets.UTF_8)));
+  }
+
+  private InputFile inputFile(File file, Charset charset) {
+    return TestInputFileBuilder.create("moduleKey", temp.getRoot(), file).setCharset(charset).build();
+  }
+}
@@ -63,6 +63,6 @@ public class MSBuildPluginTest {
    });
    MSBuildPlugin plugin = new MSBuildPlugin();
    plugin.define(context);
-   assertEquals(24, context.getExtensions().size());
+   assertEquals(39, context.getExtensions().size());
   }
 }
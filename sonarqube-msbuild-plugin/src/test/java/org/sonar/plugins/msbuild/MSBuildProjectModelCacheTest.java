@@ -0,0 +1,131 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.plugins.msbuild.parsers.ProjectModel;
+
+public class MSBuildProjectModelCacheTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldBuildProjectModel() throws IOException {
+    InputFile file = inputFile("<Project xmlns=\"http://schemas.microsoft.com/developer/msbuild/2003\">\n"
+      + "  <Import Project=\"a.props\" Condition=\"Exists('a.props')\" />\n"
+      + "  <PropertyGroup>\n"
+      + "    <OutputType>Exe</OutputType>\n"
+      + "  </PropertyGroup>\n"
+      + "  <ItemGroup>\n"
+      + "    <Compile Include=\"a.cs\" />\n"
+      + "    <Reference Include=\"System\" />\n"
+      + "    <ProjectReference Include=\"b.csproj\" />\n"
+      + "  </ItemGroup>\n"
+      + "</Project>\n");
+
+    ProjectModel model = new MSBuildProjectModelCache().get(file);
+
+    assertEquals("Project", model.getRootElement());
+    assertEquals("http://schemas.microsoft.com/developer/msbuild/2003", model.getNamespace());
+    assertEquals("a.props", model.getImports().get(0).getValue());
+    assertEquals("Exists('a.props')", model.getImports().get(0).getCondition());
+    assertEquals(2, model.getImports().get(0).getLine());
+    assertEquals("OutputType", model.getProperties().get(0).getName());
+    assertEquals("Exe", model.getProperties().get(0).getValue());
+    assertEquals(3, model.getItems().size());
+    assertEquals("System", model.getReferences().get(0).getValue());
+    assertEquals("b.csproj", model.getProjectReferences().get(0).getValue());
+    assertEquals(9, model.getProjectReferences().get(0).getLine());
+  }
+
+  @Test
+  public void shouldParseEachFileOnceForConcurrentRequests() throws Exception {
+    InputFile file = inputFile("<Project><ItemGroup><Compile Include=\"a.cs\"/></ItemGroup></Project>");
+    MSBuildProjectModelCache cache = new MSBuildProjectModelCache();
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<ProjectModel>> results = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        results.add(executor.submit(() -> cache.get(file)));
+      }
+      ProjectModel first = results.get(0).get();
+      for (Future<ProjectModel> result : results) {
+        assertSame(first, result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1, cache.getParseCount());
+    assertEquals(100, cache.getRequestCount());
+  }
+
+  @Test
+  public void shouldRememberFilesThatCannotBeParsed() throws IOException {
+    InputFile file = inputFile("<Project><ItemGroup></Project>");
+    MSBuildProjectModelCache cache = new MSBuildProjectModelCache();
+
+    assertNull(cache.get(file));
+    assertNull(cache.get(file));
+    assertEquals(1, cache.getParseCount());
+  }
+
+  private InputFile inputFile(String content) throws IOException {
+    File file = temp.newFile();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return TestInputFileBuilder.create("moduleKey", temp.getRoot(), file)
+      .setLanguage(MSBuildLanguage.KEY)
+      .setCharset(StandardCharsets.UTF_8)
+      .initMetadata(content)
+      .build();
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.internal.MapSettings;
+
+public class MSBuildRunnerExtractorTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldExtractOnceIntoTheCache() throws IOException {
+    File archive = archive(null, "ProjectCheckerRunner.exe", "MSbuildPackageDiagramCreator.exe", "lib/FSharp.Core.dll");
+    MapSettings settings = new MapSettings();
+    settings.setProperty(MSBuildPlugin.CACHE_PATH_KEY, temp.newFolder("cache").getAbsolutePath());
+    File workDir = temp.newFolder("work");
+
+    File checker = new MSBuildRunnerExtractor(settings.asConfig(), archive.toURI().toURL()).projectCheckerFile(workDir.getAbsolutePath());
+    assertEquals(new File(temp.getRoot(), "cache/tools"), checker.getParentFile().getParentFile());
+    assertArrayEquals("ProjectCheckerRunner.exe".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(checker.toPath()));
+    assertTrue(new File(checker.getParentFile(), "lib/FSharp.Core.dll").isFile());
+    assertEquals(0, workDir.list().length);
+    String hash = checker.getParentFile().getName();
+    assertEquals(Arrays.asList(hash, hash + ".lock", hash + ".zip"), sorted(checker.getParentFile().getParentFile().list()));
+
+    // another analysis finds the extracted tools
+    Files.write(checker.toPath(), "kept".getBytes(StandardCharsets.UTF_8));
+    MSBuildRunnerExtractor other = new MSBuildRunnerExtractor(settings.asConfig(), archive.toURI().toURL());
+    assertEquals(checker, other.projectCheckerFile(workDir.getAbsolutePath()));
+    assertEquals(new File(checker.getParentFile(), "MSbuildPackageDiagramCreator.exe"), other.diagramCreatorFile(workDir.getAbsolutePath()));
+    assertArrayEquals("kept".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(checker.toPath()));
+  }
+
+  @Test
+  public void shouldShareOneExtractionBetweenConcurrentAnalyses() throws Exception {
+    File archive = archive(null, "ProjectCheckerRunner.exe", "MSbuildPackageDiagramCreator.exe", "lib/FSharp.Core.dll");
+    File cache = temp.newFolder("cache");
+    File workDir = temp.newFolder("work");
+    MapSettings settings = new MapSettings();
+    settings.setProperty(MSBuildPlugin.CACHE_PATH_KEY, cache.getAbsolutePath());
+
+    List<Process> processes = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      processes.add(new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath(),
+        "-cp", System.getProperty("java.class.path"), MSBuildRunnerExtractorTest.class.getName(),
+        archive.getAbsolutePath(), cache.getAbsolutePath(), workDir.getAbsolutePath()).redirectErrorStream(true).start());
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<String>> threads = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      threads.add(pool.submit(() -> {
+        start.await();
+        return extract(new MSBuildRunnerExtractor(settings.asConfig(), archive.toURI().toURL()), workDir);
+      }));
+    }
+    start.countDown();
+
+    Set<String> results = new HashSet<>();
+    for (Future<String> thread : threads) {
+      results.add(thread.get());
+    }
+    pool.shutdown();
+    for (Process process : processes) {
+      String[] output = new String(readAll(process.getInputStream()), StandardCharsets.UTF_8).trim().split("\\R");
+      assertEquals(0, process.waitFor());
+      // the last line, after the logs
+      results.add(output[output.length - 1]);
+    }
+
+    assertEquals(1, results.size());
+    File tools = new File(cache, "tools");
+    String hash = tools.list((dir, name) -> !name.contains("."))[0];
+    assertEquals(new File(tools, hash + "/ProjectCheckerRunner.exe").getAbsolutePath() + " ProjectCheckerRunner.exe",
+      results.iterator().next());
+    assertEquals(Arrays.asList(hash, hash + ".lock", hash + ".zip"), sorted(tools.list()));
+    assertEquals(0, workDir.list().length);
+  }
+
+  @Test
+  public void shouldExtractTheEntriesOfEachToolOnDemand() throws IOException {
+    File archive = archive("ProjectCheckerRunner.exe = *.dll !Locator.dll\n"
+      + "MSbuildPackageDiagramCreator.exe = *.dll !Checks.dll\n",
+      "ProjectCheckerRunner.exe", "MSbuildPackageDiagramCreator.exe", "Checks.dll", "Locator.dll", "Common.dll");
+    MapSettings settings = new MapSettings();
+    settings.setProperty(MSBuildPlugin.CACHE_PATH_KEY, temp.newFolder("cache").getAbsolutePath());
+    String workDir = temp.newFolder("work").getAbsolutePath();
+    MSBuildRunnerExtractor extractor = new MSBuildRunnerExtractor(settings.asConfig(), archive.toURI().toURL());
+
+    File tools = extractor.projectCheckerFile(workDir).getParentFile();
+    assertEquals(Arrays.asList("Checks.dll", "Common.dll", "ProjectCheckerRunner.exe", "ProjectCheckerRunner.exe.complete"),
+      sorted(tools.list()));
+
+    assertEquals(tools, extractor.diagramCreatorFile(workDir).getParentFile());
+    assertEquals(Arrays.asList("Checks.dll", "Common.dll", "Locator.dll", "MSbuildPackageDiagramCreator.exe",
+      "MSbuildPackageDiagramCreator.exe.complete", "ProjectCheckerRunner.exe", "ProjectCheckerRunner.exe.complete"),
+      sorted(tools.list()));
+  }
+
+  /**
+   * Extraction from another process, prints the path and content of the project checker.
+   */
+  public static void main(String[] args) throws IOException {
+    MapSettings settings = new MapSettings();
+    settings.setProperty(MSBuildPlugin.CACHE_PATH_KEY, args[1]);
+    System.out.println(extract(new MSBuildRunnerExtractor(settings.asConfig(), new File(args[0]).toURI().toURL()), new File(args[2])));
+  }
+
+  private static String extract(MSBuildRunnerExtractor extractor, File workDir) throws IOException {
+    File checker = extractor.projectCheckerFile(workDir.getAbsolutePath());
+    return checker.getAbsolutePath() + " " + new String(Files.readAllBytes(checker.toPath()), StandardCharsets.UTF_8);
+  }
+
+  private static byte[] readAll(InputStream is) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = is.read(buffer)) != -1) {
+      os.write(buffer, 0, read);
+    }
+    return os.toByteArray();
+  }
+
+  private static List<String> sorted(String[] names) {
+    List<String> result = new ArrayList<>(Arrays.asList(names));
+    Collections.sort(result);
+    return result;
+  }
+
+  private File archive(String manifest, String... entries) throws IOException {
+    File archive = temp.newFile("ProjectChecker.zip");
+    try (OutputStream os = Files.newOutputStream(archive.toPath()); ZipOutputStream zip = new ZipOutputStream(os)) {
+      if (manifest != null) {
+        zip.putNextEntry(new ZipEntry("tools.manifest"));
+        zip.write(manifest.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+      }
+      for (String entry : entries) {
+        zip.putNextEntry(new ZipEntry(entry));
+        zip.write(entry.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+      }
+    }
+    return archive;
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Test;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.utils.command.Command;
+
+public class MSBuildToolExecutorTest {
+
+  private MSBuildToolExecutor executor;
+
+  @After
+  public void stopDaemons() {
+    if (executor != null) {
+      executor.stop();
+    }
+  }
+
+  @Test
+  public void shouldStartOneProcessPerRunByDefault() {
+    executor = new MSBuildToolExecutor(new MapSettings().asConfig());
+    List<String> out = new ArrayList<>();
+    List<String> err = new ArrayList<>();
+
+    assertEquals(2, executor.execute(fakeTool(), Arrays.asList("/i:in.xml", "/o:out.xml"), out::add, err::add, 60000));
+    assertEquals(Arrays.asList("/i:in.xml", "/o:out.xml"), out.subList(1, out.size()));
+    assertEquals(0, executor.getStartedCount());
+  }
+
+  @Test
+  public void shouldReuseTheDaemonAcrossRuns() {
+    executor = new MSBuildToolExecutor(daemonSettings(300).asConfig());
+    List<String> first = new ArrayList<>();
+    List<String> second = new ArrayList<>();
+    List<String> err = Collections.synchronizedList(new ArrayList<>());
+
+    assertEquals(1, executor.execute(fakeTool(), Arrays.asList("/i:first.xml"), first::add, err::add, 60000));
+    assertEquals(2, executor.execute(fakeTool(), Arrays.asList("/i:second.xml", "/o:out.xml"), second::add, err::add, 60000));
+
+    assertEquals(first.get(0), second.get(0));
+    assertEquals(Arrays.asList("/i:second.xml", "/o:out.xml"), second.subList(1, second.size()));
+    assertEquals(1, executor.getStartedCount());
+    assertEquals(1, executor.getIdleCount());
+  }
+
+  @Test
+  public void shouldFindTheExitCodeAfterOutputWithoutLineBreak() {
+    executor = new MSBuildToolExecutor(daemonSettings(300).asConfig());
+    List<String> out = new ArrayList<>();
+
+    assertEquals(2, executor.execute(fakeTool(), Arrays.asList("", "partial"), out::add, line -> { }, 60000));
+    assertEquals(Arrays.asList("", "partial"), out.subList(1, out.size()));
+
+    out.clear();
+    assertEquals(2, executor.execute(fakeTool(), Arrays.asList("inline", "partial"), out::add, line -> { }, 60000));
+    assertEquals(Arrays.asList("inline", "partial"), out.subList(1, out.size()));
+    assertEquals(1, executor.getStartedCount());
+  }
+
+  @Test
+  public void shouldReplaceADaemonThatExited() {
+    executor = new MSBuildToolExecutor(daemonSettings(300).asConfig());
+    List<String> first = new ArrayList<>();
+    List<String> second = new ArrayList<>();
+
+    try {
+      executor.execute(fakeTool(), Arrays.asList("crash"), first::add, line -> { }, 60000);
+      fail("the run should fail when the daemon exits");
+    } catch (IllegalStateException e) {
+      assertEquals(0, executor.getIdleCount());
+    }
+    assertEquals(0, executor.execute(fakeTool(), Collections.emptyList(), second::add, line -> { }, 60000));
+
+    assertNotEquals(first.get(0), second.get(0));
+    assertEquals(2, executor.getStartedCount());
+  }
+
+  @Test
+  public void shouldStopIdleDaemons() throws InterruptedException {
+    executor = new MSBuildToolExecutor(daemonSettings(1).asConfig());
+
+    executor.execute(fakeTool(), Collections.emptyList(), line -> { }, line -> { }, 60000);
+    assertEquals(1, executor.getIdleCount());
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (executor.getIdleCount() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+    }
+    assertEquals(0, executor.getIdleCount());
+  }
+
+  @Test
+  public void shouldStopARunAfterItsTimeout() {
+    executor = new MSBuildToolExecutor(new MapSettings().asConfig());
+    List<String> out = new ArrayList<>();
+
+    long start = System.currentTimeMillis();
+    try {
+      executor.execute(fakeTool(), Arrays.asList("first", "hang"), out::add, line -> { }, 1000, 0, () -> false);
+      fail("the run should be stopped");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("timeout"));
+    }
+    assertTrue(System.currentTimeMillis() - start < 30000);
+    assertEquals("first", out.get(out.size() - 1));
+  }
+
+  @Test
+  public void shouldReplaceAStalledDaemon() {
+    executor = new MSBuildToolExecutor(daemonSettings(300).asConfig());
+
+    try {
+      executor.execute(fakeTool(), Arrays.asList("hang"), line -> { }, line -> { }, 0, 500, () -> false);
+      fail("the run should be stopped");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("no output"));
+    }
+    assertEquals(0, executor.getIdleCount());
+    assertEquals(1, executor.execute(fakeTool(), Arrays.asList("after"), line -> { }, line -> { }, 60000));
+    assertEquals(2, executor.getStartedCount());
+  }
+
+  @Test
+  public void shouldStopACancelledRun() {
+    executor = new MSBuildToolExecutor(new MapSettings().asConfig());
+    long cancelAt = System.currentTimeMillis() + 500;
+
+    try {
+      executor.execute(fakeTool(), Arrays.asList("hang"), line -> { }, line -> { }, 0, 0, () -> System.currentTimeMillis() > cancelAt);
+      fail("the run should be stopped");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("cancelled"));
+    }
+  }
+
+  private static MapSettings daemonSettings(int idleTimeout) {
+    MapSettings settings = new MapSettings();
+    settings.setProperty(MSBuildToolExecutor.DAEMON_ENABLED, "true");
+    settings.setProperty(MSBuildToolExecutor.DAEMON_IDLE_TIMEOUT, idleTimeout);
+    return settings;
+  }
+
+  private static Command fakeTool() {
+    return Command.create(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath())
+      .addArgument("-cp")
+      .addArgument(System.getProperty("java.class.path"))
+      .addArgument(FakeToolDaemon.class.getName());
+  }
+}
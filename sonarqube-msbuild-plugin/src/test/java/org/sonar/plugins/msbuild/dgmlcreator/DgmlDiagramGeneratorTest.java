@@ -0,0 +1,161 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.dgmlcreator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.batch.sensor.internal.SensorContextTester;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.plugins.msbuild.MSBuildProjectModelCache;
+import org.sonar.plugins.msbuild.parsers.CompactDocument;
+import org.sonar.plugins.msbuild.parsers.SaxParser;
+
+public class DgmlDiagramGeneratorTest {
+
+  private static final String APP_GUID = "{11111111-1111-1111-1111-111111111111}";
+  private static final String CORE_GUID = "{22222222-2222-2222-2222-222222222222}";
+  private static final String TOOL_GUID = "{33333333-3333-3333-3333-333333333333}";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldWriteProjectPackageAndBuildDependencies() throws IOException {
+    File base = createSolution();
+    MapSettings settings = new MapSettings();
+
+    List<String> links = generate(base, settings);
+
+    assertEquals("[SLN:Product>App:Contains, App>Core:ProjectDependency, App>Newtonsoft.Json:PackageDependency, "
+      + "App>Zlib.1.2.8:PackageDependency, App>Core:BuildDependency, SLN:Product>Core:Contains, "
+      + "Core>Logging:PackageDependency, SLN:Product>Tool:Contains]", links.toString());
+    String content = new String(Files.readAllBytes(new File(base, "diagram.dgml").toPath()), StandardCharsets.UTF_8);
+    assertTrue(content, content.contains("<Node Id=\"Tool\" Label=\"Tool\" Category=\"Project\" Visibility=\"Hidden\"/>"));
+    assertTrue(content, content.contains("<Node Id=\"Zlib.1.2.8\" Label=\"Zlib.1.2.8\" Category=\"Package\"/>"));
+    assertTrue(content, content.contains("<Setter Property=\"Stroke\" Expression=\"Color.FromRgb(30,144,255)\"/>"));
+  }
+
+  @Test
+  public void shouldHonourPlotSettingsAndFilters() throws IOException {
+    File base = createSolution();
+    MapSettings settings = new MapSettings();
+    settings.setProperty(MSBuildDiagramCreatorSensor.PLOT_SOLUTION_BUILD_DEPENDENCIES, "false");
+    settings.setProperty(MSBuildDiagramCreatorSensor.IGNORE_NUGET_PACKAGES, "zlib;logging");
+
+    assertEquals("[SLN:Product>App:Contains, App>Core:ProjectDependency, App>Newtonsoft.Json:PackageDependency, "
+      + "SLN:Product>Core:Contains, SLN:Product>Tool:Contains]", generate(base, settings).toString());
+
+    settings.setProperty(MSBuildDiagramCreatorSensor.PLOT_NUGET_DEPENDENCIES, "false");
+    settings.setProperty(MSBuildDiagramCreatorSensor.PLOT_PROJECT_DEPENDENCIES, "false");
+    assertEquals("[SLN:Product>App:Contains, SLN:Product>Core:Contains, SLN:Product>Tool:Contains]",
+      generate(base, settings).toString());
+
+    settings.setProperty(MSBuildDiagramCreatorSensor.SOLUTION_NODE_FILTER, "SLN:Other");
+    assertEquals("[]", generate(base, settings).toString());
+    settings.setProperty(MSBuildDiagramCreatorSensor.SOLUTION_NODE_FILTER, "product");
+    assertFalse(generate(base, settings).isEmpty());
+  }
+
+  private File createSolution() throws IOException {
+    File base = temp.newFolder("project");
+    write(new File(base, "src/Product.sln"), "\uFEFF\r\n"
+      + "Microsoft Visual Studio Solution File, Format Version 12.00\r\n"
+      + "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"App\", \"App\\App.csproj\", \"" + APP_GUID + "\"\r\n"
+      + "\tProjectSection(ProjectDependencies) = postProject\r\n"
+      + "\t\t" + CORE_GUID + " = " + CORE_GUID + "\r\n"
+      + "\tEndProjectSection\r\n"
+      + "EndProject\r\n"
+      + "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Core\", \"Core\\Core.csproj\", \"" + CORE_GUID + "\"\r\n"
+      + "EndProject\r\n"
+      + "Project(\"{8BC9CEB8-8B4A-11D0-8D11-00A0C91BC942}\") = \"Tool\", \"Tool\\Tool.vcxproj\", \"" + TOOL_GUID + "\"\r\n"
+      + "EndProject\r\n"
+      + "Global\r\n"
+      + "EndGlobal\r\n");
+    write(new File(base, "src/App/App.csproj"), "<Project xmlns=\"http://schemas.microsoft.com/developer/msbuild/2003\">\n"
+      + "  <Import Project=\"$(SolutionDir)..\\Packages\\Zlib.1.2.8\\build\\native\\Zlib.targets\" />\n"
+      + "  <Import Project=\"$(MSBuildExtensionsPath)\\Microsoft.CSharp.targets\" />\n"
+      + "  <ItemGroup>\n"
+      + "    <ProjectReference Include=\"..\\Core\\Core.csproj\">\n"
+      + "      <Project>" + CORE_GUID.toLowerCase() + "</Project>\n"
+      + "    </ProjectReference>\n"
+      + "    <PackageReference Include=\"Newtonsoft.Json\" Version=\"12.0.1\" />\n"
+      + "  </ItemGroup>\n"
+      + "</Project>\n");
+    write(new File(base, "src/Core/Core.csproj"), "<Project Sdk=\"Microsoft.NET.Sdk\" />\n");
+    write(new File(base, "src/Core/packages.config"), "<packages>\n"
+      + "  <package id=\"Logging\" />\n"
+      + "</packages>\n");
+    write(new File(base, "src/Tool/Tool.vcxproj"), "<Project />\n");
+    return base;
+  }
+
+  private List<String> generate(File base, MapSettings settings) throws IOException {
+    DefaultFileSystem fs = SensorContextTester.create(base).fileSystem();
+    File core = new File(base, "src/Core/Core.csproj");
+    fs.add(TestInputFileBuilder.create("module", base, core).setCharset(StandardCharsets.UTF_8).build());
+    File output = new File(base, "diagram.dgml");
+
+    DgmlDiagramGenerator generator = new DgmlDiagramGenerator(settings.asConfig(), fs, new MSBuildProjectModelCache(),
+      new File(base, "Packages").getAbsolutePath());
+    assertEquals(1, generator.generate(output));
+
+    CompactDocument document;
+    try (InputStream input = Files.newInputStream(output.toPath())) {
+      document = new SaxParser().parseCompactDocument(input, false, false);
+    }
+    List<String> links = new ArrayList<>();
+    for (int link : document.elements("Link")) {
+      links.add(document.attribute(link, "Source") + ">" + document.attribute(link, "Target") + ":" + document.attribute(link, "Category"));
+    }
+    return links;
+  }
+
+  private static void write(File file, String content) throws IOException {
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.dgmlcreator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.sensor.internal.SensorContextTester;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.utils.command.Command;
+import org.sonar.api.utils.command.StreamConsumer;
+import org.sonar.plugins.msbuild.MSBuildMetrics;
+import org.sonar.plugins.msbuild.MSBuildProjectModelCache;
+import org.sonar.plugins.msbuild.MSBuildRunnerExtractor;
+import org.sonar.plugins.msbuild.MSBuildToolExecutor;
+
+public class MSBuildDiagramCreatorSensorTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private SensorContextTester context;
+  private MapSettings settings;
+  private StandInExecutor executor;
+
+  @Before
+  public void setup() throws IOException {
+    context = SensorContextTester.create(temp.newFolder("project"));
+    context.fileSystem().setWorkDir(temp.newFolder("work").toPath());
+    settings = new MapSettings();
+    settings.setProperty(MSBuildDiagramCreatorSensor.DIAGRAM_CREATOR_ENABLED, "true");
+    // every plot is on, as by default
+    for (String plot : new String[] {MSBuildDiagramCreatorSensor.PLOT_HEADER_DEPENDENCIES,
+      MSBuildDiagramCreatorSensor.PLOT_HEADER_DEPENDENCIES_INSIDE_PROJECT, MSBuildDiagramCreatorSensor.PLOT_NUGET_DEPENDENCIES,
+      MSBuildDiagramCreatorSensor.PLOT_PROJECT_DEPENDENCIES, MSBuildDiagramCreatorSensor.PLOT_SOLUTION_BUILD_DEPENDENCIES}) {
+      settings.setProperty(plot, "true");
+    }
+    executor = new StandInExecutor(settings);
+  }
+
+  @Test
+  public void shouldGenerateTheDiagramInProcessByDefault() throws IOException {
+    newSensor().execute(context);
+
+    assertEquals(0, executor.runs);
+    assertNotNull(context.measure(context.module().key(), MSBuildMetrics.DGMLDIAGRAM));
+    assertTrue(new File(context.fileSystem().workDir(), "msbuild-diagram-output.dgml").isFile());
+  }
+
+  @Test
+  public void shouldRunTheExternalCreatorWhenRequested() throws IOException {
+    settings.setProperty(MSBuildDiagramCreatorSensor.DIAGRAM_CREATOR_EXTERNAL, "true");
+
+    newSensor().execute(context);
+
+    assertEquals(1, executor.runs);
+  }
+
+  private MSBuildDiagramCreatorSensor newSensor() throws IOException {
+    MSBuildRunnerExtractor extractor = new MSBuildRunnerExtractor(settings.asConfig()) {
+      @Override
+      public File diagramCreatorFile(String rootDir) {
+        return new File("MSbuildPackageDiagramCreator.exe");
+      }
+    };
+    return new MSBuildDiagramCreatorSensor(settings.asConfig(), extractor, executor, context.fileSystem(),
+      new MSBuildProjectModelCache());
+  }
+
+  /**
+   * Stand-in for the diagram creator, counting its runs.
+   */
+  private static final class StandInExecutor extends MSBuildToolExecutor {
+
+    private int runs;
+
+    private StandInExecutor(MapSettings settings) {
+      super(settings.asConfig());
+    }
+
+    @Override
+    public int execute(Command launch, List<String> arguments, StreamConsumer stdOut, StreamConsumer stdErr,
+      long timeoutMilliseconds, long inactivityMilliseconds, BooleanSupplier cancelled) {
+      runs++;
+      return 0;
+    }
+  }
+}
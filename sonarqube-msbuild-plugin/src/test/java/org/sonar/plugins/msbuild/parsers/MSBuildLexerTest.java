@@ -0,0 +1,206 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.parsers;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+
+public class MSBuildLexerTest {
+
+  private static final String[] DOCUMENTS = {
+    "<Project>\n  <!-- one -->\n  <A>x</A>\n</Project>\n",
+    "<!-- a -->\n<!-- b -->\n<Project>\n</Project>",
+    "<?xml version=\"1.0\"?>\r\n<!-- a\r\n b\r\n c -->\r\n<Project/>\r\n<!-- tail -->\r\n",
+    "<Project>\n  <!-- a --><!-- b -->\n  <!-- c\n  d --><A\n Condition=\"'$(X)'=='>'\"/>\n</Project>\n",
+    "<Project>\n  <A><!-- c --></A\n><![CDATA[x]]>\n</Project>",
+    "<Project>\n\n  <B><![CDATA[<!-- not a comment -->\n]]></B>\n  <!-- c --> text <C/>\n  \n</Project>\n",
+    "<!DOCTYPE Project [ <!ENTITY e \"v\"> ]>\n<Project>\r  <!-- mac -->\r  <A/>\r</Project>",
+    "",
+    "<Project>\n  <!-- end -->\n</Project>"
+  };
+
+  @Test
+  public void shouldCountLikeSaxParser() {
+    for (String document : DOCUMENTS) {
+      LineCounts counts = count(document.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+      assertEquals(document, linesOf(document), counts.getLines());
+      assertEquals(document, blankLinesOf(document), counts.getBlankLines());
+      assertEquals(document, saxCommentLines(document), counts.getCommentLines());
+    }
+  }
+
+  @Test
+  public void shouldCountSampleProjectLikeSaxParser() throws IOException {
+    File file = new File("src/test/resources/org/sonar/plugins/msbuild/SampleProject/configuration.props");
+    String document = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+
+    LineCounts counts = MSBuildLexer.countLines(file.toPath(), StandardCharsets.UTF_8);
+
+    assertEquals(linesOf(document), counts.getLines());
+    assertEquals(blankLinesOf(document), counts.getBlankLines());
+    assertEquals(saxCommentLines(document), counts.getCommentLines());
+  }
+
+  @Test
+  public void shouldDetectUtf16FromBom() {
+    String document = DOCUMENTS[3];
+    LineCounts expected = count(document.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+
+    assertCounts(expected, count(withBom(document, StandardCharsets.UTF_16LE, 0xFF, 0xFE), StandardCharsets.UTF_8));
+    assertCounts(expected, count(withBom(document, StandardCharsets.UTF_16BE, 0xFE, 0xFF), StandardCharsets.UTF_8));
+    assertCounts(expected, count(withBom(document, StandardCharsets.UTF_8, 0xEF, 0xBB, 0xBF), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void shouldDetectUtf16WithoutBom() {
+    String document = DOCUMENTS[2];
+    LineCounts expected = count(document.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+
+    assertCounts(expected, count(document.getBytes(StandardCharsets.UTF_16LE), StandardCharsets.UTF_8));
+    assertCounts(expected, count(document.getBytes(StandardCharsets.UTF_16BE), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void shouldCountDocumentsBiggerThanOneWindow() throws IOException {
+    StringBuilder document = new StringBuilder("<Project>\r\n");
+    while (document.length() < 3 * MSBuildLexer.WINDOW_THRESHOLD) {
+      document.append("  <!-- first\r\n       second --><ItemGroup Condition=\"'$(A)'=='>'\">\r\n")
+        .append("    <ClCompile Include=\"a.cpp\" /><![CDATA[]]]]>\r\n\r\n  </ItemGroup>\r\n");
+    }
+    document.append("</Project>\r\n");
+    String content = document.toString();
+
+    LineCounts counts = count(content.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+
+    assertEquals(linesOf(content), counts.getLines());
+    assertEquals(blankLinesOf(content), counts.getBlankLines());
+    assertEquals(saxCommentLines(content), counts.getCommentLines());
+
+    File file = File.createTempFile("big", ".vcxproj");
+    try {
+      Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+      LineCounts fromFile = MSBuildLexer.countLines(file.toPath(), StandardCharsets.UTF_8);
+      assertEquals(counts.getLines(), fromFile.getLines());
+      assertEquals(counts.getBlankLines(), fromFile.getBlankLines());
+      assertEquals(counts.getCommentLines(), fromFile.getCommentLines());
+    } finally {
+      Files.delete(file.toPath());
+    }
+  }
+
+  @Test
+  public void shouldCountStructure() {
+    String document = "<Project xmlns:C=\"urn:x\">\n"
+      + "  <Import Project=\"a.props\" Condition=\"Exists('a.props')\"/>\n"
+      + "  <ImportGroup Condition = \"true\"><Import\n Project=\"b.props\"/></ImportGroup>\n"
+      + "  <PropertyGroup Label=\"Condition='x'\"><Conditional>1</Conditional></PropertyGroup>\n"
+      + "  <ItemGroup>\n"
+      + "    <ProjectReference Include=\"a.csproj\"><Private>false</Private></ProjectReference>\n"
+      + "    <Reference Include=\"System\" />\n"
+      + "    <References/><ReferenceX Condition='1'/>\n"
+      + "    <!-- <Import Project=\"c.props\"/> -->\n"
+      + "  </ItemGroup>\n"
+      + "</Project>\n";
+
+    for (Charset charset : new Charset[] {StandardCharsets.UTF_8, StandardCharsets.UTF_16LE}) {
+      StructureCounts structure = count(document.getBytes(charset), charset).getStructure();
+
+      assertEquals(2, structure.getImports());
+      assertEquals(1, structure.getPropertyGroups());
+      assertEquals(1, structure.getItemGroups());
+      assertEquals(3, structure.getConditions());
+      assertEquals(1, structure.getProjectReferences());
+      assertEquals(1, structure.getReferences());
+      assertEquals(4, structure.getMaxDepth());
+    }
+  }
+
+  private static LineCounts count(byte[] content, Charset charset) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+    buffer.put(content);
+    buffer.flip();
+    return MSBuildLexer.countLines(buffer, charset);
+  }
+
+  private static byte[] withBom(String document, Charset charset, int... bom) {
+    byte[] content = document.getBytes(charset);
+    byte[] result = new byte[bom.length + content.length];
+    for (int i = 0; i < bom.length; i++) {
+      result[i] = (byte) bom[i];
+    }
+    System.arraycopy(content, 0, result, bom.length, content.length);
+    return result;
+  }
+
+  private static void assertCounts(LineCounts expected, LineCounts actual) {
+    assertEquals(expected.getLines(), actual.getLines());
+    assertEquals(expected.getBlankLines(), actual.getBlankLines());
+    assertEquals(expected.getCommentLines(), actual.getCommentLines());
+  }
+
+  private static String[] split(String document) {
+    return document.isEmpty() ? new String[0] : document.split("\r\n|\r|\n", -1);
+  }
+
+  private static int linesOf(String document) {
+    String[] lines = split(document);
+    return lines.length > 0 && lines[lines.length - 1].isEmpty() ? lines.length - 1 : lines.length;
+  }
+
+  private static int blankLinesOf(String document) {
+    String[] lines = split(document);
+    int blank = 0;
+    int count = linesOf(document);
+    for (int i = 0; i < count; i++) {
+      if (lines[i].isEmpty()) {
+        blank++;
+      }
+    }
+    return blank;
+  }
+
+  private static int saxCommentLines(String document) {
+    InputFile file = new TestInputFileBuilder("moduleKey", "test.props").build();
+    return new MSBuildLineCountParser().countLinesOfComment(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)), file);
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.parsers;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import javax.xml.parsers.SAXParser;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.apache.xerces.impl.Constants;
+import org.junit.Test;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+
+public class SaxParserProviderTest {
+
+  private static final String CONTINUE_AFTER_FATAL_ERROR = Constants.XERCES_FEATURE_PREFIX + "continue-after-fatal-error";
+
+  @Test
+  public void shouldReuseParserOfTheSameThread() throws Exception {
+    SAXParser parser = SaxParserProvider.DEFAULT.acquire();
+    SaxParserProvider.DEFAULT.release(parser);
+    long created = SaxParserProvider.DEFAULT.getCreatedCount();
+
+    SAXParser reused = SaxParserProvider.DEFAULT.acquire();
+    SAXParser other = SaxParserProvider.DEFAULT.acquire();
+    SaxParserProvider.DEFAULT.release(other);
+    SaxParserProvider.DEFAULT.release(reused);
+
+    assertSame(parser, reused);
+    assertEquals(created + 1, SaxParserProvider.DEFAULT.getCreatedCount());
+    assertTrue(SaxParserProvider.DEFAULT.getHitRate() > 0);
+  }
+
+  @Test
+  public void shouldRestoreFeaturesOnRelease() throws Exception {
+    SAXParser parser = SaxParserProvider.DEFAULT.acquire();
+    parser.getXMLReader().setFeature(CONTINUE_AFTER_FATAL_ERROR, true);
+    SaxParserProvider.DEFAULT.release(parser);
+
+    SAXParser reused = SaxParserProvider.DEFAULT.acquire();
+    try {
+      assertFalse(reused.getXMLReader().getFeature(CONTINUE_AFTER_FATAL_ERROR));
+    } finally {
+      SaxParserProvider.DEFAULT.release(reused);
+    }
+  }
+
+  @Test
+  public void shouldCountCommentsWithReusedParsers() {
+    InputFile file = new TestInputFileBuilder("moduleKey", "test.props").build();
+    String document = "<Project>\n  <!-- a\n b -->\n  <A/>\n</Project>\n";
+    MSBuildLineCountParser parser = new MSBuildLineCountParser();
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals(2, parser.countLinesOfComment(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)), file));
+    }
+  }
+}
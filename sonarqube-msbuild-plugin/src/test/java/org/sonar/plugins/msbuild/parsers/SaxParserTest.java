@@ -0,0 +1,172 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.parsers;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+public class SaxParserTest {
+
+  private static final int THREADS = 16;
+  private static final int DOCUMENTS_PER_THREAD = 250;
+
+  @Test
+  public void shouldHonourNamespaceHandlingOfEachCall() {
+    Document aware = parse(document(3), true);
+    Document unaware = parse(document(3), false);
+
+    assertEquals("Project", aware.getDocumentElement().getLocalName());
+    assertEquals("urn:msbuild", aware.getDocumentElement().getNamespaceURI());
+    assertEquals("m:Project", unaware.getDocumentElement().getNodeName());
+    assertNull(unaware.getDocumentElement().getNamespaceURI());
+  }
+
+  @Test
+  public void shouldParseDocumentsConcurrently() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        boolean startAware = t % 2 == 0;
+        results.add(executor.submit(parseMany(start, startAware)));
+      }
+      start.countDown();
+
+      for (Future<Integer> result : results) {
+        assertEquals(Integer.valueOf(DOCUMENTS_PER_THREAD), result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void shouldRecordSameLinesAsDocument() throws Exception {
+    byte[] content = Files.readAllBytes(new File("src/test/resources/org/sonar/plugins/msbuild/SampleProject/configuration.props").toPath());
+    Document document = new SaxParser().parseDocument(new ByteArrayInputStream(content), false);
+    CompactDocument compact = new SaxParser().parseCompactDocument(new ByteArrayInputStream(content), false, false);
+
+    NodeList elements = document.getElementsByTagName("*");
+    int compared = 0;
+    for (int node = 0; node < compact.size(); node++) {
+      if (compact.kind(node) == CompactDocument.ELEMENT) {
+        Node element = elements.item(compared++);
+        assertEquals(element.getNodeName(), compact.name(node));
+        assertEquals(SaxParser.getLineNumber(element), SaxParser.getLineNumber(compact, node));
+      }
+    }
+    assertEquals(elements.getLength(), compared);
+    assertEquals("'$(GallioPath)'==''", compact.attribute(compact.elements("GallioPath")[0], "Condition"));
+  }
+
+  @Test
+  public void shouldDropWhitespaceOnlyText() {
+    String content = "<Project>\n  <!-- c -->\n  <A>x\n y</A>\n</Project>\n";
+
+    CompactDocument compact = parseCompact(content, false);
+    CompactDocument withWhitespace = parseCompact(content, true);
+
+    int root = compact.root();
+    int comment = compact.firstChild(root);
+    int element = compact.nextSibling(comment);
+    assertEquals(CompactDocument.COMMENT, compact.kind(comment));
+    assertEquals(2, compact.line(comment));
+    assertEquals("A", compact.name(element));
+    assertEquals(CompactDocument.NONE, compact.nextSibling(element));
+    assertEquals("x\n y", compact.value(compact.firstChild(element)));
+    assertEquals(4, compact.size());
+    assertEquals(7, withWhitespace.size());
+  }
+
+  private static Callable<Integer> parseMany(CountDownLatch start, boolean startAware) {
+    return () -> {
+      start.await();
+      int parsed = 0;
+      for (int i = 0; i < DOCUMENTS_PER_THREAD; i++) {
+        boolean namespaceAware = startAware ^ (i % 3 == 0);
+        int items = i % 7;
+        Document document = parse(document(items), namespaceAware);
+
+        Element root = document.getDocumentElement();
+        if (namespaceAware) {
+          assertEquals("Project", root.getLocalName());
+          assertEquals("urn:msbuild", root.getNamespaceURI());
+        } else {
+          assertEquals("m:Project", root.getNodeName());
+          assertNull(root.getNamespaceURI());
+        }
+        String itemName = namespaceAware ? "Item" : "m:Item";
+        assertEquals(items, document.getElementsByTagName(itemName).getLength());
+        if (items > 0) {
+          assertEquals(items + 2, SaxParser.getLineNumber(document.getElementsByTagName(itemName).item(items - 1)));
+        }
+        parsed++;
+      }
+      return parsed;
+    };
+  }
+
+  private static String document(int items) {
+    StringBuilder document = new StringBuilder("<m:Project xmlns:m=\"urn:msbuild\">\n  <!-- items -->\n");
+    for (int i = 0; i < items; i++) {
+      document.append("  <m:Item Include=\"").append(i).append("\" />\n");
+    }
+    return document.append("</m:Project>\n").toString();
+  }
+
+  private static CompactDocument parseCompact(String document, boolean keepWhitespace) {
+    return new SaxParser().parseCompactDocument(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)), false, keepWhitespace);
+  }
+
+  private static Document parse(String document, boolean namespaceAware) {
+    return new SaxParser().parseDocument(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)), namespaceAware);
+  }
+}
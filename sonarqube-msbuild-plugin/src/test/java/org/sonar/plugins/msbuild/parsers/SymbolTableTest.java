@@ -0,0 +1,97 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.parsers;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class SymbolTableTest {
+
+  @Test
+  public void shouldGiveSameIdsFromAllThreads() throws Exception {
+    SymbolTable symbols = new SymbolTable();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<int[]>> results = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        results.add(executor.submit(() -> {
+          int[] ids = new int[1000];
+          for (int i = 0; i < ids.length; i++) {
+            ids[i] = symbols.id("Name" + i);
+          }
+          return ids;
+        }));
+      }
+      int[] first = results.get(0).get();
+      for (Future<int[]> result : results) {
+        assertArrayEquals(first, result.get());
+      }
+      for (int i = 0; i < first.length; i++) {
+        assertEquals("Name" + i, symbols.name(first[i]));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1000, symbols.size());
+    assertEquals(8000, symbols.getLookupCount());
+    assertEquals(0.875, symbols.getHitRate(), 0.0001);
+  }
+
+  @Test
+  public void shouldShareNameIdsBetweenDocuments() {
+    CompactDocument first = parse("<Project><ItemGroup Condition=\"a\"/></Project>");
+    CompactDocument second = parse("<Project>\n  <ItemGroup Condition=\"b\"/>\n</Project>");
+
+    int firstGroup = first.elements("ItemGroup")[0];
+    int secondGroup = second.elements("ItemGroup")[0];
+    assertEquals(first.nameId(firstGroup), second.nameId(secondGroup));
+    assertEquals(SymbolTable.shared().find("ItemGroup"), first.nameId(firstGroup));
+    assertEquals("b", second.attribute(secondGroup, "Condition"));
+    assertTrue(SymbolTable.shared().getHitRate() > 0);
+  }
+
+  private static CompactDocument parse(String content) {
+    return new SaxParser().parseCompactDocument(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), false, false);
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.projectchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import static org.junit.Assert.assertEquals;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.batch.sensor.internal.SensorContextTester;
+import org.sonar.plugins.msbuild.MSBuildProjectModelCache;
+import org.sonar.plugins.msbuild.parsers.SolutionFile;
+
+public class CheckerBaselineTest {
+
+  private static final List<SolutionFile> NO_SOLUTIONS = Collections.emptyList();
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldSelectChangedFilesAndTheFilesReferencingThem() throws IOException {
+    SensorContextTester context = SensorContextTester.create(temp.getRoot());
+    InputFile common = add(context, "src/Common.props", "<Project />", InputFile.Status.SAME);
+    InputFile app = add(context, "src/App/App.csproj", "<Project><Import Project=\"..\\common.props\" /></Project>", InputFile.Status.SAME);
+    InputFile lib = add(context, "src/Lib/Lib.csproj", "<Project><Import Project=\"$(Dir)\\Common.props\" /></Project>", InputFile.Status.SAME);
+    InputFile tool = add(context, "src/Tool/Tool.csproj",
+      "<Project><ItemGroup><ProjectReference Include=\"..\\App\\App.csproj\" /></ItemGroup></Project>", InputFile.Status.SAME);
+    InputFile added = add(context, "src/New/New.csproj", "<Project />", InputFile.Status.ADDED);
+
+    Map<InputFile, String> hashes = new LinkedHashMap<>();
+    Map<String, String> baselineHashes = new HashMap<>();
+    for (InputFile file : Arrays.asList(common, app, lib, tool, added)) {
+      hashes.put(file, "1");
+      baselineHashes.put(file.uri().toString(), "1");
+    }
+    baselineHashes.put(common.uri().toString(), "0");
+
+    List<InputFile> selected = CheckerBaseline.select(hashes, baselineHashes, new MSBuildProjectModelCache(), NO_SOLUTIONS);
+
+    // Lib imports through an unknown property, it may import any file
+    assertEquals(Arrays.asList(common, app, lib, tool, added), selected);
+  }
+
+  @Test
+  public void shouldSelectTheFilesImportingAChangedFileThroughKnownProperties() throws IOException {
+    SensorContextTester context = SensorContextTester.create(temp.getRoot());
+    InputFile shared = add(context, "src/Shared.props", "<Project />", InputFile.Status.SAME);
+    InputFile app = add(context, "src/App/App.csproj",
+      "<Project><Import Project=\"$(MSBuildThisFileDirectory)..\\Shared.props\" /></Project>", InputFile.Status.SAME);
+    InputFile lib = add(context, "src/Lib/Lib.csproj",
+      "<Project><Import Project=\"$(SolutionDir)Shared.props\" /></Project>", InputFile.Status.SAME);
+    InputFile tool = add(context, "src/Tool/Tool.csproj",
+      "<Project><Import Project=\"$(MSBuildProjectDirectory)\\Tool.props\" /></Project>", InputFile.Status.SAME);
+    InputFile util = add(context, "src/Util/Util.csproj",
+      "<Project><Import Project=\"$(SolutionDir)Util.props\" /></Project>", InputFile.Status.SAME);
+    File solution = new File(temp.getRoot(), "src/All.sln");
+    Files.write(solution.toPath(), ("Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Lib\", \"Lib\\Lib.csproj\", "
+      + "\"{00000000-0000-0000-0000-000000000001}\"\r\nEndProject\r\n"
+      + "Project(\"{FAE04EC0-301F-11D3-BF4B-00C04F79EFBC}\") = \"Util\", \"Util\\Util.csproj\", "
+      + "\"{00000000-0000-0000-0000-000000000002}\"\r\nEndProject\r\n").getBytes(StandardCharsets.UTF_8));
+
+    Map<InputFile, String> hashes = new LinkedHashMap<>();
+    Map<String, String> baselineHashes = new HashMap<>();
+    for (InputFile file : Arrays.asList(shared, app, lib, tool, util)) {
+      hashes.put(file, "1");
+      baselineHashes.put(file.uri().toString(), "1");
+    }
+    baselineHashes.put(shared.uri().toString(), "0");
+
+    List<InputFile> selected = CheckerBaseline.select(hashes, baselineHashes, new MSBuildProjectModelCache(),
+      Arrays.asList(SolutionFile.read(solution)));
+
+    assertEquals(Arrays.asList(shared, app, lib), selected);
+  }
+
+  @Test
+  public void shouldSelectTheFilesWithUnresolvedImports() throws IOException {
+    SensorContextTester context = SensorContextTester.create(temp.getRoot());
+    InputFile common = add(context, "src/Common.props",
+      "<Project><Import Project=\"$(MSBuildProjectDirectory)\\Local.props\" /></Project>", InputFile.Status.SAME);
+    InputFile app = add(context, "src/App/App.csproj",
+      "<Project><Import Project=\"..\\Common.props\" /></Project>", InputFile.Status.SAME);
+    InputFile lib = add(context, "src/Lib/Lib.csproj",
+      "<Project><Import Project=\"$(SolutionDir)Common.props\" /></Project>", InputFile.Status.SAME);
+    InputFile tool = add(context, "src/Tool/Tool.csproj",
+      "<Project><Import Project=\"..\\*.targets\" /></Project>", InputFile.Status.SAME);
+    InputFile other = add(context, "src/Other/Other.csproj", "<Project />", InputFile.Status.SAME);
+
+    Map<InputFile, String> hashes = new LinkedHashMap<>();
+    Map<String, String> baselineHashes = new HashMap<>();
+    for (InputFile file : Arrays.asList(common, app, lib, tool, other)) {
+      hashes.put(file, "1");
+      baselineHashes.put(file.uri().toString(), "1");
+    }
+
+    List<InputFile> selected = CheckerBaseline.select(hashes, baselineHashes, new MSBuildProjectModelCache(), NO_SOLUTIONS);
+
+    // the directory of the project importing Common.props is not known, nor is the solution of Lib
+    assertEquals(Arrays.asList(common, app, lib, tool), selected);
+  }
+
+  @Test
+  public void shouldSelectTheFilesReferencingDeletedFiles() throws IOException {
+    SensorContextTester context = SensorContextTester.create(temp.getRoot());
+    InputFile app = add(context, "src/App/App.csproj", "<Project><Import Project=\"..\\Common.props\" /></Project>", InputFile.Status.SAME);
+    InputFile lib = add(context, "src/Lib/Lib.csproj", "<Project />", InputFile.Status.SAME);
+
+    Map<InputFile, String> hashes = new LinkedHashMap<>();
+    Map<String, String> baselineHashes = new HashMap<>();
+    for (InputFile file : Arrays.asList(app, lib)) {
+      hashes.put(file, "1");
+      baselineHashes.put(file.uri().toString(), "1");
+    }
+    baselineHashes.put(new File(temp.getRoot(), "src/Common.props").toURI().toString(), "1");
+    baselineHashes.put("not a uri", "1");
+
+    List<InputFile> selected = CheckerBaseline.select(hashes, baselineHashes, new MSBuildProjectModelCache(), NO_SOLUTIONS);
+
+    assertEquals(Arrays.asList(app), selected);
+  }
+
+  @Test
+  public void shouldMergeFreshResultsWithCachedResultsOfTheOtherFiles() throws IOException {
+    SensorContextTester context = SensorContextTester.create(temp.getRoot());
+    InputFile app = add(context, "src/App/App.csproj", "<Project />", InputFile.Status.CHANGED);
+    InputFile lib = add(context, "src/Lib/Lib.csproj", "<Project />", InputFile.Status.SAME);
+
+    File fresh = output("fresh.xml", path(app) + ":EmptyTagsRule");
+    File baseline = output("baseline.xml", path(app) + ":MultiplePrivateSet",
+      path(lib) + ":EmptyTagsRule", new File(temp.getRoot(), "Gone.csproj").getAbsolutePath() + ":EmptyTagsRule");
+    File merged = new File(temp.getRoot(), "merged.xml");
+
+    CheckerBaseline.merge(fresh, baseline, new HashSet<>(Arrays.asList(app)), new InputFileIndex(context.fileSystem()), merged);
+
+    String xml = new String(Files.readAllBytes(merged.toPath()), StandardCharsets.UTF_8);
+    List<String> results = new ArrayList<>();
+    Matcher matcher = Pattern.compile("<Path>([^<]*)</Path><Issues><Issue><Id>([^<]*)</Id>").matcher(xml);
+    while (matcher.find()) {
+      results.add(matcher.group(1) + ":" + matcher.group(2));
+    }
+    assertEquals(Arrays.asList(path(app) + ":EmptyTagsRule", path(lib) + ":EmptyTagsRule"), results);
+  }
+
+  private static String path(InputFile file) {
+    return Paths.get(file.uri()).toString();
+  }
+
+  private File output(String name, String... results) throws IOException {
+    StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<AnalysisOutput>\n  <Files>\n");
+    for (String result : results) {
+      int separator = result.lastIndexOf(':');
+      xml.append("<File><Path>").append(result, 0, separator).append("</Path><Issues><Issue><Id>")
+        .append(result.substring(separator + 1)).append("</Id><Line>1</Line><Message>m</Message></Issue></Issues></File>\n");
+    }
+    xml.append("  </Files>\n</AnalysisOutput>\n");
+    File file = new File(temp.getRoot(), name);
+    Files.write(file.toPath(), xml.toString().getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private InputFile add(SensorContextTester context, String relativePath, String content, InputFile.Status status) throws IOException {
+    File file = new File(temp.getRoot(), relativePath);
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    InputFile inputFile = new TestInputFileBuilder("moduleKey", relativePath)
+      .setModuleBaseDir(context.fileSystem().baseDirPath())
+      .setCharset(StandardCharsets.UTF_8)
+      .setStatus(status)
+      .build();
+    context.fileSystem().add(inputFile);
+    return inputFile;
+  }
+}
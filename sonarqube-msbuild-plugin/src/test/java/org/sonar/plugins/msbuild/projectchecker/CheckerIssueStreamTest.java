@@ -0,0 +1,110 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.projectchecker;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class CheckerIssueStreamTest {
+
+  @Test
+  public void shouldDecodeIssueRecords() {
+    CheckerIssueStream.Record record = CheckerIssueStream.decode(
+      "#issue\tC:\\\\src\\\\App.vcxproj\tMultiplePrivateSet\t12\tfirst\\tsecond\\r\\nthird \\\\ end");
+
+    assertEquals("C:\\src\\App.vcxproj", record.getPath());
+    assertEquals("MultiplePrivateSet", record.getRuleKey());
+    assertEquals(12, record.getLine());
+    assertEquals("first\tsecond\r\nthird \\ end", record.getMessage());
+
+    assertNull(CheckerIssueStream.decode("#issue\tApp.vcxproj\tMultiplePrivateSet\t12"));
+    assertNull(CheckerIssueStream.decode("#issue\tApp.vcxproj\tMultiplePrivateSet\tline\tmessage"));
+  }
+
+  @Test
+  public void shouldQueueIssuesUntilTheEndOfTheStream() {
+    BlockingQueue<CheckerIssueStream.Record> queue = new ArrayBlockingQueue<>(10);
+    CheckerIssueStream stream = new CheckerIssueStream(queue);
+
+    stream.consumeLine("Resource App.vcxproj has 1 issues");
+    stream.consumeLine("#issue\tApp.vcxproj\tEmptyTags\t1\tMake sure all empty xml nodes in this file are removed.");
+    stream.consumeLine("#issue\tinvalid");
+    assertFalse(stream.isEnded());
+    stream.consumeLine("#issues-end\t1");
+
+    assertTrue(stream.isEnded());
+    assertTrue(stream.isComplete());
+    assertEquals(1, queue.size());
+    assertEquals("EmptyTags", queue.peek().getRuleKey());
+
+    stream.close();
+    stream.consumeLine("#issue\tApp.vcxproj\tEmptyTags\t2\tdropped once closed");
+    assertEquals(1, queue.size());
+  }
+
+  @Test
+  public void shouldFindRecordsAfterOutputWithoutLineBreak() {
+    BlockingQueue<CheckerIssueStream.Record> queue = new ArrayBlockingQueue<>(10);
+    CheckerIssueStream stream = new CheckerIssueStream(queue);
+
+    stream.consumeLine("Checks [EmptyTags]#issue\tApp.vcxproj\tEmptyTags\t1\tfirst");
+    stream.consumeLine("Lint Execution Failed#issue\tLib.vcxproj\tEmptyTags\t2\tsecond");
+    stream.consumeLine("Resource Lib.vcxproj has 1 issues#issues-end\t2");
+
+    assertTrue(stream.isComplete());
+    assertEquals(2, queue.size());
+    assertEquals("App.vcxproj", queue.poll().getPath());
+    assertEquals("second", queue.poll().getMessage());
+  }
+
+  @Test
+  public void shouldBeIncompleteWhenIssuesAreMissing() {
+    BlockingQueue<CheckerIssueStream.Record> queue = new ArrayBlockingQueue<>(10);
+    CheckerIssueStream stream = new CheckerIssueStream(queue);
+
+    stream.consumeLine("#issue\tApp.vcxproj\tEmptyTags\t1\tfirst");
+    stream.consumeLine("#issue\tLib.vcxproj\tEmptyTags");
+    stream.consumeLine("#issues-end\t2");
+
+    assertTrue(stream.isEnded());
+    assertFalse(stream.isComplete());
+    assertEquals(1, stream.getReceived());
+    assertEquals(2, stream.getExpected());
+  }
+}
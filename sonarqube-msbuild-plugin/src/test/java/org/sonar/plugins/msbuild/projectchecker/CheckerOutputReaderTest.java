@@ -0,0 +1,105 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.projectchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CheckerOutputReaderTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldReadChunksInDocumentOrder() throws IOException {
+    // two Files elements, as merged from the outputs of two shards
+    StringBuilder xml = new StringBuilder("\uFEFF<?xml version=\"1.0\" encoding=\"utf-8\"?>\r\n<AnalysisOutput>\r\n");
+    for (int shard = 0; shard < 2; shard++) {
+      xml.append("  <Files>\r\n");
+      for (int file = 0; file < 50; file++) {
+        xml.append("    <File>\r\n      <Path>C:\\src\\P").append(shard).append('-').append(file).append(".vcxproj</Path>\r\n");
+        if (file % 10 == 0) {
+          xml.append("      <Issues />\r\n");
+        } else {
+          xml.append("      <Issues>\r\n");
+          for (int issue = 0; issue < file % 3 + 1; issue++) {
+            xml.append("        <Issue><Id>EmptyTags</Id><Line>").append(issue + 1)
+              .append("</Line><Message>&lt;File&gt; &lt;/File&gt; \u00e9</Message></Issue>\r\n");
+          }
+          xml.append("      </Issues>\r\n");
+        }
+        xml.append("    </File>\r\n");
+      }
+      xml.append("  </Files>\r\n");
+    }
+    xml.append("</AnalysisOutput>");
+    File output = temp.newFile("msbuild-analysis-output.xml");
+    Files.write(output.toPath(), xml.toString().getBytes(StandardCharsets.UTF_8));
+
+    List<Long> boundaries = CheckerOutputReader.boundaries(output, 8);
+    assertEquals(8, boundaries.size());
+    byte[] bytes = Files.readAllBytes(output.toPath());
+    for (long boundary : boundaries.subList(1, boundaries.size())) {
+      assertEquals("<File>", new String(bytes, (int) boundary, 6, StandardCharsets.UTF_8));
+    }
+
+    String sequential = read(output, 1);
+    assertEquals(sequential, read(output, 8));
+    assertEquals(sequential, read(output, 100));
+    assertTrue(sequential.startsWith("C:\\src\\P0-0.vcxproj[]\n"
+      + "C:\\src\\P0-1.vcxproj[EmptyTags:1:<File> </File> \u00e9, EmptyTags:2:<File> </File> \u00e9]\n"));
+    assertEquals(100, sequential.split("\n").length);
+  }
+
+  private static String read(File output, int chunks) throws IOException {
+    List<String> files = new ArrayList<>();
+    CheckerOutputReader.read(output, chunks, 4, file -> {
+      List<String> issues = new ArrayList<>();
+      for (CheckerIssueStream.Record issue : file.getIssues()) {
+        issues.add(issue.getRuleKey() + ":" + issue.getLine() + ":" + issue.getMessage());
+      }
+      files.add(file.getPath() + issues);
+    });
+    return String.join("\n", files) + "\n";
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.projectchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.plugins.msbuild.MSBuildPlugin;
+
+public class CheckerResultCacheTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldRestoreTheResultsOfTheLastRun() throws IOException {
+    MapSettings settings = new MapSettings();
+    settings.setProperty(MSBuildPlugin.CACHE_PATH_KEY, temp.newFolder("cache").getAbsolutePath());
+    CheckerResultCache cache = new CheckerResultCache(settings.asConfig(), "project");
+    File output = temp.newFile("msbuild-analysis-output.xml");
+
+    Files.write(output.toPath(), "<AnalysisOutput>1</AnalysisOutput>".getBytes(StandardCharsets.UTF_8));
+    cache.store("rules", "first", output, Collections.singletonMap("file:///a.csproj", "01"));
+    Files.write(output.toPath(), "<AnalysisOutput>2</AnalysisOutput>".getBytes(StandardCharsets.UTF_8));
+    cache.store("rules", "second", output, Collections.singletonMap("file:///a.csproj", "02"));
+    Files.delete(output.toPath());
+
+    assertFalse(cache.restore("rules", "first", output));
+    assertFalse(cache.restore("other", "second", output));
+    assertTrue(cache.restore("rules", "second", output));
+    assertEquals("<AnalysisOutput>2</AnalysisOutput>", new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8));
+    assertEquals(2, cache.getDirectory().list().length);
+
+    CheckerResultCache.Baseline baseline = cache.baseline("rules");
+    assertEquals("02", baseline.getHashes().get("file:///a.csproj"));
+    assertNull(cache.baseline("other"));
+  }
+
+  @Test
+  public void shouldChangeFingerprintWithAnyInput() {
+    String fingerprint = new CheckerResultCache.Fingerprint().add("Rule", "EmptyTagsRule").toString();
+
+    assertEquals(fingerprint, new CheckerResultCache.Fingerprint().add("Rule", "EmptyTagsRule").toString());
+    assertNotEquals(fingerprint, new CheckerResultCache.Fingerprint().add("Rule", "EmptyTagsRul").toString());
+    assertNotEquals(new CheckerResultCache.Fingerprint().add("ab", "c").toString(),
+      new CheckerResultCache.Fingerprint().add("a", "bc").toString());
+  }
+}
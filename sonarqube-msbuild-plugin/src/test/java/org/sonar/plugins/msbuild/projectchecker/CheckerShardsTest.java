@@ -0,0 +1,161 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.projectchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.plugins.msbuild.parsers.CompactDocument;
+import org.sonar.plugins.msbuild.parsers.SaxParser;
+import org.sonar.plugins.msbuild.parsers.SolutionFile;
+
+public class CheckerShardsTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldSplitByDirectoryIntoBalancedShards() {
+    List<InputFile> files = new ArrayList<>();
+    for (int project = 0; project < 12; project++) {
+      files.add(file("src/P" + project + "/P" + project + ".vcxproj", 100 + project));
+      files.add(file("src/P" + project + "/P" + project + ".props", 10));
+    }
+
+    List<List<InputFile>> shards = CheckerShards.split(files, 4);
+
+    assertEquals(4, shards.size());
+    int total = 0;
+    for (List<InputFile> shard : shards) {
+      Set<String> projects = new HashSet<>();
+      int lines = 0;
+      for (InputFile file : shard) {
+        projects.add(temp.getRoot().toURI().relativize(file.uri()).getPath().split("/")[1]);
+        lines += file.lines();
+      }
+      assertEquals(2 * projects.size(), shard.size());
+      assertTrue(String.valueOf(lines), lines >= 3 * 110 && lines <= 3 * 121);
+      total += shard.size();
+    }
+    assertEquals(files.size(), total);
+  }
+
+  @Test
+  public void shouldNotCreateMoreShardsThanDirectories() {
+    List<InputFile> files = Arrays.asList(file("a/A.vcxproj", 1), file("a/A.props", 1), file("b/B.vcxproj", 1));
+
+    assertEquals(2, CheckerShards.split(files, 8).size());
+    assertEquals(0, CheckerShards.split(new ArrayList<>(), 8).size());
+  }
+
+  @Test
+  public void shouldKeepProjectsOfASolutionTogether() throws IOException {
+    List<InputFile> files = new ArrayList<>();
+    StringBuilder solution = new StringBuilder();
+    for (int project = 0; project < 4; project++) {
+      String path = "src/P" + project + "/P" + project + ".vcxproj";
+      files.add(file(path, 100));
+      files.add(file("src/P" + project + "/P" + project + ".props", 10));
+      output(path, "<Project/>");
+      if (project < 2) {
+        solution.append("Project(\"{8BC9CEB8-8B4A-11D0-8D11-00A0C91BC942}\") = \"P").append(project)
+          .append("\", \"P").append(project).append("\\P").append(project).append(".vcxproj\", \"{0000000")
+          .append(project).append("-0000-0000-0000-000000000000}\"\r\nEndProject\r\n");
+      }
+    }
+    SolutionFile first = SolutionFile.read(output("src/First.sln", solution.toString()));
+
+    List<List<InputFile>> shards = CheckerShards.split(files, 4, Arrays.asList(first));
+
+    assertEquals(3, shards.size());
+    Set<String> firstShard = new HashSet<>();
+    for (InputFile file : shards.get(0)) {
+      firstShard.add(file.filename());
+    }
+    assertEquals(new HashSet<>(Arrays.asList("P0.vcxproj", "P0.props", "P1.vcxproj", "P1.props")), firstShard);
+  }
+
+  @Test
+  public void shouldNotMergeWhenEveryOutputIsMissing() throws IOException {
+    File merged = output("merged.xml", "<AnalysisOutput/>");
+
+    assertFalse(CheckerShards.merge(Arrays.asList(new File(temp.getRoot(), "missing.xml")), merged));
+    assertFalse(merged.exists());
+  }
+
+  @Test
+  public void shouldMergeOutputs() throws IOException {
+    File first = output("first.xml", "<AnalysisOutput><File><Path>a</Path><Issues/></File></AnalysisOutput>");
+    File second = output("second.xml", "<?xml version=\"1.0\"?>\n<AnalysisOutput>\n  <File><Path>b&amp;c</Path></File>\n</AnalysisOutput>");
+    File merged = new File(temp.getRoot(), "merged.xml");
+
+    assertTrue(CheckerShards.merge(Arrays.asList(first, new File(temp.getRoot(), "missing.xml"), second), merged));
+
+    CompactDocument document;
+    try (InputStream input = Files.newInputStream(merged.toPath())) {
+      document = new SaxParser().parseCompactDocument(input, false, false);
+    }
+    assertEquals("AnalysisOutput", document.name(document.root()));
+    int[] paths = document.elements("Path");
+    assertEquals(2, paths.length);
+    assertEquals("a", document.value(document.firstChild(paths[0])));
+    assertEquals("b&c", document.value(document.firstChild(paths[1])));
+  }
+
+  private File output(String name, String content) throws IOException {
+    File file = new File(temp.getRoot(), name);
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private InputFile file(String relativePath, int lines) {
+    return new TestInputFileBuilder("moduleKey", relativePath).setModuleBaseDir(temp.getRoot().toPath()).setLines(lines).build();
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.projectchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.batch.sensor.internal.SensorContextTester;
+
+public class InputFileIndexTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldResolveReportedPaths() throws IOException {
+    File baseDir = temp.getRoot();
+    SensorContextTester context = SensorContextTester.create(baseDir);
+    InputFile project = add(context, "src/App/App.vcxproj");
+    InputFile props = add(context, "src/Common.props");
+    InputFile lower = add(context, "src/case.props");
+    add(context, "src/CASE.props");
+
+    InputFileIndex index = new InputFileIndex(context.fileSystem());
+
+    String absolute = path(project);
+    assertSame(project, index.find(absolute));
+    assertSame(project, index.find(absolute.replace('/', '\\')));
+    assertSame(project, index.find(absolute.toUpperCase()));
+    assertSame(project, index.find(project.uri().toString()));
+    assertSame(props, index.find(path(props).replace("/src/", "/src//")));
+    assertSame(lower, index.find(path(lower)));
+    assertNull(index.find(path(lower).replace("case", "Case")));
+    assertNull(index.find(new File(baseDir, "other.props").getAbsolutePath()));
+    assertEquals(2, index.getUnknownPaths());
+  }
+
+  private static String path(InputFile file) {
+    return Paths.get(file.uri()).toString();
+  }
+
+  private static InputFile add(SensorContextTester context, String relativePath) {
+    InputFile file = new TestInputFileBuilder("moduleKey", relativePath).setModuleBaseDir(context.fileSystem().baseDirPath()).build();
+    context.fileSystem().add(file);
+    return file;
+  }
+}
@@ -0,0 +1,287 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.projectchecker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.TestInputFileBuilder;
+import org.sonar.api.batch.rule.internal.ActiveRulesBuilder;
+import org.sonar.api.batch.sensor.internal.SensorContextTester;
+import org.sonar.api.batch.sensor.issue.Issue;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.utils.command.Command;
+import org.sonar.api.utils.command.StreamConsumer;
+import org.sonar.plugins.msbuild.MSBuildLanguage;
+import org.sonar.plugins.msbuild.MSBuildPlugin;
+import org.sonar.plugins.msbuild.MSBuildProjectModelCache;
+import org.sonar.plugins.msbuild.MSBuildRunnerExtractor;
+import org.sonar.plugins.msbuild.MSBuildToolExecutor;
+
+public class MSBuildProjectCheckerExtensionSensorTest {
+
+  private static final String RULE = "IncludeFileNotFound";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private File baseDir;
+  private File workDir;
+  private MapSettings settings;
+  private StandInChecker checker;
+
+  @Before
+  public void setup() throws IOException {
+    baseDir = temp.newFolder("project");
+    workDir = temp.newFolder("work");
+    write("A.csproj", "A");
+    write("B.csproj", "B");
+
+    settings = new MapSettings();
+    settings.setProperty(MSBuildProjectCheckerExtensionSensor.CHECKER_ENABLED, "true");
+    settings.setProperty(MSBuildProjectCheckerExtensionSensor.PROJECT_CHECKER_PATH, "ProjectCheckerRunner.exe");
+    settings.setProperty(MSBuildProjectCheckerExtensionSensor.SHARDS_KEY, "1");
+    settings.setProperty(MSBuildPlugin.CACHE_PATH_KEY, temp.newFolder("cache").getAbsolutePath());
+    settings.setProperty("sonar.projectKey", "project");
+    checker = new StandInChecker(settings);
+  }
+
+  @Test
+  public void shouldReuseTheResultsOfUnchangedInputs() throws IOException {
+    assertEquals("[A.csproj:Missing A, B.csproj:Missing B]", analyze().toString());
+    assertEquals(1, checker.runs.size());
+
+    assertEquals("[A.csproj:Missing A, B.csproj:Missing B]", analyze().toString());
+    assertEquals(1, checker.runs.size());
+
+    write("B.csproj", "C");
+    assertEquals("[A.csproj:Missing A, B.csproj:Missing C]", analyze().toString());
+    assertEquals(2, checker.runs.size());
+  }
+
+  @Test
+  public void shouldOnlyCheckChangedFilesIncrementally() throws IOException {
+    settings.setProperty(MSBuildProjectCheckerExtensionSensor.INCREMENTAL_KEY, "true");
+    analyze();
+    write("B.csproj", "C");
+
+    assertEquals("[A.csproj:Missing A, B.csproj:Missing C]", analyze().toString());
+    assertEquals("[B.csproj]", checker.runs.get(1).toString());
+  }
+
+  @Test
+  public void shouldImportTheOutputOfFilesNotStreamed() throws IOException {
+    // the stream stops after the issue of the first file checked, the checker still writes its output
+    checker.streamedRecords = 1;
+
+    assertEquals("[A.csproj:Missing A, B.csproj:Missing B]", analyze().toString());
+  }
+
+  @Test
+  public void shouldStreamIssuesAfterOutputWithoutLineBreak() throws IOException {
+    checker.prefix = "Checks [IncludeFileNotFound]";
+
+    assertEquals("[A.csproj:Missing A, B.csproj:Missing B]", analyze().toString());
+  }
+
+  @Test
+  public void shouldImportTheIssuesNotStreamedOnceWhenTheCountDiffers() throws IOException {
+    // the end of the stream counts the issue of the first file checked, its record is not received
+    checker.garbled = 0;
+
+    assertEquals("[A.csproj:Missing A, B.csproj:Missing B]", analyze().toString());
+  }
+
+  @Test
+  public void shouldKeepTheStreamedIssuesOfAFailedShard() throws IOException {
+    checker.streamedRecords = 1;
+    checker.crash = true;
+
+    // the issue of the file checked first
+    assertEquals(1, analyze().size());
+
+    // the incomplete results are not cached
+    checker.crash = false;
+    analyze();
+    assertEquals(2, checker.runs.size());
+  }
+
+  @Test
+  public void shouldReadTheAssemblyLookupFromTheCheckerDirectory() throws IOException {
+    File tools = temp.newFolder("tools");
+    settings.setProperty(MSBuildProjectCheckerExtensionSensor.PROJECT_CHECKER_PATH,
+      new File(tools, "ProjectCheckerRunner.exe").getAbsolutePath());
+    Files.write(new File(tools, StructuralChecks.ASSEMBLY_LOOKUP).toPath(),
+      "Other:1.0\nLibrary:2.0\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(new File(baseDir, "A.csproj").toPath(), ("<Project xmlns=\"http://schemas.microsoft.com/developer/msbuild/2003\">\n"
+      + "  <Import Project=\"A.props\" />\n"
+      + "  <ItemGroup>\n"
+      + "    <Reference Include=\"Library\" />\n"
+      + "  </ItemGroup>\n"
+      + "</Project>\n").getBytes(StandardCharsets.UTF_8));
+
+    assertEquals("[A.csproj:Always specify reference with Version, PublicKeyToken and Culture, A.csproj:Missing A, "
+      + "B.csproj:Missing B]", analyze(RULE, StructuralChecks.FULLY_QUALIFIED_REFERENCE).toString());
+    assertEquals(tools, checker.directory);
+  }
+
+  private void write(String name, String include) throws IOException {
+    Files.write(new File(baseDir, name).toPath(), ("<Project>\n  <Import Project=\"" + include + ".props\" />\n</Project>\n")
+      .getBytes(StandardCharsets.UTF_8));
+  }
+
+  private List<String> analyze() throws IOException {
+    return analyze(RULE);
+  }
+
+  /**
+   * Runs the sensor on a new context with the given rules active, as a new analysis does, and returns
+   * its issues as file:message.
+   */
+  private List<String> analyze(String... rules) throws IOException {
+    SensorContextTester context = SensorContextTester.create(baseDir);
+    context.fileSystem().setWorkDir(workDir.toPath());
+    context.setSettings(settings);
+    ActiveRulesBuilder activeRules = new ActiveRulesBuilder();
+    for (String rule : rules) {
+      activeRules.create(RuleKey.of(MSBuildProjectCheckerRulesDefinition.REPOSITORY_KEY, rule)).activate();
+    }
+    context.setActiveRules(activeRules.build());
+    for (String name : new String[] {"A.csproj", "B.csproj"}) {
+      File file = new File(baseDir, name);
+      context.fileSystem().add(TestInputFileBuilder.create("moduleKey", baseDir, file)
+        .setLanguage(MSBuildLanguage.KEY)
+        .setCharset(StandardCharsets.UTF_8)
+        .initMetadata(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8))
+        .build());
+    }
+
+    new MSBuildProjectCheckerExtensionSensor(settings.asConfig(), new MSBuildRunnerExtractor(settings.asConfig()),
+      new MSBuildProjectModelCache(), checker, context.fileSystem()).execute(context);
+
+    List<String> issues = new ArrayList<>();
+    for (Issue issue : context.allIssues()) {
+      InputFile file = (InputFile) issue.primaryLocation().inputComponent();
+      issues.add(file.filename() + ":" + issue.primaryLocation().message());
+    }
+    Collections.sort(issues);
+    return issues;
+  }
+
+  /**
+   * Stand-in for the project checker, reporting the project imported by each file.
+   */
+  private static final class StandInChecker extends MSBuildToolExecutor {
+
+    private static final Pattern FILE = Pattern.compile("<File>([^<]*)</File>");
+    private static final Pattern IMPORT = Pattern.compile("Project=\"(\\w+)\\.props\"");
+
+    private final List<TreeSet<String>> runs = new ArrayList<>();
+    private int streamedRecords = Integer.MAX_VALUE;
+    private boolean crash;
+    private String prefix = "";
+    private int garbled = -1;
+    private File directory;
+
+    private StandInChecker(MapSettings settings) {
+      super(settings.asConfig());
+    }
+
+    @Override
+    public int execute(Command launch, List<String> arguments, StreamConsumer stdOut, StreamConsumer stdErr,
+      long timeoutMilliseconds, long inactivityMilliseconds, BooleanSupplier cancelled) {
+      directory = launch.getDirectory();
+      try {
+        String input = new String(Files.readAllBytes(new File(argument(arguments, "/i:")).toPath()), StandardCharsets.UTF_8);
+        TreeSet<String> names = new TreeSet<>();
+        runs.add(names);
+        StringBuilder output = new StringBuilder("﻿<?xml version=\"1.0\" encoding=\"utf-8\"?>\r\n<AnalysisOutput>\r\n  <Files>\r\n");
+        int records = 0;
+        Matcher file = FILE.matcher(input);
+        while (file.find()) {
+          String uri = file.group(1);
+          File path = new File(java.net.URI.create(uri));
+          names.add(path.getName());
+          Matcher include = IMPORT.matcher(new String(Files.readAllBytes(path.toPath()), StandardCharsets.UTF_8));
+          include.find();
+          String message = "Missing " + include.group(1);
+          if (records == garbled) {
+            stdOut.consumeLine(prefix + CheckerIssueStream.ISSUE + "\t" + uri);
+            records++;
+          } else if (records++ < streamedRecords) {
+            stdOut.consumeLine(prefix + CheckerIssueStream.ISSUE + "\t" + uri + "\t" + RULE + "\t2\t" + message);
+          } else if (crash) {
+            throw new IllegalStateException("checker crashed");
+          }
+          output.append("    <File>\r\n      <Path>").append(path).append("</Path>\r\n      <Issues>\r\n")
+            .append("        <Issue><Id>").append(RULE).append("</Id><Line>2</Line><Message>").append(message)
+            .append("</Message></Issue>\r\n      </Issues>\r\n    </File>\r\n");
+        }
+        if (records <= streamedRecords) {
+          stdOut.consumeLine(prefix + CheckerIssueStream.END + "\t" + records);
+        }
+        output.append("  </Files>\r\n</AnalysisOutput>");
+        Files.write(new File(argument(arguments, "/o:")).toPath(), output.toString().getBytes(StandardCharsets.UTF_8));
+        return 0;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private static String argument(List<String> arguments, String prefix) {
+      for (String argument : arguments) {
+        if (argument.startsWith(prefix)) {
+          return argument.substring(prefix.length());
+        }
+      }
+      throw new IllegalArgumentException(prefix);
+    }
+  }
+}
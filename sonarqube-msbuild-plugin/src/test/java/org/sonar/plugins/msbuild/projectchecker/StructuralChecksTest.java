@@ -0,0 +1,133 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.projectchecker;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.sonar.plugins.msbuild.parsers.ProjectModel;
+import org.sonar.plugins.msbuild.parsers.SaxParser;
+
+public class StructuralChecksTest {
+
+  private static final String HEADER = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+    + "<Project ToolsVersion=\"4.0\" DefaultTargets=\"Build\" xmlns=\"http://schemas.microsoft.com/developer/msbuild/2003\">\n";
+
+  private final StructuralChecks checks = new StructuralChecks(new HashSet<>(Arrays.asList(
+    "CannotReadProjectError", "FullyQualifiedReferenceRule", "MultiplePrivateSet", "EmptyTagsRule",
+    "MicrosoftCSharpShouldBeIncludeAlways", "IncludeFileNotFound")),
+    Arrays.asList("Other:1.0", "Library:2.0"));
+
+  @Test
+  public void shouldReportEmptyTagsOncePerFile() {
+    String content = HEADER
+      + "  <Import Project=\"$(VCTargetsPath)\\Microsoft.Cpp.Default.props\" />\n"
+      + "  <ImportGroup Label=\"PropertySheets\">\n"
+      + "  </ImportGroup>\n"
+      + "  <PropertyGroup Condition=\"'$(Configuration)|$(Platform)' == 'Debug|x86'\">\n"
+      + "  </PropertyGroup>\n"
+      + "  <ItemGroup>\n"
+      + "  </ItemGroup>\n"
+      + "  <PropertyGroup />\n"
+      + "  <SccAuxPath />\n"
+      + "  <ItemGroup>\n"
+      + "    <Compile Include=\"Dialog\\MainDialog.cs\">\n"
+      + "      <SubType>Form</SubType>\n"
+      + "    </Compile>\n"
+      + "  </ItemGroup>\n"
+      + "</Project>\n";
+
+    List<StructuralChecks.Issue> issues = checks.check("path.vcxproj", model(content), () -> content);
+
+    assertEquals(1, issues.size());
+    assertEquals("EmptyTagsRule:1:Make sure all empty xml nodes in this file are removed.", issues.get(0).toString());
+  }
+
+  @Test
+  public void shouldReportReferencesOnTheLinesOfTheChecker() {
+    String content = HEADER
+      + "  <ItemGroup>\n"
+      + "    <Reference Include=\"Library1\">\n"
+      + "      <Private>False</Private>\n"
+      + "      <Private>True</Private>\n"
+      + "    </Reference>\n"
+      + "    <Reference Include=\"Other.Library\" />\n"
+      + "    <Reference Include=\"Library, Version=1.0.0.0, Culture=neutral, PublicKeyToken=2f04dbe497b71114\" />\n"
+      + "  </ItemGroup>\n"
+      + "  <Import Project=\"$(MSBuildToolsPath)\\Microsoft.CSharp.targets\" />\n"
+      + "</Project>\n";
+
+    List<StructuralChecks.Issue> issues = checks.check("path.csproj", model(content), () -> content);
+
+    assertEquals("[FullyQualifiedReferenceRule:5:Always specify reference with Version, PublicKeyToken and Culture, "
+      + "MultiplePrivateSet:5:Library1 contains multiple private flags.]", issues.toString());
+  }
+
+  @Test
+  public void shouldReportProjectsTheCheckerCannotRead() {
+    String content = "<Project xmlns=\"http://schemas.microsoft.com/developer/msbuild/2003\">\n"
+      + "  <PropertyGroup><OutputType>Exe</OutputType></PropertyGroup>\n"
+      + "</Project>\n";
+
+    List<StructuralChecks.Issue> issues = checks.check("C:/src/App.csproj", model(content), () -> content);
+
+    assertEquals("[CannotReadProjectError:1:Cannot Read File: C:/src/App.csproj]", issues.toString());
+    assertTrue(checks.check("App.csproj", model(content.replace("<Project ", "<Project ToolsVersion=\"15.0\" ")
+      .replace("2003\"", "2003\"><Import Project=\"Microsoft.CSharp.targets\" /")), () -> content).isEmpty());
+  }
+
+  @Test
+  public void shouldOnlyRunActiveRulesOnSupportedFiles() {
+    String content = HEADER + "  <ItemGroup />\n</Project>\n";
+    StructuralChecks emptyTags = new StructuralChecks(Collections.singleton("EmptyTagsRule"), Collections.emptyList());
+
+    assertEquals(1, emptyTags.check("a.csproj", model(content), () -> content).size());
+    assertTrue(emptyTags.check("a.props", model(content), () -> content).isEmpty());
+    assertTrue(new StructuralChecks(Collections.singleton("IncludeFileNotFound"), Collections.emptyList()).isEmpty());
+    assertTrue(StructuralChecks.covers("CannotReadProjectError", "Cannot Read File: a.csproj"));
+    assertTrue(!StructuralChecks.covers("CannotReadProjectError", "Cannot Read Project File : invalid"));
+    assertTrue(!StructuralChecks.covers("IncludeFileNotFound", "missing"));
+  }
+
+  private static ProjectModel model(String content) {
+    return ProjectModel.of(new SaxParser().parseCompactDocument(
+      new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), false, false));
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Sonar MSBuild Plugin :: Squid
+ * Copyright (C) 2015-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+/*
+ * Sonar MSBuild Plugin, open source software quality management tool.
+ * Author(s) : Jorge Costa @ jmecsoftware.com
+ * 
+ * Sonar MSBuild Plugin is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar MSBuild Plugin is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ */
+package org.sonar.plugins.msbuild.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.plugins.msbuild.parsers.CompactDocument;
+import org.sonar.plugins.msbuild.parsers.SaxParser;
+
+public class XmlFileWriterTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void shouldWriteEscapedUtf8Document() throws Exception {
+    File file = temp.newFile("input.xml");
+    try (XmlFileWriter writer = new XmlFileWriter(file)) {
+      writer.startElement("AnalysisInput");
+      writer.startElement("Files");
+      writer.element("File", "C:\\src\\a&b <c>.vcxproj");
+      writer.element("File", "C:\\src\\\u00e9t\u00e9.props");
+      writer.element("File", null);
+      writer.endElement();
+      writer.startElement("Rules");
+      writer.endElement();
+    }
+
+    CompactDocument document;
+    try (InputStream input = new FileInputStream(file)) {
+      document = new SaxParser().parseCompactDocument(input, false, false);
+    }
+    int[] files = document.elements("File");
+    assertEquals(3, files.length);
+    assertEquals("C:\\src\\a&b <c>.vcxproj", document.value(document.firstChild(files[0])));
+    assertEquals("C:\\src\\\u00e9t\u00e9.props", document.value(document.firstChild(files[1])));
+    assertEquals(CompactDocument.NONE, document.firstChild(files[2]));
+    assertEquals(5, document.line(files[1]));
+
+    String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    assertTrue(content, content.contains("\n    <File>C:\\src\\a&amp;b &lt;c"));
+    assertTrue(content, content.endsWith("\n</AnalysisInput>\n"));
+  }
+}